@@ -106,6 +106,16 @@ public class Singleton<T> {
         return result;
     }
 
+    /**
+     * Returns the singleton object if it is present, without creating it.
+     *
+     * @return the singleton object, or null if it is missing
+     */
+    public T peek() {
+        T result = _value;
+        return isMissing(result) ? null : result;
+    }
+
     /**
      * Clears the wrapper. Taking advantage of atomic reference assignment this method requires no thread synchronization.
      *
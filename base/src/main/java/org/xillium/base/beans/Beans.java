@@ -4,8 +4,10 @@ import java.beans.*;
 import java.lang.reflect.*;
 import java.math.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.regex.*;
 import org.xillium.base.Bifunctor;
+import org.xillium.base.Functor;
 import org.xillium.base.type.typeinfo;
 import org.xillium.base.util.ValueOf;
 
@@ -399,6 +401,8 @@ public class Beans {
 
     /**
      * Assigns a value to the field in an object, converting value type as necessary.
+     * <p>
+     * The conversion is decided once for each pair of field and value class, and cached with the declaring class of the field.</p>
      *
      * @param object an object
      * @param field a field of the object
@@ -406,7 +410,6 @@ public class Beans {
      * @throws IllegalArgumentException if the value is not acceptable by the field
      * @throws IllegalAccessException if a security manager denies access
      */
-    @SuppressWarnings("unchecked")
     public static void setValue(Object object, Field field, Object value) throws IllegalArgumentException, IllegalAccessException {
         if (value == null) {
             //if (Number.class.isAssignableFrom(field.getType())) {
@@ -415,50 +418,132 @@ public class Beans {
             return;
         }
 
-        try {
-            field.setAccessible(true);
-            field.set(object, value);
-        } catch (IllegalArgumentException x) {
-            if (value instanceof Number) {
-                // size of "value" bigger than that of "field"?
-                try {
-                    Number number = (Number)value;
-                    Class<?> ftype = field.getType();
-                    if (Enum.class.isAssignableFrom(ftype)) {
-                        field.set(object, ftype.getEnumConstants()[number.intValue()]);
-                    } else if (BigDecimal.class.isAssignableFrom(ftype)) {
-                        field.set(object, BigDecimal.valueOf(number.doubleValue()));
-                    } else if (BigInteger.class.isAssignableFrom(ftype)) {
-                        field.set(object, BigInteger.valueOf(number.longValue()));
-                    } else if (Double.TYPE == ftype || Double.class.isAssignableFrom(ftype)) {
-                        field.set(object, number.doubleValue());
-                    } else if (Float.TYPE == ftype || Float.class.isAssignableFrom(ftype)) {
-                        field.set(object, number.floatValue());
-                    } else if (Long.TYPE == ftype || Long.class.isAssignableFrom(ftype)) {
-                        field.set(object, number.longValue());
-                    } else if (Integer.TYPE == ftype || Integer.class.isAssignableFrom(ftype)) {
-                        field.set(object, number.intValue());
-                    } else if (Short.TYPE == ftype || Short.class.isAssignableFrom(ftype)) {
-                        field.set(object, number.shortValue());
-                    } else {
-                        field.set(object, number.byteValue());
+        field.setAccessible(true);
+        ConcurrentMap<Field, ConcurrentMap<Class<?>, Functor<Object, Object>>> fields = COERCIONS.get(field.getDeclaringClass());
+        ConcurrentMap<Class<?>, Functor<Object, Object>> coercions = fields.get(field);
+        if (coercions == null) {
+            ConcurrentMap<Class<?>, Functor<Object, Object>> existing = fields.putIfAbsent(field, coercions = new ConcurrentHashMap<Class<?>, Functor<Object, Object>>());
+            if (existing != null) coercions = existing;
+        }
+        Functor<Object, Object> coercion = coercions.get(value.getClass());
+        if (coercion == null) {
+            coercion = coercion(value.getClass(), field);
+            Functor<Object, Object> existing = coercions.putIfAbsent(value.getClass(), coercion);
+            if (existing != null) coercion = existing;
+        }
+        field.set(object, coercion == AS_IS ? value : coercion.invoke(value));
+    }
+
+    // value coercions by the declaring class of the field, then by field and value class, so that they go with the declaring class
+    private static final ClassValue<ConcurrentMap<Field, ConcurrentMap<Class<?>, Functor<Object, Object>>>> COERCIONS =
+    new ClassValue<ConcurrentMap<Field, ConcurrentMap<Class<?>, Functor<Object, Object>>>>() {
+        @Override
+        protected ConcurrentMap<Field, ConcurrentMap<Class<?>, Functor<Object, Object>>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<Field, ConcurrentMap<Class<?>, Functor<Object, Object>>>();
+        }
+    };
+
+    // a value that the field accepts as it is, or that no coercion applies to, in which case Field.set() reports the mismatch
+    private static final Functor<Object, Object> AS_IS = new Functor<Object, Object>() {
+        public Object invoke(Object value) { return value; }
+    };
+
+    /*!
+     * Decides how values of a class are to be coerced into a field.
+     */
+    private static Functor<Object, Object> coercion(Class<?> vtype, Field field) {
+        final Class<?> ftype = field.getType();
+        if (ftype.isPrimitive() ? widens(vtype, ftype) : ftype.isAssignableFrom(vtype)) {
+            return AS_IS;
+        } else if (Number.class.isAssignableFrom(vtype)) {
+            // size of "value" bigger than that of "field"?
+            if (Enum.class.isAssignableFrom(ftype)) {
+                final Object[] constants = ftype.getEnumConstants();
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) {
+                        int index = ((Number)value).intValue();
+                        if (index < 0 || index >= constants.length) {
+                            throw new IllegalArgumentException("No " + ftype.getName() + " constant at " + index);
+                        }
+                        return constants[index];
                     }
-                } catch (Throwable t) {
-                    throw new IllegalArgumentException(t);
-                }
-            } else if (value instanceof java.sql.Timestamp) {
-                try {
-                    field.set(object, new java.sql.Date(((java.sql.Timestamp)value).getTime()));
-                } catch (Throwable t) {
-                    throw new IllegalArgumentException(t);
-                }
-            } else if (value instanceof String) {
-                field.set(object, new ValueOf(field.getType(), field.getAnnotation(typeinfo.class)).invoke((String)value));
+                };
+            } else if (BigDecimal.class.isAssignableFrom(ftype)) {
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) { return BigDecimal.valueOf(((Number)value).doubleValue()); }
+                };
+            } else if (BigInteger.class.isAssignableFrom(ftype)) {
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) { return BigInteger.valueOf(((Number)value).longValue()); }
+                };
+            } else if (Double.TYPE == ftype || Double.class.isAssignableFrom(ftype)) {
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) { return ((Number)value).doubleValue(); }
+                };
+            } else if (Float.TYPE == ftype || Float.class.isAssignableFrom(ftype)) {
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) { return ((Number)value).floatValue(); }
+                };
+            } else if (Long.TYPE == ftype || Long.class.isAssignableFrom(ftype)) {
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) { return ((Number)value).longValue(); }
+                };
+            } else if (Integer.TYPE == ftype || Integer.class.isAssignableFrom(ftype)) {
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) { return ((Number)value).intValue(); }
+                };
+            } else if (Short.TYPE == ftype || Short.class.isAssignableFrom(ftype)) {
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) { return ((Number)value).shortValue(); }
+                };
             } else {
-                throw x;
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) { return ((Number)value).byteValue(); }
+                };
+            }
+        } else if (java.sql.Timestamp.class.isAssignableFrom(vtype)) {
+            return new Functor<Object, Object>() {
+                public Object invoke(Object value) { return new java.sql.Date(((java.sql.Timestamp)value).getTime()); }
+            };
+        } else if (vtype == String.class) {
+            try {
+                final ValueOf valueOf = new ValueOf(ftype, field.getAnnotation(typeinfo.class));
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) { return valueOf.invoke((String)value); }
+                };
+            } catch (final IllegalArgumentException x) {
+                return new Functor<Object, Object>() {
+                    public Object invoke(Object value) { throw new IllegalArgumentException(x.getMessage(), x); }
+                };
             }
+        } else {
+            return AS_IS;
         }
+    }
 
+    /*!
+     * Tells whether Field.set() unwraps and widens values of a class into a primitive field.
+     */
+    private static boolean widens(Class<?> vtype, Class<?> ftype) {
+        if (vtype == Boolean.class) {
+            return ftype == Boolean.TYPE;
+        } else if (vtype == Character.class) {
+            return ftype == Character.TYPE || ftype == Integer.TYPE || ftype == Long.TYPE || ftype == Float.TYPE || ftype == Double.TYPE;
+        } else if (vtype == Byte.class) {
+            return ftype != Boolean.TYPE && ftype != Character.TYPE;
+        } else if (vtype == Short.class) {
+            return ftype != Boolean.TYPE && ftype != Character.TYPE && ftype != Byte.TYPE;
+        } else if (vtype == Integer.class) {
+            return ftype == Integer.TYPE || ftype == Long.TYPE || ftype == Float.TYPE || ftype == Double.TYPE;
+        } else if (vtype == Long.class) {
+            return ftype == Long.TYPE || ftype == Float.TYPE || ftype == Double.TYPE;
+        } else if (vtype == Float.class) {
+            return ftype == Float.TYPE || ftype == Double.TYPE;
+        } else if (vtype == Double.class) {
+            return ftype == Double.TYPE;
+        } else {
+            return false;
+        }
     }
 
     /**
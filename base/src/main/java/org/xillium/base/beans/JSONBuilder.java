@@ -1,11 +1,18 @@
 package org.xillium.base.beans;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.Date;
 
 
 /**
  * A simple and fast JSON builder
+ *
+ * <p>A JSONBuilder can also be constructed over a {@code Writer} sink, in which case generated JSON text is written into the sink
+ * in chunks, whenever the buffered text reaches a given threshold, instead of being accumulated in memory in its entirety. The
+ * last character in the buffer is always held back so that {@link #replaceLast(char)} remains valid. Call {@link #flush()} at
+ * the end to write out the remaining text.</p>
  */
 public class JSONBuilder {
     /**
@@ -13,6 +20,8 @@ public class JSONBuilder {
      */
     public JSONBuilder() {
         _sb = new StringBuilder();
+        _sink = null;
+        _chunk = null;
     }
 
     /**
@@ -22,6 +31,21 @@ public class JSONBuilder {
      */
     public JSONBuilder(int size) {
         _sb = new StringBuilder(size);
+        _sink = null;
+        _chunk = null;
+    }
+
+    /**
+     * Constructs a new JSONBuilder that writes generated JSON text into a sink in chunks.
+     *
+     * @param sink - a Writer to receive generated JSON text
+     * @param threshold - the number of buffered characters that triggers a write into the sink, must be positive
+     */
+    public JSONBuilder(Writer sink, int threshold) {
+        if (threshold < 1) throw new IllegalArgumentException("threshold: " + threshold);
+        _sb = new StringBuilder(threshold + 64);
+        _sink = sink;
+        _chunk = new char[threshold];
     }
 
     /**
@@ -43,6 +67,31 @@ public class JSONBuilder {
      */
     public JSONBuilder append(String s) {
         _sb.append(s);
+        if (_sink != null) spill();
+        return this;
+    }
+
+    /**
+     * Appends a long value to the JSON stream, without boxing.
+     *
+     * @param l - a long value to append
+     * @return the JSONBuilder itself
+     */
+    public JSONBuilder append(long l) {
+        _sb.append(l);
+        if (_sink != null) spill();
+        return this;
+    }
+
+    /**
+     * Appends a double value to the JSON stream, without boxing.
+     *
+     * @param d - a double value to append
+     * @return the JSONBuilder itself
+     */
+    public JSONBuilder append(double d) {
+        _sb.append(d);
+        if (_sink != null) spill();
         return this;
     }
 
@@ -65,8 +114,14 @@ public class JSONBuilder {
      */
     public JSONBuilder quote(String value) {
         _sb.append('"');
-        for (int i = 0; i < value.length(); ++i) {
+        int start = 0;
+        for (int i = 0, ii = value.length(); i < ii; ++i) {
             char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
+
+            // copy the run of plain characters in bulk before the escape sequence
+            if (start < i) _sb.append(value, start, i);
+            start = i + 1;
             switch (c) {
             case '"':
                 _sb.append("\\\"");
@@ -75,15 +130,17 @@ public class JSONBuilder {
                 _sb.append("\\\\");
                 break;
             default:
-                if (c < 0x20) {
-                    _sb.append(CTRLCHARS[c]);
-                } else {
-                    _sb.append(c);
-                }
+                _sb.append(CTRLCHARS[c]);
                 break;
             }
         }
+        if (start == 0) {
+            _sb.append(value);
+        } else if (start < value.length()) {
+            _sb.append(value, start, value.length());
+        }
         _sb.append('"');
+        if (_sink != null) spill();
         return this;
     }
 
@@ -96,47 +153,100 @@ public class JSONBuilder {
     public JSONBuilder serialize(Object value) {
         if (value == null) {
             _sb.append("null");
-        } else {
-            Class<?> t = value.getClass();
-            if (t.isArray()) {
-                _sb.append('[');
-                boolean hasElements = false;
-                for (int i = 0, ii = Array.getLength(value); i < ii; ++i) {
-                    serialize(Array.get(value, i));
-                    _sb.append(',');
-                    hasElements = true;
-                }
-                if (hasElements) {
-                    _sb.setCharAt(_sb.length()-1, ']');
-                } else {
-                    _sb.append(']');
-                }
-            } else if (Iterable.class.isAssignableFrom(t)) {
-                _sb.append('[');
-                boolean hasElements = false;
-                for (Object object: (Iterable<?>)value) {
-                    serialize(object);
-                    _sb.append(',');
-                    hasElements = true;
-                }
-                if (hasElements) {
-                    _sb.setCharAt(_sb.length()-1, ']');
-                } else {
-                    _sb.append(']');
-                }
-            } else if (Number.class.isAssignableFrom(t) || Boolean.class.isAssignableFrom(t)) {
-                _sb.append(value.toString());
-            } else if (Date.class.isAssignableFrom(t)) {
-                _sb.append(((Date)value).getTime());
-            } else if (String.class == t) {
-                quote((String)value);
-            } else {
-                quote(value.toString());
+        } else switch (KINDS.get(value.getClass())) {
+        case STRING:
+            quote((String)value);
+            break;
+        case INTEGER:
+            _sb.append(((Integer)value).intValue());
+            break;
+        case LONG:
+            _sb.append(((Long)value).longValue());
+            break;
+        case DOUBLE:
+            _sb.append(((Double)value).doubleValue());
+            break;
+        case BOOLEAN:
+            _sb.append(((Boolean)value).booleanValue());
+            break;
+        case NUMBER:
+            _sb.append(value.toString());
+            break;
+        case DATE:
+            _sb.append(((Date)value).getTime());
+            break;
+        case OBJECTS:
+            serialize((Object[])value);
+            break;
+        case INTS:
+            serialize((int[])value);
+            break;
+        case LONGS:
+            serialize((long[])value);
+            break;
+        case DOUBLES:
+            serialize((double[])value);
+            break;
+        case PRIMITIVES:
+            _sb.append('[');
+            for (int i = 0, ii = Array.getLength(value); i < ii; ++i) {
+                serialize(Array.get(value, i));
+                _sb.append(',');
+            }
+            close(']');
+            break;
+        case ITERABLE:
+            _sb.append('[');
+            for (Object object: (Iterable<?>)value) {
+                serialize(object);
+                _sb.append(',');
             }
+            close(']');
+            break;
+        default:
+            quote(value.toString());
+            break;
         }
+        if (_sink != null) spill();
         return this;
     }
 
+    private void serialize(Object[] values) {
+        _sb.append('[');
+        for (Object value: values) {
+            serialize(value);
+            _sb.append(',');
+        }
+        close(']');
+    }
+
+    private void serialize(int[] values) {
+        _sb.append('[');
+        for (int value: values) _sb.append(value).append(',');
+        close(']');
+    }
+
+    private void serialize(long[] values) {
+        _sb.append('[');
+        for (long value: values) _sb.append(value).append(',');
+        close(']');
+    }
+
+    private void serialize(double[] values) {
+        _sb.append('[');
+        for (double value: values) _sb.append(value).append(',');
+        close(']');
+    }
+
+    // replaces the trailing ',' after the last element, if any, with the closing bracket
+    private void close(char bracket) {
+        if (_sb.charAt(_sb.length()-1) == ',') {
+            _sb.setCharAt(_sb.length()-1, bracket);
+        } else {
+            _sb.append(bracket);
+        }
+    }
+
     /**
      * Serializes a named object and appends it to the stream as <i>name:serialized-value</i>.
      *
@@ -149,7 +259,7 @@ public class JSONBuilder {
     }
 
     /**
-     * Returns the current buffer length.
+     * Returns the current buffer length. With a sink, this is the length of the text not yet written into the sink.
      *
      * @return the length of the buffer
      */
@@ -157,6 +267,44 @@ public class JSONBuilder {
         return _sb.length();
     }
 
+    /**
+     * Writes all buffered text into the sink and flushes the sink. This method does nothing if there is no sink.
+     *
+     * @return the JSONBuilder itself
+     */
+    public JSONBuilder flush() {
+        if (_sink != null) {
+            try {
+                write(_sb.length());
+                _sink.flush();
+            } catch (IOException x) {
+                throw new RuntimeException(x.getMessage(), x);
+            }
+        }
+        return this;
+    }
+
+    // writes all but the last character into the sink if the buffer has reached the threshold
+    private void spill() {
+        if (_sb.length() > _chunk.length) {
+            try {
+                write(_sb.length() - 1);
+                _sink.flush();
+            } catch (IOException x) {
+                throw new RuntimeException(x.getMessage(), x);
+            }
+        }
+    }
+
+    private void write(int length) throws IOException {
+        for (int start = 0; start < length; start += _chunk.length) {
+            int end = Math.min(start + _chunk.length, length);
+            _sb.getChars(start, end, _chunk, 0);
+            _sink.write(_chunk, 0, end - start);
+        }
+        _sb.delete(0, length);
+    }
+
     @Override
     public String toString() {
         return _sb.toString();
@@ -197,5 +345,45 @@ public class JSONBuilder {
         /* 1F */"\\u001f",
     };
 
+    private static enum Kind {
+        STRING, INTEGER, LONG, DOUBLE, BOOLEAN, NUMBER, DATE, OBJECTS, INTS, LONGS, DOUBLES, PRIMITIVES, ITERABLE, OTHER
+    }
+
+    // serialization kinds by exact class, resolved once per class
+    private static final ClassValue<Kind> KINDS = new ClassValue<Kind>() {
+        @Override
+        protected Kind computeValue(Class<?> t) {
+            if (t == String.class) {
+                return Kind.STRING;
+            } else if (t == Integer.class) {
+                return Kind.INTEGER;
+            } else if (t == Long.class) {
+                return Kind.LONG;
+            } else if (t == Double.class) {
+                return Kind.DOUBLE;
+            } else if (t == Boolean.class) {
+                return Kind.BOOLEAN;
+            } else if (t == int[].class) {
+                return Kind.INTS;
+            } else if (t == long[].class) {
+                return Kind.LONGS;
+            } else if (t == double[].class) {
+                return Kind.DOUBLES;
+            } else if (t.isArray()) {
+                return t.getComponentType().isPrimitive() ? Kind.PRIMITIVES : Kind.OBJECTS;
+            } else if (Iterable.class.isAssignableFrom(t)) {
+                return Kind.ITERABLE;
+            } else if (Number.class.isAssignableFrom(t)) {
+                return Kind.NUMBER;
+            } else if (Date.class.isAssignableFrom(t)) {
+                return Kind.DATE;
+            } else {
+                return Kind.OTHER;
+            }
+        }
+    };
+
     private final StringBuilder _sb;
+    private final Writer _sink;
+    private final char[] _chunk;
 }
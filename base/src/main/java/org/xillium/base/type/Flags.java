@@ -18,6 +18,7 @@ import org.xillium.base.beans.Strings;
  */
 public class Flags<E extends Enum<E>> {
     public static final String MULTI_VALUE_SEPARATOR = "[,:\\s]{1,}";
+    private static final java.util.regex.Pattern MULTI_VALUE_PATTERN = java.util.regex.Pattern.compile(MULTI_VALUE_SEPARATOR);
 
     private final EnumSet<E> _mask;
 
@@ -108,7 +109,7 @@ public class Flags<E extends Enum<E>> {
      */
     public static <E extends Enum<E>> Flags<E> valueOf(Class<E> type, String values) {
         Flags<E> flags = new Flags<E>(type);
-        for (String text : values.trim().split(MULTI_VALUE_SEPARATOR)) {
+        for (String text : MULTI_VALUE_PATTERN.split(values.trim())) {
             flags.set(Enum.valueOf(type, text));
         }
         return flags;
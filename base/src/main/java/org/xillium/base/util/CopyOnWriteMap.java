@@ -0,0 +1,133 @@
+package org.xillium.base.util;
+
+import java.util.*;
+
+
+/**
+ * A thread-safe map optimized for reads, in which all mutative operations are implemented by making a fresh copy of the
+ * underlying map and publishing it atomically.
+ *
+ * <p>Reads never lock. Each read operation works on the snapshot most recently published, and the collection views are
+ * unmodifiable views of a snapshot, which never change while being iterated. Mutations are serialized among themselves.
+ * This map is suitable for registries that are read on every request but only rarely updated.</p>
+ */
+public class CopyOnWriteMap<K, V> extends AbstractMap<K, V> {
+    private volatile Map<K, V> _map;
+
+    /**
+     * Creates an empty CopyOnWriteMap.
+     */
+    public CopyOnWriteMap() {
+        _map = Collections.emptyMap();
+    }
+
+    /**
+     * Creates a CopyOnWriteMap with the same mappings as the given map.
+     */
+    public CopyOnWriteMap(Map<? extends K, ? extends V> map) {
+        _map = Collections.unmodifiableMap(new HashMap<K, V>(map));
+    }
+
+    /**
+     * Returns the current snapshot, an unmodifiable map.
+     */
+    public Map<K, V> snapshot() {
+        return _map;
+    }
+
+    @Override
+    public V get(Object key) {
+        return _map.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return _map.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return _map.containsValue(value);
+    }
+
+    @Override
+    public int size() {
+        return _map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _map.isEmpty();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return _map.entrySet();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return _map.keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return _map.values();
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        Map<K, V> map = new HashMap<K, V>(_map);
+        V old = map.put(key, value);
+        _map = Collections.unmodifiableMap(map);
+        return old;
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends K, ? extends V> m) {
+        Map<K, V> map = new HashMap<K, V>(_map);
+        map.putAll(m);
+        _map = Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        if (!_map.containsKey(key)) return null;
+        Map<K, V> map = new HashMap<K, V>(_map);
+        V old = map.remove(key);
+        _map = Collections.unmodifiableMap(map);
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        _map = Collections.emptyMap();
+    }
+
+    /**
+     * Replaces all mappings in this map with those in the given map, in one atomic step.
+     *
+     * @param map the new mappings
+     * @return the snapshot of the replaced mappings
+     */
+    public synchronized Map<K, V> swap(Map<? extends K, ? extends V> map) {
+        Map<K, V> old = _map;
+        _map = Collections.unmodifiableMap(new HashMap<K, V>(map));
+        return old;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return _map.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return _map.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return _map.toString();
+    }
+}
@@ -1,6 +1,12 @@
 package org.xillium.base.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.regex.Pattern;
 import org.xillium.base.Functor;
@@ -20,14 +26,17 @@ import org.xillium.base.type.typeinfo;
  * <p>
  * If the given type is an array, the String reprensentation is first split around commas and then converted
  * to the element type of the array.
+ * <p>
+ * Converters of types without type arguments are resolved once per type and shared by all ValueOf instances; see
+ * {@link #converter(Class)}.
  */
 public class ValueOf implements Functor<Object, String> {
     public static final Pattern ARRAY_VALUE_SEPARATOR = Pattern.compile(" *, *");
 
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
     private final Class<?> _componentType;
-    private Class<?>[] _args;
-    private Method _valueOf;
-    private Constructor<?> _init;
+    private final Functor<Object, String> _converter;
 
     /**
      * Constructs a ValueOf on a simple type, or an array type with elements of the given type.
@@ -62,36 +71,36 @@ public class ValueOf implements Functor<Object, String> {
         if (_componentType != null) {
             type = _componentType;
         }
-        if (!type.equals(String.class)) {
-            _args = args;
-
-            try {
-                Class<?> boxed = Beans.boxPrimitive(type);
-                try {
-                    if (_args != null) {
-                        Class<?>[] types = new Class<?>[_args.length + 1];
-                        Arrays.fill(types, Class.class);
-                        types[_args.length] = String.class;
-                        _valueOf = boxed.getMethod("valueOf", types);
-                    } else {
-                        _valueOf = boxed.getMethod("valueOf", String.class);
-                    }
-                } catch (NoSuchMethodException x) {
-                    _init = boxed.getConstructor(String.class);
-                }
-            } catch (NoSuchMethodException x) {
-                throw new IllegalArgumentException(x.getMessage(), x);
-            }
+        if (type.equals(String.class)) {
+            _converter = null;
+        } else if (args != null) {
+            _converter = resolve(Beans.boxPrimitive(type), args);
+        } else {
+            _converter = converter(type);
         }
     }
 
+    /**
+     * Returns the shared converter of String texts into values of a type, which must not be an array type. The converter
+     * calls the type's {@code valueOf(String text)} method or its {@code <init>(String text)} constructor, except that
+     * primitives, their wrappers, BigDecimal, BigInteger, enums, and SQL dates and times are converted by direct calls
+     * to their parsers.
+     *
+     * @param type the target class
+     * @return a converter, which reports conversion failures with IllegalArgumentException
+     * @throws IllegalArgumentException if the type does not support conversion from String texts
+     */
+    public static Functor<Object, String> converter(Class<?> type) {
+        return CONVERTERS.get(type);
+    }
+
     /**
      * Reports whether the type associated with this ValueOf is String or not.
      *
      * @return whether the type associated with this ValueOf is String or not
      */
     public boolean isString() {
-        return _valueOf == null && _init == null;
+        return _converter == null;
     }
 
     /**
@@ -112,10 +121,10 @@ public class ValueOf implements Functor<Object, String> {
             if (text == null || text.length() == 0) {
                 return null;
             } else {
-                String[] texts = ARRAY_VALUE_SEPARATOR.split(text);
+                String[] texts = split(text);
                 Object array = Array.newInstance(_componentType, texts.length);
                 for (int i = 0; i < texts.length; ++i) {
-                    Array.set(array, i, convert(texts[i]));
+                    store(array, i, convert(texts[i]));
                 }
                 return array;
             }
@@ -124,19 +133,178 @@ public class ValueOf implements Functor<Object, String> {
         }
     }
 
+    /**
+     * Splits a text around commas and any spaces next to them, exactly as {@code ARRAY_VALUE_SEPARATOR.split(text)} does.
+     *
+     * @param text the text to split
+     * @return the array of strings computed by splitting the text, without trailing empty strings
+     */
+    public static String[] split(String text) {
+        int count = 1;
+        for (int comma = text.indexOf(','); comma >= 0; comma = text.indexOf(',', comma + 1)) ++count;
+        if (count == 1) return new String[] { text };
+
+        String[] texts = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; ++i) {
+            int comma = text.indexOf(',', start), end = comma;
+            while (end > start && text.charAt(end-1) == ' ') --end;
+            texts[i] = text.substring(start, end);
+            start = comma + 1;
+            while (start < text.length() && text.charAt(start) == ' ') ++start;
+        }
+        texts[count-1] = text.substring(start);
+
+        while (count > 0 && texts[count-1].length() == 0) --count;
+        return count < texts.length ? Arrays.copyOf(texts, count) : texts;
+    }
+
+    /*!
+     * Stores a value into an array, without going through java.lang.reflect.Array for common array types.
+     */
+    private static void store(Object array, int index, Object value) {
+        if (array instanceof Object[]) {
+            ((Object[])array)[index] = value;
+        } else if (value == null) {
+            Array.set(array, index, value);
+        } else if (array instanceof int[]) {
+            ((int[])array)[index] = (Integer)value;
+        } else if (array instanceof long[]) {
+            ((long[])array)[index] = (Long)value;
+        } else if (array instanceof double[]) {
+            ((double[])array)[index] = (Double)value;
+        } else {
+            Array.set(array, index, value);
+        }
+    }
+
     private Object convert(String text) {
-        try {
-            if (text == null || text.length() == 0) {
-                return (_valueOf != null || _init != null) ? null : text;
-            } else if (_valueOf != null) {
-                return _valueOf.getParameterTypes().length == 1 ? _valueOf.invoke(null, text) : _valueOf.invoke(null, Objects.store(_args, text));
-            } else if (_init != null) {
-                return _init.newInstance(text);
+        if (text == null || text.length() == 0) {
+            return _converter != null ? null : text;
+        } else if (_converter != null) {
+            try {
+                return _converter.invoke(text);
+            } catch (IllegalArgumentException x) {
+                throw x;
+            } catch (Exception x) {
+                throw new IllegalArgumentException(x.getMessage(), x);
+            }
+        } else {
+            return text;
+        }
+    }
+
+    // shared converters of types without type arguments
+    private static final ClassValue<Functor<Object, String>> CONVERTERS = new ClassValue<Functor<Object, String>>() {
+        @Override
+        protected Functor<Object, String> computeValue(Class<?> type) {
+            final Class<?> boxed = Beans.boxPrimitive(type);
+            if (boxed == String.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return text; }
+                };
+            } else if (boxed == Integer.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return Integer.valueOf(text); }
+                };
+            } else if (boxed == Long.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return Long.valueOf(text); }
+                };
+            } else if (boxed == Short.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return Short.valueOf(text); }
+                };
+            } else if (boxed == Byte.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return Byte.valueOf(text); }
+                };
+            } else if (boxed == Double.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return Double.valueOf(text); }
+                };
+            } else if (boxed == Float.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return Float.valueOf(text); }
+                };
+            } else if (boxed == Boolean.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return Boolean.valueOf(text); }
+                };
+            } else if (boxed == BigDecimal.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return new BigDecimal(text); }
+                };
+            } else if (boxed == BigInteger.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return new BigInteger(text); }
+                };
+            } else if (boxed == java.sql.Date.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return java.sql.Date.valueOf(text); }
+                };
+            } else if (boxed == java.sql.Timestamp.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return java.sql.Timestamp.valueOf(text); }
+                };
+            } else if (boxed == java.sql.Time.class) {
+                return new Functor<Object, String>() {
+                    public Object invoke(String text) { return java.sql.Time.valueOf(text); }
+                };
+            } else if (boxed.isEnum()) {
+                return new Functor<Object, String>() {
+                    @SuppressWarnings({ "unchecked", "rawtypes" })
+                    public Object invoke(String text) { return Enum.valueOf((Class)boxed, text); }
+                };
             } else {
-                return text;
+                return resolve(boxed, null);
             }
-        } catch (Exception x) {
+        }
+    };
+
+    /*!
+     * Resolves the valueOf method or the String constructor of a type into a method handle, with type arguments bound.
+     */
+    private static Functor<Object, String> resolve(Class<?> type, Class<?>[] args) {
+        final MethodHandle converter;
+        try {
+            MethodHandle handle;
+            try {
+                if (args != null) {
+                    Class<?>[] types = new Class<?>[args.length + 1];
+                    Arrays.fill(types, Class.class);
+                    types[args.length] = String.class;
+                    handle = MethodHandles.insertArguments(lookup.unreflect(accessible(type.getMethod("valueOf", types))), 0, (Object[])args);
+                } else {
+                    handle = lookup.unreflect(accessible(type.getMethod("valueOf", String.class)));
+                }
+            } catch (NoSuchMethodException x) {
+                handle = lookup.unreflectConstructor(accessible(type.getConstructor(String.class)));
+            }
+            converter = handle.asType(MethodType.methodType(Object.class, String.class));
+        } catch (NoSuchMethodException | IllegalAccessException | WrongMethodTypeException x) {
             throw new IllegalArgumentException(x.getMessage(), x);
         }
+
+        return new Functor<Object, String>() {
+            public Object invoke(String text) {
+                try {
+                    return (Object)converter.invokeExact(text);
+                } catch (RuntimeException x) {
+                    throw x;
+                } catch (Throwable t) {
+                    throw new IllegalArgumentException(t.getMessage(), t);
+                }
+            }
+        };
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member) {
+        try {
+            member.setAccessible(true);
+        } catch (SecurityException x) {
+            // leave it to the lookup to decide
+        }
+        return member;
     }
 }
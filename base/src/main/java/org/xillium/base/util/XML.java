@@ -1,8 +1,12 @@
 package org.xillium.base.util;
 
+import java.io.InputStream;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.xml.sax.SAXException;
 import org.apache.logging.log4j.*;
 
@@ -13,6 +17,7 @@ import org.apache.logging.log4j.*;
 public class XML {
     private static final String SAX_NAMESPACE_PREFIXES = "http://xml.org/sax/features/namespace-prefixes";
     private static final SAXParserFactory _factory;
+    private static final XMLInputFactory _input;
 
     static {
         SAXParserFactory factory = null;
@@ -25,6 +30,19 @@ public class XML {
         } finally {
             _factory = factory;
         }
+
+        XMLInputFactory input = null;
+        try {
+            input = XMLInputFactory.newInstance();
+            input.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            input.setProperty(XMLInputFactory.IS_COALESCING, true);
+            input.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            input.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        } catch (Exception x) {
+            LogManager.getLogger(XML.class).log(Level.ERROR, "Failed to construct/configure an XMLInputFactory", x);
+        } finally {
+            _input = input;
+        }
     }
 
     /**
@@ -37,5 +55,15 @@ public class XML {
     public static SAXParser newSAXParser() throws ParserConfigurationException, SAXException {
         return _factory.newSAXParser();
     }
-}
 
+    /**
+     * Creates a new XMLStreamReader to pull coalesced XML events from an input stream. DTDs and external entities are not supported.
+     *
+     * @param stream the input stream
+     * @return the XML stream reader
+     * @throws XMLStreamException if a reader cannot be created
+     */
+    public static XMLStreamReader newXMLStreamReader(InputStream stream) throws XMLStreamException {
+        return _input.createXMLStreamReader(stream);
+    }
+}
@@ -33,6 +33,130 @@ public class BeansValuesTest {
         assert b.integer.equals(new BigInteger("65536"));
     }
 
+    @Test(groups={"beans", "beans-values"})
+    public void testCoercions() throws Exception {
+        Object[] values = {
+            7, 7L, (short)1, (byte)2, 'c', 2.5, 2.5f, true, new BigDecimal("12.75"), BigInteger.TEN, "42", "", "x", "SUNDAY",
+            new java.sql.Timestamp(86400000L), new java.util.Date(0L), A.TUESDAY
+        };
+        for (Field field: C.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) continue;
+            for (Object value: values) {
+                C expected = new C(), actual = new C();
+                String expectedFailure = null, actualFailure = null;
+                try {
+                    legacy(expected, C.class.getDeclaredField(field.getName()), value);
+                } catch (IllegalArgumentException x) {
+                    expectedFailure = x.getClass().getName();
+                }
+                for (int i = 0; i < 2; ++i) {
+                    try {
+                        actualFailure = null;
+                        Beans.setValue(actual, C.class.getDeclaredField(field.getName()), value);
+                    } catch (IllegalArgumentException x) {
+                        actualFailure = x.getClass().getName();
+                    }
+                }
+                assert expected.equals(actual) && String.valueOf(expectedFailure).equals(String.valueOf(actualFailure)) :
+                    field.getName() + " <- " + value.getClass().getSimpleName() + ':' + value + ": " + expected + '/' + expectedFailure + " != " + actual + '/' + actualFailure;
+            }
+        }
+    }
+
+    @Test(groups={"beans", "beans-values", "performance"})
+    public void runMixedResultSet() throws Exception {
+        Field[] fields = {
+            C.class.getDeclaredField("id"), C.class.getDeclaredField("count"), C.class.getDeclaredField("amount"), C.class.getDeclaredField("a"),
+            C.class.getDeclaredField("date"), C.class.getDeclaredField("text"), C.class.getDeclaredField("number"), C.class.getDeclaredField("ratio")
+        };
+        Object[][] rows = new Object[1000][];
+        for (int i = 0; i < rows.length; ++i) {
+            rows[i] = new Object[] {
+                new BigDecimal(i), (long)i, i * 0.25, new BigDecimal(i % 3), new java.sql.Timestamp(i * 1000L), "name" + i, String.valueOf(i), i
+            };
+        }
+
+        long count = 0;
+        for (int r = 0; r < 20; ++r) count += legacy(fields, rows) + beans(fields, rows);
+
+        long now = System.nanoTime();
+        for (int r = 0; r < 100; ++r) count += legacy(fields, rows);
+        System.err.println("exception-driven setValue: " + (System.nanoTime() - now)/(100L*rows.length*fields.length) + " ns/cell");
+
+        now = System.nanoTime();
+        for (int r = 0; r < 100; ++r) count += beans(fields, rows);
+        System.err.println("  cached coercion setValue: " + (System.nanoTime() - now)/(100L*rows.length*fields.length) + " ns/cell");
+
+        assert count > 0;
+    }
+
+    private static long beans(Field[] fields, Object[][] rows) throws Exception {
+        long sum = 0;
+        for (Object[] row: rows) {
+            C c = new C();
+            for (int i = 0; i < fields.length; ++i) Beans.setValue(c, fields[i], row[i]);
+            sum += c.id + c.count;
+        }
+        return sum;
+    }
+
+    private static long legacy(Field[] fields, Object[][] rows) throws Exception {
+        long sum = 0;
+        for (Object[] row: rows) {
+            C c = new C();
+            for (int i = 0; i < fields.length; ++i) legacy(c, fields[i], row[i]);
+            sum += c.id + c.count;
+        }
+        return sum;
+    }
+
+    // Beans.setValue as it was, coercing upon IllegalArgumentException from Field.set
+    private static void legacy(Object object, Field field, Object value) throws IllegalArgumentException, IllegalAccessException {
+        if (value == null) return;
+        try {
+            field.setAccessible(true);
+            field.set(object, value);
+        } catch (IllegalArgumentException x) {
+            if (value instanceof Number) {
+                try {
+                    Number number = (Number)value;
+                    Class<?> ftype = field.getType();
+                    if (Enum.class.isAssignableFrom(ftype)) {
+                        field.set(object, ftype.getEnumConstants()[number.intValue()]);
+                    } else if (BigDecimal.class.isAssignableFrom(ftype)) {
+                        field.set(object, BigDecimal.valueOf(number.doubleValue()));
+                    } else if (BigInteger.class.isAssignableFrom(ftype)) {
+                        field.set(object, BigInteger.valueOf(number.longValue()));
+                    } else if (Double.TYPE == ftype || Double.class.isAssignableFrom(ftype)) {
+                        field.set(object, number.doubleValue());
+                    } else if (Float.TYPE == ftype || Float.class.isAssignableFrom(ftype)) {
+                        field.set(object, number.floatValue());
+                    } else if (Long.TYPE == ftype || Long.class.isAssignableFrom(ftype)) {
+                        field.set(object, number.longValue());
+                    } else if (Integer.TYPE == ftype || Integer.class.isAssignableFrom(ftype)) {
+                        field.set(object, number.intValue());
+                    } else if (Short.TYPE == ftype || Short.class.isAssignableFrom(ftype)) {
+                        field.set(object, number.shortValue());
+                    } else {
+                        field.set(object, number.byteValue());
+                    }
+                } catch (Throwable t) {
+                    throw new IllegalArgumentException(t);
+                }
+            } else if (value instanceof java.sql.Timestamp) {
+                try {
+                    field.set(object, new java.sql.Date(((java.sql.Timestamp)value).getTime()));
+                } catch (Throwable t) {
+                    throw new IllegalArgumentException(t);
+                }
+            } else if (value instanceof String) {
+                field.set(object, new org.xillium.base.util.ValueOf(field.getType(), field.getAnnotation(typeinfo.class)).invoke((String)value));
+            } else {
+                throw x;
+            }
+        }
+    }
+
     public static enum A {
         SUNDAY,
         MONDAY,
@@ -47,4 +171,39 @@ public class BeansValuesTest {
         public BigDecimal decimal;
         public BigInteger integer;
     }
+
+    static class C {
+        public int id;
+        public long count;
+        public short small;
+        public char letter;
+        public boolean flag;
+        public double amount;
+        public float rate;
+        public Integer number;
+        public Long total;
+        public Double ratio;
+        public BigDecimal decimal;
+        public BigInteger integer;
+        public String text;
+        public Object any;
+        public A a;
+        public java.util.Date time;
+        public java.sql.Date date;
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof C && toString().equals(o.toString());
+        }
+
+        @Override
+        public int hashCode() {
+            return toString().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return Beans.toString(this);
+        }
+    }
 }
@@ -0,0 +1,130 @@
+package lab;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.*;
+import org.xillium.base.beans.JSONBuilder;
+import org.testng.annotations.*;
+
+
+/**
+ * JSONBuilder vs. the reflective serializer it replaced, over result-set shaped data.
+ */
+public class JSONBuilderPerformanceTest {
+    private static final int ROWS = 2000, RUNS = 200;
+
+    private static List<Object[]> rows() {
+        Random random = new Random(11);
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < ROWS; ++i) {
+            rows.add(new Object[] {
+                i,
+                random.nextLong(),
+                new BigDecimal(random.nextInt(1000000)).movePointLeft(2),
+                new Timestamp(1400000000000L + random.nextInt()),
+                "Customer " + i,
+                i % 7 == 0 ? "Suite \"" + i + "\"\n2nd Floor" : "5410 LBJ Freeway",
+                i % 3 == 0 ? null : random.nextDouble(),
+                i % 2 == 0
+            });
+        }
+        return rows;
+    }
+
+    @Test(groups={"JSON"})
+    public void testEquivalence() {
+        Object[] values = {
+            rows().subList(0, 20), new int[] { 1, -2, 3 }, new long[0], new double[] { 0.5, -1e300 }, new char[] { 'a', '"' },
+            new boolean[] { true, false }, new byte[] { -1, 2 }, new float[] { 1.5f }, new Object[0], Collections.emptyList(),
+            new Object[][] { { 1, "a" }, {} }, Arrays.asList(1.5f, (short)7, new java.math.BigInteger("123456789012345678901234567890")),
+            "\u0001control\tand \\ backslash", "", "plain", new Date(12345), Thread.State.NEW
+        };
+        for (Object value: values) {
+            String expected = legacy(new StringBuilder(), value).toString();
+            String actual = new JSONBuilder().serialize(value).toString();
+            assert expected.equals(actual) : expected + " != " + actual;
+        }
+
+        java.io.StringWriter sink = new java.io.StringWriter();
+        new JSONBuilder(sink, 16).serialize(values).flush();
+        assert sink.toString().equals(new JSONBuilder().serialize(values).toString());
+    }
+
+    @Test(groups={"JSON", "performance"})
+    public void runResultSet() {
+        List<Object[]> rows = rows();
+        int length = 0;
+        for (int i = 0; i < RUNS; ++i) {
+            length += legacy(new StringBuilder(), rows).length() + new JSONBuilder().serialize(rows).length();
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) length += legacy(new StringBuilder(), rows).length();
+        System.err.println("reflective serializer: " + (System.nanoTime() - now)/RUNS/1000 + " us/result set");
+
+        now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) length += new JSONBuilder().serialize(rows).length();
+        System.err.println("      type dispatched: " + (System.nanoTime() - now)/RUNS/1000 + " us/result set");
+
+        assert length > 0;
+    }
+
+    // JSONBuilder.serialize as it was, before type dispatching
+    private static StringBuilder legacy(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append("null");
+        } else {
+            Class<?> t = value.getClass();
+            if (t.isArray()) {
+                sb.append('[');
+                boolean hasElements = false;
+                for (int i = 0, ii = Array.getLength(value); i < ii; ++i) {
+                    legacy(sb, Array.get(value, i));
+                    sb.append(',');
+                    hasElements = true;
+                }
+                if (hasElements) {
+                    sb.setCharAt(sb.length()-1, ']');
+                } else {
+                    sb.append(']');
+                }
+            } else if (Iterable.class.isAssignableFrom(t)) {
+                sb.append('[');
+                boolean hasElements = false;
+                for (Object object: (Iterable<?>)value) {
+                    legacy(sb, object);
+                    sb.append(',');
+                    hasElements = true;
+                }
+                if (hasElements) {
+                    sb.setCharAt(sb.length()-1, ']');
+                } else {
+                    sb.append(']');
+                }
+            } else if (Number.class.isAssignableFrom(t) || Boolean.class.isAssignableFrom(t)) {
+                sb.append(value.toString());
+            } else if (Date.class.isAssignableFrom(t)) {
+                sb.append(((Date)value).getTime());
+            } else {
+                String text = value.toString();
+                sb.append('"');
+                for (int i = 0; i < text.length(); ++i) {
+                    char c = text.charAt(i);
+                    if (c == '"') {
+                        sb.append("\\\"");
+                    } else if (c == '\\') {
+                        sb.append("\\\\");
+                    } else if (c < 0x20) {
+                        int escape = "\b\t\n\f\r".indexOf(c);
+                        sb.append(escape < 0 ? String.format("\\u%04x", (int)c) : "\\" + "btnfr".charAt(escape));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+                sb.append('"');
+            }
+        }
+        return sb;
+    }
+}
@@ -2,6 +2,9 @@ package lab;
 
 import java.lang.reflect.*;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.xillium.base.beans.Beans;
 import org.xillium.base.type.*;
@@ -87,6 +90,83 @@ public class ValueOfTest {
         System.err.println("       ValueOf: " + (System.currentTimeMillis() - now));
     }
 
+    @Test(groups={"util", "util-valueof", "util-valueof-split"})
+    public void testSplit() throws Exception {
+        Random random = new Random(24);
+        char[] alphabet = { ' ', ',', 'a', 'b' };
+        for (int i = 0; i < 20000; ++i) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int j = 0; j < chars.length; ++j) chars[j] = alphabet[random.nextInt(alphabet.length)];
+            String text = new String(chars);
+            assert Arrays.equals(ValueOf.split(text), ValueOf.ARRAY_VALUE_SEPARATOR.split(text)) :
+                '"' + text + "\": " + Arrays.toString(ValueOf.split(text)) + " != " + Arrays.toString(ValueOf.ARRAY_VALUE_SEPARATOR.split(text));
+        }
+    }
+
+    @Test(groups={"util", "util-valueof", "util-valueof-converters"})
+    public void testConverters() throws Exception {
+        assert new ValueOf(Long.TYPE).invoke("-42").equals(-42L);
+        assert new ValueOf(Short.class).invoke("7").equals((short)7);
+        assert new ValueOf(Byte.TYPE).invoke("-8").equals((byte)-8);
+        assert new ValueOf(Double.TYPE).invoke("2.5e3").equals(2500.0);
+        assert new ValueOf(Float.class).invoke("0.5").equals(0.5f);
+        assert new ValueOf(Boolean.TYPE).invoke("TRUE").equals(true) && new ValueOf(Boolean.class).invoke("yes").equals(false);
+        assert new ValueOf(BigInteger.class).invoke("123456789012345678901234567890").equals(new BigInteger("123456789012345678901234567890"));
+        assert new ValueOf(java.sql.Date.class).invoke("2016-02-29").equals(java.sql.Date.valueOf("2016-02-29"));
+        assert new ValueOf(java.sql.Timestamp.class).invoke("2016-02-29 12:34:56.5").equals(java.sql.Timestamp.valueOf("2016-02-29 12:34:56.5"));
+        assert new ValueOf(java.io.File.class).invoke("/tmp").equals(new java.io.File("/tmp"));
+        assert new ValueOf(A.class).invoke("MONDAY") == A.MONDAY;
+        assert Arrays.equals((int[])new ValueOf(int[].class).invoke("1 , 2,3"), new int[] { 1, 2, 3 });
+        assert ValueOf.converter(Integer.TYPE) == ValueOf.converter(Integer.TYPE);
+
+        for (Object[] failure: new Object[][] { { Integer.TYPE, "1.5" }, { Long.class, "x" }, { A.class, "monday" }, { java.sql.Date.class, "29/02/2016" } }) {
+            try {
+                new ValueOf((Class<?>)failure[0]).invoke((String)failure[1]);
+                assert false : failure[0] + " <- " + failure[1];
+            } catch (IllegalArgumentException x) {}
+        }
+        try {
+            new ValueOf(Character.class);
+            assert false;
+        } catch (IllegalArgumentException x) {}
+    }
+
+    @Test(groups={"util", "util-valueof", "performance"})
+    public void runConverters() throws Exception {
+        typeinfo t = B.class.getField("x").getAnnotation(typeinfo.class);
+        ValueOf ints = new ValueOf(int[].class), flags = new ValueOf(Flags.class, t);
+        Method intValueOf = Integer.class.getMethod("valueOf", String.class), flagsValueOf = Flags.class.getMethod("valueOf", Class.class, String.class);
+        String numbers = "1, 22, 333, 4444, 55555, 666666", days = "MONDAY:TUESDAY";
+        long sum = 0;
+
+        for (int r = 0; r < 2; ++r) {
+            long now = System.nanoTime();
+            for (int i = 0; i < RUNS; ++i) {
+                // ValueOf as it was, with Method.invoke and a regex split
+                String[] texts = ValueOf.ARRAY_VALUE_SEPARATOR.split(numbers);
+                Object array = Array.newInstance(Integer.TYPE, texts.length);
+                for (int j = 0; j < texts.length; ++j) Array.set(array, j, intValueOf.invoke(null, texts[j]));
+                sum += ((int[])array).length;
+            }
+            if (r > 0) System.err.println("reflective ValueOf, int[]: " + (System.nanoTime() - now)/RUNS + " ns/conversion");
+
+            now = System.nanoTime();
+            for (int i = 0; i < RUNS; ++i) sum += ((int[])ints.invoke(numbers)).length;
+            if (r > 0) System.err.println("    cached ValueOf, int[]: " + (System.nanoTime() - now)/RUNS + " ns/conversion");
+
+            now = System.nanoTime();
+            for (int i = 0; i < RUNS; ++i) sum += flagsValueOf.invoke(null, Objects.store(t.value(), days)) != null ? 1 : 0;
+            if (r > 0) System.err.println("reflective ValueOf, Flags: " + (System.nanoTime() - now)/RUNS + " ns/conversion");
+
+            now = System.nanoTime();
+            for (int i = 0; i < RUNS; ++i) sum += flags.invoke(days) != null ? 1 : 0;
+            if (r > 0) System.err.println("    cached ValueOf, Flags: " + (System.nanoTime() - now)/RUNS + " ns/conversion");
+        }
+        assert sum == 4L*RUNS*7;
+    }
+
+    private static final int RUNS = 200000;
+
     public static enum A {
         SUNDAY,
         MONDAY,
@@ -0,0 +1,68 @@
+package lab.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import org.xillium.base.util.CopyOnWriteMap;
+import org.testng.annotations.*;
+
+
+/**
+ * CopyOnWriteMap tests.
+ */
+public class CopyOnWriteMapTest {
+
+    @Test(groups={"util"})
+    public void testSnapshots() {
+        CopyOnWriteMap<String, Integer> map = new CopyOnWriteMap<>();
+        map.put("a", 1);
+        map.put("b", 2);
+        Map<String, Integer> snapshot = map.snapshot();
+        map.put("c", 3);
+        map.remove("a");
+        assert snapshot.size() == 2 && snapshot.containsKey("a") && !snapshot.containsKey("c");
+        assert map.size() == 2 && map.get("c") == 3 && map.get("a") == null;
+
+        try {
+            map.keySet().remove("b");
+            assert false : "views should be unmodifiable";
+        } catch (UnsupportedOperationException x) {
+            // expected
+        }
+
+        Map<String, Integer> old = map.swap(Collections.singletonMap("z", 26));
+        assert old.size() == 2 && map.size() == 1 && map.get("z") == 26;
+    }
+
+    @Test(groups={"util"})
+    public void testConcurrentReads() throws Exception {
+        final CopyOnWriteMap<Integer, Integer> map = new CopyOnWriteMap<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; ++i) {
+            readers[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int n = 0; n < 2000; ++n) {
+                            int sum = 0;
+                            for (Map.Entry<Integer, Integer> entry: map.entrySet()) {
+                                assert entry.getKey().equals(entry.getValue());
+                                sum += entry.getValue();
+                            }
+                            assert sum >= 0;
+                        }
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            };
+            readers[i].start();
+        }
+        for (int i = 0; i < 2000; ++i) {
+            map.put(i, i);
+            if (i % 100 == 99) map.remove(i - 50);
+        }
+        for (Thread reader: readers) reader.join();
+        assert failure.get() == null : failure.get();
+        assert map.size() == 2000 - 20;
+    }
+}
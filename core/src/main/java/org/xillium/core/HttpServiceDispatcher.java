@@ -1,7 +1,13 @@
 package org.xillium.core;
 
 import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.*;
 import javax.servlet.*;
 import javax.servlet.annotation.WebServlet;
@@ -29,17 +35,29 @@ import org.xillium.core.management.ManagedPlatform;
  *      /[context]/[module]/[service]?[params]=...
  * </pre>
  * When a request URI matches the above pattern, this servlet looks up a Service instance registered under the name 'module/service'.
+ *
+ * <p>Services marked as {@link Service.Asynchronous} are run on a bounded thread pool, whose size is given by the system property
+ * "xillium.service.AsyncThreads" (default 32), leaving the container thread free to serve other requests. Requests waiting for
+ * a thread are queued up to the limit given by "xillium.service.AsyncQueueSize" (default 256), beyond which they are answered
+ * with "503 Service Unavailable". Such requests are decoded on the container thread before the hand-off, as the container may
+ * recycle the request as soon as a timeout completes the response; the service itself sees the request through a guard that
+ * refuses access once the request is abandoned.</p>
  */
-@WebServlet(name="dispatcher", value="/x!/*", loadOnStartup=1)
+@WebServlet(name="dispatcher", value="/x!/*", loadOnStartup=1, asyncSupported=true)
 @lombok.extern.log4j.Log4j2
 public class HttpServiceDispatcher extends HttpServlet {
-    private static final Pattern URI_REGEX = Pattern.compile("/[^/?]+/([^/?]+/[^/?]+)"); // '/context/module/service'
     private static final Pattern SQL_CONSTRAINT = Pattern.compile("\\([^.]+\\.([\\w-]+)\\)");
     private static final File TEMPORARY = null;
+    private static final int RUNNING = 0, RESPONDING = 1, ABANDONED = 2;
 
     // Servlet context path without the leading '/'
     private String _application;
 
+    // Asynchronous service execution
+    private ExecutorService _executor;
+    private ScheduledExecutorService _timer;
+    private final ConcurrentMap<String, Semaphore> _permits = new ConcurrentHashMap<String, Semaphore>();
+
     // Wired in spring application context
     //private Persistence _persistence;
 
@@ -49,6 +67,15 @@ public class HttpServiceDispatcher extends HttpServlet {
     public void init() throws ServletException {
         _application = ((ManagedPlatform)ServicePlatform.getService(ManagedPlatform.INSTANCE).first).getName();
 
+        int threads = Integer.getInteger("xillium.service.AsyncThreads", 32), queue = Integer.getInteger("xillium.service.AsyncQueueSize", 256);
+        _executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            queue > 0 ? new ArrayBlockingQueue<Runnable>(queue) : new SynchronousQueue<Runnable>(),
+            threads("xillium-async-" + _application)
+        );
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, threads("xillium-timer-" + _application));
+        timer.setRemoveOnCancelPolicy(true);
+        _timer = timer;
+
 /*
         ApplicationContext wac = WebApplicationContextUtils.getWebApplicationContext(getServletContext());
         if (wac.containsBean("persistence")) { // persistence may not be there if persistent storage is not required
@@ -57,35 +84,141 @@ public class HttpServiceDispatcher extends HttpServlet {
 */
     }
 
+    /**
+     * Shuts down asynchronous service execution
+     */
+    public void destroy() {
+        _executor.shutdown();
+        _timer.shutdownNow();
+    }
+
     /**
      * Dispatcher entry point
      */
     protected void service(HttpServletRequest req, HttpServletResponse res) throws IOException, ServletException {
         String id;
+        Pair<Service, Persistence> service;
 
         if (req.getParameterValues(Service.REQUEST_TARGET_PATH) != null) {
             id = req.getParameterValues(Service.REQUEST_TARGET_PATH)[0];
+            service = ServicePlatform.getService(id);
         } else {
-            Matcher m = URI_REGEX.matcher(req.getRequestURI());
-            if (m.matches()) {
-                id = m.group(1);
+            Map.Entry<String, Pair<Service, Persistence>> route = ServicePlatform.route(req.getRequestURI()); // '/context/module/service'
+            if (route != null) {
+                id = route.getKey();
+                service = route.getValue();
             } else {
-                _log.warn("Request not recognized: {}", req.getRequestURI());
-                res.sendError(HttpServletResponse.SC_NOT_FOUND);
-                return;
+                id = null;
+                service = null;
             }
         }
 
-        Pair<Service, Persistence> service = ServicePlatform.getService(id);
         if (service == null) {
             _log.warn("Request not recognized: {}", req.getRequestURI());
             res.sendError(HttpServletResponse.SC_NOT_FOUND);
             return;
         }
 
-        List<File> upload = new ArrayList<File>();
-        DataBinder binder = new DataBinder();
+        if (service.first instanceof Service.Asynchronous && req.isAsyncSupported()) {
+            dispatchAsync(req, res, id, service, (Service.Asynchronous)service.first);
+        } else {
+            List<File> upload = new ArrayList<File>();
+            DataBinder binder = new DataBinder();
+            Throwable failure = decode(req, id, service, binder, upload);
+            dispatch(req, res, id, service, binder, upload, failure, null);
+        }
+    }
+
+    /**
+     * Runs an asynchronous service on the dispatcher's executor, releasing the container thread immediately.
+     */
+    private void dispatchAsync(final HttpServletRequest req, final HttpServletResponse res, final String id, final Pair<Service, Persistence> service, Service.Asynchronous async) throws IOException {
+        final Semaphore permits = getPermits(id, async.getConcurrencyLimit());
+        if (permits != null && !permits.tryAcquire()) {
+            _log.warn("Concurrency limit reached: {}", id);
+            res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        final List<File> upload = new ArrayList<File>();
+        final AtomicInteger state = new AtomicInteger(RUNNING);
+        AsyncContext started = null;
+        ScheduledFuture<?> scheduled = null;
+        boolean submitted = false;
+        try {
+            final DataBinder binder = new DataBinder();
+            final Throwable failure = decode(req, id, service, binder, upload);
+            binder.putNamedObject(Service.REQUEST_SERVLET_REQ, guard(req, state));
+
+            final AsyncContext context = started = req.startAsync(req, res);
+
+            // timeouts are enforced here rather than by the container, which would recycle the response while it is being written
+            context.setTimeout(0);
+            context.addListener(new AsyncListener() {
+                public void onStartAsync(AsyncEvent event) {}
+                public void onComplete(AsyncEvent event) {}
+                public void onTimeout(AsyncEvent event) {}
+                public void onError(AsyncEvent event) {
+                    if (abandon(state)) context.complete();
+                }
+            });
+
+            final ScheduledFuture<?> timer = scheduled = async.getTimeout() > 0 ? _timer.schedule(new Runnable() {
+                public void run() {
+                    if (abandon(state)) {
+                        _log.warn("Service timed out: {}", id);
+                        try {
+                            res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                        } catch (Exception x) {
+                            _log.debug(x.getMessage(), x);
+                        } finally {
+                            context.complete();
+                        }
+                    }
+                }
+            }, async.getTimeout(), TimeUnit.MILLISECONDS) : null;
+
+            _executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        dispatch(req, res, id, service, binder, upload, failure, state);
+                    } catch (Throwable t) {
+                        _log.warn("{} caught in '{}': {}", t.getClass().getSimpleName(), id, t.getMessage());
+                    } finally {
+                        if (timer != null) timer.cancel(false);
+                        if (permits != null) permits.release();
+                        if (claim(state)) context.complete();
+                    }
+                }
+            });
+            submitted = true;
+        } catch (RejectedExecutionException x) {
+            _log.warn("Asynchronous execution rejected: {}", id);
+        } finally {
+            // anything going wrong before the hand-off must not leak the permit
+            if (!submitted) {
+                if (scheduled != null) scheduled.cancel(false);
+                if (permits != null) permits.release();
+                for (File tmp: upload) {
+                    try { tmp.delete(); } catch (Exception t) {}
+                }
+                if (started != null && claim(state)) {
+                    try {
+                        res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    } finally {
+                        started.complete();
+                    }
+                }
+            }
+        }
+    }
 
+    /**
+     * Decodes the request into the data binder: uploaded files, posted content, request parameters, and auto-parameters.
+     *
+     * @return the failure to report through the service pipeline, or null if the request is decoded successfully
+     */
+    private Throwable decode(HttpServletRequest req, String id, Pair<Service, Persistence> service, DataBinder binder, List<File> upload) {
         try {
             if (ServletFileUpload.isMultipartContent(req)) {
                 try {
@@ -122,7 +255,7 @@ public class HttpServiceDispatcher extends HttpServlet {
                 } else {
                 String content = req.getContentType();
                 if (content != null && isPostedXML(method, content.toLowerCase())) {
-                    XDBCodec.decode(binder, req.getInputStream()).close();
+                    XDBCodec.pull(binder, req.getInputStream()).close();
                     binder.put(Service.SERVICE_XML_CONTENT, Service.SERVICE_XML_CONTENT);
                 }
                 }
@@ -159,6 +292,21 @@ public class HttpServiceDispatcher extends HttpServlet {
             } else if (id.endsWith(".html")) {
                 // TODO provide a default, error reporting page template
             }
+            return null;
+        } catch (Throwable x) {
+            return x;
+        }
+    }
+
+    /**
+     * Runs the service pipeline on a decoded request: filtration, authorization, service execution, and response encoding.
+     *
+     * @param failure a failure in request decoding, or null
+     * @param state the state of an asynchronous dispatch, or null if the service is run on the container thread
+     */
+    private void dispatch(HttpServletRequest req, HttpServletResponse res, String id, Pair<Service, Persistence> service, DataBinder binder, List<File> upload, Throwable failure, AtomicInteger state) throws IOException, ServletException {
+        try {
+            if (failure != null) throw failure;
 
             // pre-service filtration
 
@@ -167,14 +315,14 @@ public class HttpServiceDispatcher extends HttpServlet {
                     ((Service.Extended)service.first).filtrate(binder);
                 } catch (AuthenticationRequiredException x) {
                     if (binder.get(Service.REQUEST_HTTP_STATUS) != null) {
-                        res.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                        if (claim(state)) res.sendError(HttpServletResponse.SC_UNAUTHORIZED);
                         return;
                     } else {
                         throw x;
                     }
                 } catch (AuthorizationException x) {
                     if (binder.get(Service.REQUEST_HTTP_STATUS) != null) {
-                        res.sendError(HttpServletResponse.SC_FORBIDDEN);
+                        if (claim(state)) res.sendError(HttpServletResponse.SC_FORBIDDEN);
                         return;
                     } else {
                         throw x;
@@ -191,14 +339,14 @@ public class HttpServiceDispatcher extends HttpServlet {
                     ((Service.Secured)service.first).authorize(id, binder, service.second);
                 } catch (AuthenticationRequiredException x) {
                     if (binder.get(Service.REQUEST_HTTP_STATUS) != null) {
-                        res.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                        if (claim(state)) res.sendError(HttpServletResponse.SC_UNAUTHORIZED);
                         return;
                     } else {
                         throw x;
                     }
                 } catch (AuthorizationException x) {
                     if (binder.get(Service.REQUEST_HTTP_STATUS) != null) {
-                        res.sendError(HttpServletResponse.SC_FORBIDDEN);
+                        if (claim(state)) res.sendError(HttpServletResponse.SC_FORBIDDEN);
                         return;
                     } else {
                         throw x;
@@ -269,87 +417,171 @@ public class HttpServiceDispatcher extends HttpServlet {
                 try { ((Service.Extended)service.first).complete(binder); } catch (Throwable t) {}
             }
 
-            res.setHeader("Access-Control-Allow-Headers", "origin,x-prototype-version,x-requested-with,accept");
-            res.setHeader("Access-Control-Allow-Origin", "*");
-
             try {
-                // HTTP headers
-                @SuppressWarnings("unchecked")
-                Multimap<String, String> headers = binder.getNamedObject(Service.SERVICE_HTTP_HEADER, Multimap.class);
-                if (headers != null) {
+                if (claim(state)) {
+                    respond(req, res, id, service, binder);
+                }
+            } finally {
+                for (File tmp: upload) {
+                    try { tmp.delete(); } catch (Exception x) {}
+                }
+                // release any cursors not exhausted by the encoder
+                for (String name: binder.getResultSetNames()) {
+                    CachedResultSet rset = binder.getResultSet(name);
+                    if (rset instanceof CursorResultSet) ((CursorResultSet)rset).close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells whether the response is to be written by the service pipeline, claiming it if so. An asynchronous response is
+     * claimed either by the pipeline or by the timeout handler, whichever comes first.
+     */
+    private static boolean claim(AtomicInteger state) {
+        return state == null || state.get() == RESPONDING || state.compareAndSet(RUNNING, RESPONDING);
+    }
+
+    /**
+     * Abandons a running asynchronous request, once no access through its guard is in progress.
+     *
+     * @return whether the request is abandoned by this call, and is to be completed by the caller
+     */
+    private static boolean abandon(AtomicInteger state) {
+        synchronized (state) {
+            return state.compareAndSet(RUNNING, ABANDONED);
+        }
+    }
+
+    /**
+     * Wraps a request into a guard that refuses access once the request is abandoned, as the container recycles the request
+     * as soon as it is completed. Accesses through the guard hold off abandonment while they are in progress.
+     */
+    private static HttpServletRequest guard(final HttpServletRequest req, final AtomicInteger state) {
+        return (HttpServletRequest)Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(), new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                synchronized (state) {
+                    if (state.get() == ABANDONED) throw new IllegalStateException("Request abandoned: " + method.getName());
                     try {
-                        for (Map.Entry<String, List<String>> e: headers.entrySet()) {
-                            for (String value: e.getValue()) res.setHeader(e.getKey(), value);
-                        }
-                    } catch (Exception x) {}
+                        return method.invoke(req, args);
+                    } catch (InvocationTargetException x) {
+                        throw x.getCause();
+                    }
+                }
+            }
+        });
+    }
+
+    private static ThreadFactory threads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + '-' + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private Semaphore getPermits(String id, int limit) {
+        if (limit > 0) {
+            Semaphore permits = _permits.get(id);
+            if (permits == null) {
+                Semaphore existing = _permits.putIfAbsent(id, permits = new Semaphore(limit));
+                if (existing != null) permits = existing;
+            }
+            return permits;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the response, as instructed by the service outcome in the data binder.
+     */
+    private void respond(HttpServletRequest req, HttpServletResponse res, String id, Pair<Service, Persistence> service, DataBinder binder) throws IOException, ServletException {
+        res.setHeader("Access-Control-Allow-Headers", "origin,x-prototype-version,x-requested-with,accept");
+        res.setHeader("Access-Control-Allow-Origin", "*");
+
+        // HTTP headers
+        @SuppressWarnings("unchecked")
+        Multimap<String, String> headers = binder.getNamedObject(Service.SERVICE_HTTP_HEADER, Multimap.class);
+        if (headers != null) {
+            try {
+                for (Map.Entry<String, List<String>> e: headers.entrySet()) {
+                    for (String value: e.getValue()) res.setHeader(e.getKey(), value);
                 }
+            } catch (Exception x) {}
+        }
+
+        String status;
 
-                String status;
+        // return status only?
+        if ((status = binder.get(Service.SERVICE_DO_REDIRECT)) != null) {
+            try { res.sendRedirect(status); } catch (Exception x) { _log.warn(x.getMessage(), x); }
+        } else if ((status = binder.get(Service.SERVICE_HTTP_STATUS)) != null) {
+            try { res.setStatus(Integer.parseInt(status)); } catch (Exception x) { _log.warn(x.getMessage(), x); }
+        } else {
+            String page = binder.get(Service.SERVICE_PAGE_TARGET);
 
-                // return status only?
-                if ((status = binder.get(Service.SERVICE_DO_REDIRECT)) != null) {
-                    try { res.sendRedirect(status); } catch (Exception x) { _log.warn(x.getMessage(), x); }
-                } else if ((status = binder.get(Service.SERVICE_HTTP_STATUS)) != null) {
-                    try { res.setStatus(Integer.parseInt(status)); } catch (Exception x) { _log.warn(x.getMessage(), x); }
+            if (page == null) {
+                if (service.first instanceof DataBinder.WithEncoder) {
+                    DataBinder.Encoder encoder = ((DataBinder.WithEncoder)service.first).getDataBinderEncoder();
+                    binder.clearAutoValues();
+                    res.setContentType(encoder.getContentType(binder));
+                    try {
+                        encoder.encode(res.getOutputStream(), binder).flush();
+                    } catch (Exception x) {
+                        // bugs in the encoder?
+                        _log.debug(x.getMessage(), x);
+                    }
+                } else
+                if (binder.find(Service.SERVICE_XML_CONTENT) != null) {
+                    binder.clearAutoValues();
+                    res.setContentType("application/xml;charset=utf-8");
+                    try {
+                        XDBCodec.encode(res.getWriter(), binder).flush();
+                    } catch (Exception x) {
+                        // bugs in the codec?
+                        _log.debug(x.getMessage(), x);
+                    }
                 } else {
-                    String page = binder.get(Service.SERVICE_PAGE_TARGET);
-
-                    if (page == null) {
-                        if (service.first instanceof DataBinder.WithEncoder) {
-                            DataBinder.Encoder encoder = ((DataBinder.WithEncoder)service.first).getDataBinderEncoder();
-                            binder.clearAutoValues();
-                            res.setContentType(encoder.getContentType(binder));
-                            try {
-                                encoder.encode(res.getOutputStream(), binder).flush();
-                            } catch (Exception x) {
-                                // bugs in the encoder?
-                                _log.debug(x.getMessage(), x);
-                            }
-                        } else
-                        if (binder.find(Service.SERVICE_XML_CONTENT) != null) {
-                            binder.clearAutoValues();
-                            res.setContentType("application/xml;charset=utf-8");
-                            try {
-                                XDBCodec.encode(res.getWriter(), binder).flush();
-                            } catch (Exception x) {
-                                // bugs in the codec?
-                                _log.debug(x.getMessage(), x);
-                            }
+                    String callback = binder.get(Service.REQUEST_JS_CALLBACK);
+
+                    binder.clearAutoValues();
+                    if (callback != null) {
+                        res.setContentType("application/javascript;charset=utf-8");
+                    } else if (id.endsWith(".html")) {
+                        res.setContentType("text/html;charset=utf-8");
+                    } else if (id.endsWith(".text")) {
+                        res.setContentType("text/plain;charset=utf-8");
+                    } else {
+                        res.setContentType("application/json;charset=utf-8");
+                    }
+                    String json = binder.get(Service.SERVICE_JSON_TUNNEL);
+
+                    if (json == null && service.first instanceof Service.Streaming) {
+                        Writer writer = new OutputStreamWriter(res.getOutputStream(), "UTF-8");
+                        if (callback != null) writer.append(callback).append('(');
+                        binder.toJSON(writer, ((Service.Streaming)service.first).getFlushThreshold());
+                        if (callback != null) writer.append(");");
+                        writer.flush();
+                    } else {
+                        if (json == null) {
+                            json = binder.toJSON();
+                        }
+
+                        if (callback != null) {
+                            res.getWriter().append(callback).append('(').append(json).append(");").flush();
                         } else {
-                            String callback = binder.get(Service.REQUEST_JS_CALLBACK);
-
-                            binder.clearAutoValues();
-                            if (callback != null) {
-                                res.setContentType("application/javascript;charset=utf-8");
-                            } else if (id.endsWith(".html")) {
-                                res.setContentType("text/html;charset=utf-8");
-                            } else if (id.endsWith(".text")) {
-                                res.setContentType("text/plain;charset=utf-8");
-                            } else {
-                                res.setContentType("application/json;charset=utf-8");
-                            }
-                            String json = binder.get(Service.SERVICE_JSON_TUNNEL);
-
-                            if (json == null) {
-                                json = binder.toJSON();
-                            }
-
-                            if (callback != null) {
-                                res.getWriter().append(callback).append('(').append(json).append(");").flush();
-                            } else {
-                                res.getWriter().append(json).flush();
-                            }
+                            res.getWriter().append(json).flush();
                         }
-                    } else {
-                        _log.debug("\t=> {}", getServletContext().getResource(page));
-                        req.setAttribute(Service.SERVICE_DATA_BINDER, binder);
-                        getServletContext().getRequestDispatcher(page).include(req, res);
                     }
                 }
-            } finally {
-                for (File tmp: upload) {
-                    try { tmp.delete(); } catch (Exception x) {}
-                }
+            } else {
+                _log.debug("\t=> {}", getServletContext().getResource(page));
+                req.setAttribute(Service.SERVICE_DATA_BINDER, binder);
+                getServletContext().getRequestDispatcher(page).include(req, res);
             }
         }
     }
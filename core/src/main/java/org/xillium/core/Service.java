@@ -122,8 +122,35 @@ public interface Service {
     }
 
     /**
-     * Interface to indicate an asynchronous service.
+     * Interface to indicate a service whose JSON response is to be streamed to the client in chunks, rather than built in memory
+     * as a whole before being sent.
+     */
+    public static interface Streaming extends Service {
+        /**
+         * Returns the number of characters to accumulate before a chunk of the response is flushed to the client.
+         */
+        public int getFlushThreshold();
+    }
+
+    /**
+     * Interface to indicate an asynchronous service, which is run off the container thread so that slow downstream calls don't
+     * tie up request processing threads.
      */
     public static interface Asynchronous extends Service {
+        /**
+         * Returns the time in milliseconds after which the client receives a "503 Service Unavailable" response if the service
+         * has yet to complete, or 0 for no time limit, which is the default.
+         */
+        public default long getTimeout() {
+            return 0;
+        }
+
+        /**
+         * Returns the maximum number of concurrent invocations of this service, or 0 for no limit. Requests beyond the limit
+         * are rejected with "503 Service Unavailable". The default is 0.
+         */
+        public default int getConcurrencyLimit() {
+            return 0;
+        }
     }
 }
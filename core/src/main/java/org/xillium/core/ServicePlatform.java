@@ -31,6 +31,7 @@ import org.xillium.core.management.*;
 import org.xillium.core.intrinsic.*;
 import org.xillium.core.util.ModuleSorter;
 import org.xillium.core.util.ServiceModule;
+import org.xillium.core.util.ServiceRouter;
 
 
 /**
@@ -53,6 +54,7 @@ public final class ServicePlatform extends ManagedPlatform {
         Map<String, String> descriptions = new HashMap<>();
         List<Pair<String, PlatformAware>> plcas = new ArrayList<>(); // plca in regular modules
         Hashtable<String, String> attrs = new Hashtable<>(); // jmx object name attributes
+        Map<String, Pair<Service, Persistence>> services = new HashMap<>(_registry); // services staged for publication
     }
 
     private final ModuleManager _modules;
@@ -60,6 +62,7 @@ public final class ServicePlatform extends ManagedPlatform {
     private final Stack<ObjectName> _manageables = new Stack<>();
     private final Stack<List<Pair<String, PlatformAware>>> _plca = new Stack<>();
     private static final org.xillium.data.validation.Reifier _dict = new org.xillium.data.validation.Reifier();
+    private static volatile ServiceRouter<Pair<Service, Persistence>> _router;
 
 
     public ServicePlatform() {
@@ -76,6 +79,18 @@ public final class ServicePlatform extends ManagedPlatform {
         return _registry.get(id);
     }
 
+    /**
+     * Routes a request URI to a registered service, rebuilding the routing trie whenever the registry has changed.
+     */
+    static Map.Entry<String, Pair<Service, Persistence>> route(String uri) {
+        Map<String, Pair<Service, Persistence>> services = _registry.snapshot();
+        ServiceRouter<Pair<Service, Persistence>> router = _router;
+        if (router == null || router.getSource() != services) {
+            _router = router = new ServiceRouter<Pair<Service, Persistence>>(services);
+        }
+        return router.route(uri);
+    }
+
     static org.xillium.data.validation.Reifier getReifier() {
         return _dict;
     }
@@ -160,15 +175,18 @@ public final class ServicePlatform extends ManagedPlatform {
 
         _log.trace("install service augmentations");
         for (ServiceAugmentation fi: info.augmentations) {
-            fi.install(_registry);
+            fi.install(info.services);
         }
 
         String hide = System.getProperty("xillium.service.HideDescription");
         if (hide == null || hide.length() == 0) {
-            _registry.put("x!/desc", new Pair<Service, Persistence>(new DescService(info.descriptions), info.persistence.first));
-            _registry.put("x!/list", new Pair<Service, Persistence>(new ListService(_registry), info.persistence.first));
+            info.services.put("x!/desc", new Pair<Service, Persistence>(new DescService(info.descriptions), info.persistence.first));
+            info.services.put("x!/list", new Pair<Service, Persistence>(new ListService(_registry), info.persistence.first));
         }
-        _registry.put("x!/ping", new Pair<Service, Persistence>(new PingService(), info.persistence.first));
+        info.services.put("x!/ping", new Pair<Service, Persistence>(new PingService(), info.persistence.first));
+
+        // all services become available to request dispatch at once
+        _registry.putAll(info.services);
 
         if (System.getProperty("xillium.persistence.DisablePrecompilation") == null) {
             for (Persistence persistence: _persistences.values()) {
@@ -244,12 +262,14 @@ public final class ServicePlatform extends ManagedPlatform {
             _log.info("<<<<<<<< JDBC Driver(" + driver + ") deregistration complete");
         }
 
-        for (Iterator<String> it = _registry.keySet().iterator(); it.hasNext();) {
-            if (!it.next().startsWith("x!/")) it.remove();
+        Map<String, Pair<Service, Persistence>> retained = new HashMap<>();
+        for (Map.Entry<String, Pair<Service, Persistence>> entry: _registry.entrySet()) {
+            if (entry.getKey().startsWith("x!/")) retained.put(entry.getKey(), entry.getValue());
         }
-        _registry.remove("x!/ping");
-        _registry.remove("x!/list");
-        _registry.remove("x!/desc");
+        retained.remove("x!/ping");
+        retained.remove("x!/list");
+        retained.remove("x!/desc");
+        _registry.swap(retained);
         while (!_applc.empty()) {
             _applc.pop().close();
         }
@@ -417,7 +437,7 @@ public final class ServicePlatform extends ManagedPlatform {
             }
 
             _log.trace("Service '" + fullname + "' class=" + gac.getBean(id).getClass().getName());
-            _registry.put(fullname, new Pair<Service, Persistence>((Service)gac.getBean(id), info.persistence.second));
+            info.services.put(fullname, new Pair<Service, Persistence>((Service)gac.getBean(id), info.persistence.second));
         }
 
         // Service augmentations
@@ -23,6 +23,7 @@ public class CrudService extends ExtendableAndSecured implements DynamicService
     private final CrudCommand _command;
     private boolean _isUnique;
     private String _missing;
+    private int _fetch;
 
 	/**
 	 * Creates a non-retrieval CRUD service. A CRUD service object is typically configured in service-configuration.xml.
@@ -112,6 +113,16 @@ public class CrudService extends ExtendableAndSecured implements DynamicService
         _missing = missing;
     }
 
+    /**
+     * Specifies a JDBC fetch size, making the results of a non-unique RETRIEVAL or SEARCH stream from an open cursor while the
+     * response is being encoded. The cursor runs on a second pooled connection, outside of the service transaction, so the query does
+     * not see uncommitted changes of the service transaction, and each request in flight holds two connections until its response is
+     * encoded.
+     */
+    public void setFetchSize(int size) {
+        _fetch = size;
+    }
+
     @Transactional
     public DataBinder run(DataBinder binder, Reifier dict, Persistence persist) throws ServiceException {
         int count = 0;
@@ -148,6 +159,10 @@ public class CrudService extends ExtendableAndSecured implements DynamicService
             case SEARCH:
                 if (_isUnique) {
                     ((ParametricQuery)_command.getStatements()[_command.choose(binder)]).executeSelect(connection, request, binder);
+                } else if (_fetch > 0) {
+                    binder.putResultSet(_command.getName(),
+                        persist.executeCursor((ParametricQuery)_command.getStatements()[_command.choose(binder)], request, _fetch)
+                    );
                 } else {
                     binder.putResultSet(_command.getName(),
                         ((ParametricQuery)_command.getStatements()[_command.choose(binder)]).executeSelect(connection, request, CachedResultSet.BUILDER)
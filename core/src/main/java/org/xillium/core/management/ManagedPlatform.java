@@ -18,6 +18,7 @@ import javax.script.*;
 import javax.servlet.*;
 import org.xillium.base.Functor;
 import org.xillium.base.beans.Throwables;
+import org.xillium.base.util.CopyOnWriteMap;
 import org.xillium.base.util.Pair;
 import org.xillium.data.*;
 import org.xillium.data.persistence.*;
@@ -33,7 +34,7 @@ import org.xillium.core.util.*;
 public abstract class ManagedPlatform extends ManagementService implements ServletContextListener {
     public static final String INSTANCE = "x!/mgmt";
 
-    protected static final Map<String, Pair<Service, Persistence>> _registry = new HashMap<>();
+    protected static final CopyOnWriteMap<String, Pair<Service, Persistence>> _registry = new CopyOnWriteMap<>();
     protected final Map<String, Persistence> _persistences = new HashMap<>();
     protected ServletContext _context;
     protected String _application;
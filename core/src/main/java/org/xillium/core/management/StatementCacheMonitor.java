@@ -0,0 +1,36 @@
+package org.xillium.core.management;
+
+import org.xillium.data.persistence.Persistence;
+import org.xillium.data.persistence.StatementCache;
+
+
+/**
+ * A manageable view of the per-transaction prepared statement caching of a Persistence. Declaring a StatementCacheMonitor
+ * in a service module's configuration exposes the cumulative cache statistics through JMX.
+ */
+public class StatementCacheMonitor extends ManagedComponent implements WithCache {
+    private final Persistence _persistence;
+
+    public StatementCacheMonitor(Persistence persistence) {
+        _persistence = persistence;
+        setStatus(Status.HEALTHY);
+    }
+
+    /**
+     * Resets the cumulative cache statistics.
+     */
+    @Override
+    public void refresh() {
+        StatementCache.Statistics stats = _persistence.getStatementCacheStatistics();
+        if (stats != null) stats.reset();
+    }
+
+    /**
+     * Reports the cumulative cache statistics, or null if statement caching is not enabled.
+     */
+    @Override
+    public CacheState getCacheState() {
+        StatementCache.Statistics stats = _persistence.getStatementCacheStatistics();
+        return stats != null ? new CacheState(stats.getSize(), stats.getMax(), stats.getRead(), stats.getHit(), stats.getSwap()) : null;
+    }
+}
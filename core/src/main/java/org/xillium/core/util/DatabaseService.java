@@ -29,6 +29,8 @@ public class DatabaseService extends ExtendableAndSecured implements DynamicServ
     private String _rset;
     private String _missing;
     private String _page;
+    private int _fetch;
+    private boolean _columnar;
 
 
     public Class<? extends DataObject> getRequestType() {
@@ -78,6 +80,35 @@ public class DatabaseService extends ExtendableAndSecured implements DynamicServ
         _missing = missing;
     }
 
+    /**
+     * Specifies a JDBC fetch size, making the results of the query stream from an open cursor while the response is being encoded,
+     * instead of being retrieved into memory in their entirety. The cursor runs on a second pooled connection, outside of the service
+     * transaction, and the connection is released after the response is encoded. The query therefore does not see uncommitted changes
+     * of the service transaction, and each request in flight holds two connections until its response is encoded.
+     *
+     * <p>A fetch size can't be combined with {@link #setColumnar(boolean) columnar} results.</p>
+     *
+     * @param size - the number of rows to retrieve from the database in each round trip
+     * @throws IllegalArgumentException if columnar results are also requested
+     */
+    public void setFetchSize(int size) {
+        if (size > 0 && _columnar) throw new IllegalArgumentException("FetchSize conflicts with Columnar: " + _statement);
+        _fetch = size;
+    }
+
+    /**
+     * Specifies whether query results are to be retrieved into a column-oriented {@link ColumnarResultSet}, which takes much less
+     * memory than a CachedResultSet for numeric and repetitive data. Columnar results can't be combined with a
+     * {@link #setFetchSize(int) fetch size}, which streams results from an open cursor instead.
+     *
+     * @param columnar - true to use a ColumnarResultSet
+     * @throws IllegalArgumentException if a fetch size is also specified
+     */
+    public void setColumnar(boolean columnar) {
+        if (columnar && _fetch > 0) throw new IllegalArgumentException("Columnar conflicts with FetchSize: " + _statement);
+        _columnar = columnar;
+    }
+
     /**
      * Specifies a page template to forward to after the service is complete.
      *
@@ -102,6 +133,10 @@ public class DatabaseService extends ExtendableAndSecured implements DynamicServ
                     } catch (java.util.NoSuchElementException x) {
                         throw new ServiceException(_missing);
                     }
+                } else if (_fetch > 0) {
+                    binder.putResultSet(_rset != null ? _rset : RSET, persist.executeCursor(_statement, request, _fetch));
+                } else if (_columnar) {
+                    binder.putResultSet(_rset != null ? _rset : RSET, persist.executeSelect(_statement, request, ColumnarResultSet.BUILDER));
                 } else {
                     binder.putResultSet(_rset != null ? _rset : RSET, persist.executeSelect(_statement, request, CachedResultSet.BUILDER));
                 }
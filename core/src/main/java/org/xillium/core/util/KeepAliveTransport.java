@@ -0,0 +1,141 @@
+package org.xillium.core.util;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * A RemoteService transport over persistent HTTP connections.
+ *
+ * <p>Connections are kept alive and reused by the JDK's HTTP keep-alive cache, which only takes a connection back after its
+ * response has been read to the end and closed. Response streams returned by this transport therefore drain any unread bytes,
+ * error responses included, before closing. The number of concurrent connections to each host is limited, and callers wait for
+ * a connection no longer than the connect timeout.</p>
+ *
+ * <p>The idle connections retained per host are bounded by the system property "http.maxConnections" (default 5).</p>
+ */
+public class KeepAliveTransport implements RemoteService.Transport {
+    private final ConcurrentMap<String, Semaphore> _hosts = new ConcurrentHashMap<String, Semaphore>();
+    private int _connectTimeout = Integer.getInteger("xillium.service.remote.ConnectTimeout", 10000);
+    private int _readTimeout = Integer.getInteger("xillium.service.remote.ReadTimeout", 0);
+    private int _connections = Integer.getInteger("xillium.service.remote.MaxConnectionsPerHost", 20);
+    private boolean _compression = true;
+
+    /**
+     * Sets the connect timeout in milliseconds, 0 for no timeout.
+     */
+    public void setConnectTimeout(int timeout) {
+        _connectTimeout = timeout;
+    }
+
+    /**
+     * Sets the read timeout in milliseconds, 0 for no timeout.
+     */
+    public void setReadTimeout(int timeout) {
+        _readTimeout = timeout;
+    }
+
+    /**
+     * Sets the maximum number of concurrent connections to each host, 0 for no limit.
+     */
+    public void setMaxConnectionsPerHost(int connections) {
+        _connections = connections;
+        _hosts.clear();
+    }
+
+    /**
+     * Specifies whether gzip compressed responses are accepted.
+     */
+    public void setCompression(boolean compression) {
+        _compression = compression;
+    }
+
+    @Override
+    public InputStream post(String address, byte[] content) throws IOException {
+        URL url = new URL(address);
+        final Semaphore permits = acquire(url);
+        try {
+            HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+            connection.setConnectTimeout(_connectTimeout);
+            connection.setReadTimeout(_readTimeout);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded;charset=utf-8");
+            if (_compression) connection.setRequestProperty("Accept-Encoding", "gzip");
+
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+
+            InputStream in;
+            try {
+                in = connection.getInputStream();
+            } catch (IOException x) {
+                // the error body must be consumed for the connection to be reused
+                InputStream error = connection.getErrorStream();
+                if (error != null) drain(error);
+                throw x;
+            }
+
+            final InputStream raw = in;
+            if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) in = new GZIPInputStream(in);
+            return new FilterInputStream(in) {
+                private boolean _closed;
+
+                @Override
+                public void close() throws IOException {
+                    if (_closed) return;
+                    _closed = true;
+                    try {
+                        drain(raw);
+                        super.close();
+                    } finally {
+                        if (permits != null) permits.release();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException x) {
+            if (permits != null) permits.release();
+            throw x;
+        }
+    }
+
+    private Semaphore acquire(URL url) throws IOException {
+        if (_connections > 0) {
+            String host = url.getHost() + ':' + (url.getPort() < 0 ? url.getDefaultPort() : url.getPort());
+            Semaphore permits = _hosts.get(host);
+            if (permits == null) {
+                Semaphore existing = _hosts.putIfAbsent(host, permits = new Semaphore(_connections));
+                if (existing != null) permits = existing;
+            }
+            try {
+                if (_connectTimeout > 0) {
+                    if (!permits.tryAcquire(_connectTimeout, TimeUnit.MILLISECONDS)) {
+                        throw new SocketTimeoutException("No connection available to " + host);
+                    }
+                } else {
+                    permits.acquire();
+                }
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(x.getMessage());
+            }
+            return permits;
+        } else {
+            return null;
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        try {
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) >= 0);
+        } finally {
+            in.close();
+        }
+    }
+}
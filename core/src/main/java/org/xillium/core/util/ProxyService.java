@@ -76,7 +76,7 @@ public class ProxyService extends ExtendableAndSecured {
             String url = lookupServerURL(binder);
             _log.info("lookupServerURL: {}", url);
             if (url != null) {
-                binder.put(SERVICE_JSON_TUNNEL, new String(RemoteService.call(url, _service, binder).body, "UTF-8"));
+                binder.put(SERVICE_JSON_TUNNEL, new String(RemoteService.call(url, _service, false, true, binder).body, "UTF-8"));
             } else {
                 if (_error != null) {
                     throw new ServiceException(String.format(_error, binder.get(_selector)));
@@ -25,6 +25,33 @@ public class RemoteService {
     private static final ObjectMapper _mapper = new ObjectMapper()
         .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
         .registerModule(new SimpleModule("PureStringDeserializerModule").addDeserializer(String.class, new PureStringDeserializer()));
+    private static volatile Transport _transport = new KeepAliveTransport();
+
+    /**
+     * A transport delivers service requests to remote servers.
+     */
+    public static interface Transport {
+        /**
+         * Posts form-urlencoded content to a URL.
+         *
+         * @return the response body, which the caller must close
+         */
+        public InputStream post(String url, byte[] content) throws IOException;
+    }
+
+    /**
+     * Replaces the transport used by all remote service calls, which by default is a {@link KeepAliveTransport}.
+     */
+    public static void setTransport(Transport transport) {
+        _transport = transport;
+    }
+
+    /**
+     * Returns the transport used by all remote service calls.
+     */
+    public static Transport getTransport() {
+        return _transport;
+    }
 
     /**
      * This class represents a response from a remote Xillium service.
@@ -33,6 +60,7 @@ public class RemoteService {
         public Map<String, String> params;
         public Map<String, Object> values;
         public Map<String, CachedResultSet> tables;
+        // the raw response body, retained only on request
         public transient byte[] body;
 
         Response setResponseBody(byte[] body) {
@@ -119,6 +147,16 @@ public class RemoteService {
      * Note: parameters in the data binder whose names start with '_' or '#' are NOT passed to the remote service.
      */
     public static Response call(String server, String service, boolean suppress, DataBinder binder, String... params) {
+        return call(server, service, suppress, false, binder, params);
+    }
+
+    /**
+     * Calls a remote service with parameters in the given DataBinder as well as in an String list, optionally retaining the raw
+     * response body in <code>Response.body</code>.
+     *
+     * Note: parameters in the data binder whose names start with '_' or '#' are NOT passed to the remote service.
+     */
+    public static Response call(String server, String service, boolean suppress, boolean retain, DataBinder binder, String... params) {
         List<String> list = new ArrayList<String>(Arrays.asList(params));
         for (Map.Entry<String, String> entry: binder.entrySet()) {
             String name = entry.getKey();
@@ -133,7 +171,7 @@ public class RemoteService {
                 list.add(name + '=' + entry.getValue());
             }
         }
-        return call(server, service, suppress, list.toArray(new String[list.size()]));
+        return call(server, service, suppress, retain, list.toArray(new String[list.size()]));
     }
 
     /**
@@ -147,35 +185,48 @@ public class RemoteService {
      * Calls a remote service with a list of "name=value" string values as arguments.
      */
     public static Response call(String server, String service, boolean suppress, String... params) {
+        return call(server, service, suppress, false, params);
+    }
+
+    /**
+     * Calls a remote service with a list of "name=value" string values as arguments, optionally retaining the raw response body
+     * in <code>Response.body</code>.
+     */
+    public static Response call(String server, String service, boolean suppress, boolean retain, String... params) {
         try {
-            URL url = new URL(server + '/' + service);
-            URLConnection connection = url.openConnection();
-            connection.setDoOutput(true);
-            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded;charset=utf-8");
-            PrintWriter pw = new PrintWriter(new OutputStreamWriter(connection.getOutputStream(), "utf-8"));
+            StringBuilder sb = new StringBuilder();
             for (String param: params) {
                 _log.trace(param);
-                pw.print(param); pw.print('&');
+                sb.append(param).append('&');
             }
-            pw.close();
-            InputStream in = connection.getInputStream();
+            InputStream in = _transport.post(server + '/' + service, sb.toString().getBytes("UTF-8"));
             try {
-                byte[] bytes = Bytes.read(in);
-                try {
-                    Response response = _mapper.readValue(bytes, Response.class).setResponseBody(bytes);
-                    if (response.params == null) {
-                        throw new ServiceException("***ProtocolErrorMissingParams");
-                    } else if (!suppress) {
-                        String message = response.params.get(Service.FAILURE_MESSAGE);
-                        if (message != null && message.length() > 0) {
-                            throw new RemoteServiceException(message);
-                        }
+                Response response;
+                if (retain) {
+                    byte[] bytes = Bytes.read(in);
+                    try {
+                        response = _mapper.readValue(bytes, Response.class).setResponseBody(bytes);
+                    } catch (JsonProcessingException x) {
+                        _log.warn(new String(bytes, "UTF-8"));
+                        throw x;
+                    }
+                } else {
+                    try {
+                        response = _mapper.readValue(in, Response.class);
+                    } catch (JsonProcessingException x) {
+                        _log.warn("Malformed response from {}/{}: {}", server, service, x.getMessage());
+                        throw x;
+                    }
+                }
+                if (response.params == null) {
+                    throw new ServiceException("***ProtocolErrorMissingParams");
+                } else if (!suppress) {
+                    String message = response.params.get(Service.FAILURE_MESSAGE);
+                    if (message != null && message.length() > 0) {
+                        throw new RemoteServiceException(message);
                     }
-                    return response;
-                } catch (JsonProcessingException x) {
-                    _log.warn(new String(bytes, "UTF-8"));
-                    throw x;
                 }
+                return response;
             } finally {
                 in.close();
             }
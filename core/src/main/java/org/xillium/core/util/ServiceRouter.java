@@ -0,0 +1,136 @@
+package org.xillium.core.util;
+
+import java.util.*;
+
+
+/**
+ * A routing trie that resolves request URIs in the form of
+ * <pre>
+ *      /[context]/[module]/[service]
+ * </pre>
+ * to services registered under the names 'module/service', by scanning the URI characters in place. No regular expression
+ * matching and no substring creation is involved in routing.
+ *
+ * <p>A ServiceRouter is immutable, built from a snapshot of a service registry. Only names consisting of exactly two non-empty
+ * segments are routable.</p>
+ */
+public class ServiceRouter<V> {
+    private static final char[] NO_KEYS = new char[0];
+
+    private static class Node<V> {
+        String prefix = "";
+        char[] keys = NO_KEYS;
+        Node<V>[] next;
+        Map.Entry<String, V> entry;
+
+        Node<V> get(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : next[index];
+        }
+    }
+
+    private final Map<String, V> _source;
+    private final Node<V> _root;
+
+    /**
+     * Builds a ServiceRouter over the services in a map, which is expected to remain unchanged.
+     *
+     * @param services a map from service names to services
+     */
+    public ServiceRouter(Map<String, V> services) {
+        _source = services;
+        List<Map.Entry<String, V>> routable = new ArrayList<Map.Entry<String, V>>();
+        for (Map.Entry<String, V> entry: services.entrySet()) {
+            if (isRoutable(entry.getKey())) routable.add(entry);
+        }
+        _root = build(routable, 0);
+    }
+
+    /**
+     * Returns the map this router has been built from.
+     */
+    public Map<String, V> getSource() {
+        return _source;
+    }
+
+    /**
+     * Resolves a request URI to a service.
+     *
+     * @param uri a request URI in the form of '/context/module/service'
+     * @return the map entry of the service, whose key is the service name, or null if the URI can't be routed
+     */
+    public Map.Entry<String, V> route(String uri) {
+        int length = uri.length();
+        if (length < 2 || uri.charAt(0) != '/') return null;
+
+        // skip the context
+        int i = 1;
+        for (char c; i < length && (c = uri.charAt(i)) != '/'; ++i) {
+            if (c == '?') return null;
+        }
+        if (i == 1 || i == length) return null;
+
+        Node<V> node = _root;
+        for (++i; node != null; node = node.get(uri.charAt(i++))) {
+            if (!uri.regionMatches(i, node.prefix, 0, node.prefix.length())) return null;
+            i += node.prefix.length();
+            if (i == length) return node.entry;
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether a service name is routable, i.e. consisting of exactly two non-empty segments separated by a '/'.
+     */
+    public static boolean isRoutable(String name) {
+        int slash = name.indexOf('/');
+        return slash > 0 && slash < name.length() - 1 && name.indexOf('/', slash + 1) < 0 && name.indexOf('?') < 0;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <V> Node<V> build(List<Map.Entry<String, V>> entries, int depth) {
+        Node<V> node = new Node<V>();
+
+        // single-child chains are collapsed into the prefix of the node
+        if (entries.size() > 0) {
+            String first = entries.get(0).getKey();
+            int end = first.length();
+            for (Map.Entry<String, V> entry: entries) {
+                String name = entry.getKey();
+                end = Math.min(end, name.length());
+                for (int i = depth; i < end; ++i) {
+                    if (name.charAt(i) != first.charAt(i)) {
+                        end = i;
+                        break;
+                    }
+                }
+            }
+            node.prefix = first.substring(depth, end);
+            depth = end;
+        }
+
+        SortedMap<Character, List<Map.Entry<String, V>>> branches = new TreeMap<Character, List<Map.Entry<String, V>>>();
+        for (Map.Entry<String, V> entry: entries) {
+            String name = entry.getKey();
+            if (name.length() == depth) {
+                node.entry = entry;
+            } else {
+                List<Map.Entry<String, V>> branch = branches.get(name.charAt(depth));
+                if (branch == null) branches.put(name.charAt(depth), branch = new ArrayList<Map.Entry<String, V>>());
+                branch.add(entry);
+            }
+        }
+
+        if (branches.size() > 0) {
+            node.keys = new char[branches.size()];
+            node.next = new Node[branches.size()];
+            int index = 0;
+            for (Map.Entry<Character, List<Map.Entry<String, V>>> branch: branches.entrySet()) {
+                node.keys[index] = branch.getKey();
+                node.next[index] = build(branch.getValue(), depth + 1);
+                ++index;
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,225 @@
+package lab;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.mock.web.*;
+import org.xillium.base.beans.Beans;
+import org.xillium.base.util.Pair;
+import org.xillium.data.DataBinder;
+import org.xillium.data.persistence.Persistence;
+import org.xillium.data.validation.Reifier;
+import org.xillium.core.*;
+import org.xillium.core.management.ManagedPlatform;
+import org.testng.annotations.*;
+
+
+/**
+ * HttpServiceDispatcher with synchronous and asynchronous services.
+ */
+public class HttpServiceDispatcherTest {
+    private static class Platform extends ManagedPlatform {
+        public void contextDestroyed(ServletContextEvent event) {}
+
+        void register(String id, Service service) {
+            _registry.put(id, new Pair<Service, Persistence>(service, null));
+        }
+
+        void unregister(String id) {
+            _registry.remove(id);
+        }
+    }
+
+    private static class Echo implements Service.Asynchronous {
+        public DataBinder run(DataBinder binder, Reifier dict, Persistence persist) {
+            binder.put("echo", binder.get("text"));
+            return binder;
+        }
+    }
+
+    private static class Blocking extends Echo {
+        final CountDownLatch release = new CountDownLatch(1);
+        final int limit;
+
+        Blocking(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public int getConcurrencyLimit() {
+            return limit;
+        }
+
+        @Override
+        public DataBinder run(DataBinder binder, Reifier dict, Persistence persist) {
+            try { release.await(); } catch (InterruptedException x) {}
+            return super.run(binder, dict, persist);
+        }
+    }
+
+    private static final String[] SERVICES = { "lab/async", "lab/slow", "lab/limited", "lab/blocked", "lab/sync" };
+
+    private final Platform _platform = new Platform();
+    private final AtomicReference<Throwable> _late = new AtomicReference<Throwable>();
+    private final CountDownLatch _released = new CountDownLatch(1), _finished = new CountDownLatch(1);
+    private final Blocking _limited = new Blocking(1), _blocked = new Blocking(0);
+    private HttpServiceDispatcher _dispatcher;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        MockServletContext context = new MockServletContext();
+        context.setContextPath("/lab");
+        _platform.contextInitialized(new ServletContextEvent(context));
+
+        _platform.register("lab/async", new Echo());
+        _platform.register("lab/slow", new Echo() {
+            @Override
+            public long getTimeout() {
+                return 50;
+            }
+
+            @Override
+            public DataBinder run(DataBinder binder, Reifier dict, Persistence persist) {
+                try {
+                    _released.await();
+                    ((HttpServletRequest)binder.getNamedObject(Service.REQUEST_SERVLET_REQ)).getParameter("text");
+                } catch (Throwable t) {
+                    _late.set(t);
+                }
+                binder.put("late", "late");
+                _finished.countDown();
+                return binder;
+            }
+        });
+        _platform.register("lab/limited", _limited);
+        _platform.register("lab/blocked", _blocked);
+        _platform.register("lab/sync", new Service() {
+            public DataBinder run(DataBinder binder, Reifier dict, Persistence persist) {
+                binder.put("echo", binder.get("text"));
+                binder.put("thread", Thread.currentThread().getName());
+                return binder;
+            }
+        });
+
+        _dispatcher = new HttpServiceDispatcher();
+        _dispatcher.init();
+    }
+
+    @AfterClass
+    public void tearDown() {
+        _dispatcher.destroy();
+        for (String id: SERVICES) _platform.unregister(id);
+        _platform.unregister(ManagedPlatform.INSTANCE);
+    }
+
+    @Test(groups={"dispatcher"})
+    public void testAsynchronous() throws Exception {
+        MockHttpServletRequest req = request("lab/async", "hello");
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        _dispatcher.service(req, res);
+        await(req);
+
+        assert res.getStatus() == 200 : res.getStatus();
+        assert res.getContentAsString().contains("\"echo\":\"hello\"") : res.getContentAsString();
+    }
+
+    @Test(groups={"dispatcher"})
+    public void testTimeout() throws Exception {
+        MockHttpServletRequest req = request("lab/slow", "hello");
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        _dispatcher.service(req, res);
+        await(req);
+        assert res.getStatus() == 503 : res.getStatus();
+
+        // the service, running late, is refused the recycled request and its output is discarded
+        _released.countDown();
+        assert _finished.await(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        assert _late.get() instanceof IllegalStateException : _late.get();
+        assert res.getStatus() == 503 : res.getStatus();
+        assert !res.getContentAsString().contains("late") : res.getContentAsString();
+    }
+
+    @Test(groups={"dispatcher"})
+    public void testConcurrencyLimit() throws Exception {
+        MockHttpServletRequest first = request("lab/limited", "first");
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        _dispatcher.service(first, firstResponse);
+        assert first.isAsyncStarted();
+
+        MockHttpServletRequest second = request("lab/limited", "second");
+        MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+        _dispatcher.service(second, secondResponse);
+        assert !second.isAsyncStarted();
+        assert secondResponse.getStatus() == 503 : secondResponse.getStatus();
+
+        _limited.release.countDown();
+        await(first);
+        assert firstResponse.getStatus() == 200 : firstResponse.getStatus();
+        assert firstResponse.getContentAsString().contains("\"echo\":\"first\"") : firstResponse.getContentAsString();
+    }
+
+    @Test(groups={"dispatcher"})
+    public void testOverload() throws Exception {
+        System.setProperty("xillium.service.AsyncThreads", "1");
+        System.setProperty("xillium.service.AsyncQueueSize", "1");
+        HttpServiceDispatcher dispatcher = new HttpServiceDispatcher();
+        try {
+            dispatcher.init();
+        } finally {
+            System.clearProperty("xillium.service.AsyncThreads");
+            System.clearProperty("xillium.service.AsyncQueueSize");
+        }
+
+        try {
+            MockHttpServletRequest[] reqs = new MockHttpServletRequest[3];
+            MockHttpServletResponse[] ress = new MockHttpServletResponse[reqs.length];
+            for (int i = 0; i < reqs.length; ++i) {
+                dispatcher.service(reqs[i] = request("lab/blocked", "r" + i), ress[i] = new MockHttpServletResponse());
+            }
+
+            // one running, one queued, and one shed
+            await(reqs[2]);
+            assert ress[2].getStatus() == 503 : ress[2].getStatus();
+
+            _blocked.release.countDown();
+            for (int i = 0; i < 2; ++i) {
+                await(reqs[i]);
+                assert ress[i].getStatus() == 200 : ress[i].getStatus();
+                assert ress[i].getContentAsString().contains("\"echo\":\"r" + i + "\"") : ress[i].getContentAsString();
+            }
+        } finally {
+            dispatcher.destroy();
+        }
+    }
+
+    @Test(groups={"dispatcher"})
+    public void testSynchronous() throws Exception {
+        MockHttpServletRequest req = request("lab/sync", "hello");
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        _dispatcher.service(req, res);
+
+        assert !req.isAsyncStarted();
+        assert res.getStatus() == 200 : res.getStatus();
+        assert res.getContentType().startsWith("application/json") : res.getContentType();
+        assert res.getContentAsString().contains("\"echo\":\"hello\"") : res.getContentAsString();
+        assert res.getContentAsString().contains("\"thread\":\"" + Thread.currentThread().getName() + "\"") : res.getContentAsString();
+    }
+
+    private static MockHttpServletRequest request(String id, String text) {
+        MockHttpServletRequest req = new MockHttpServletRequest("GET", "/lab/x!/" + id);
+        req.setAsyncSupported(true);
+        req.setParameter(Service.REQUEST_TARGET_PATH, id);
+        req.setParameter("text", text);
+        return req;
+    }
+
+    private static void await(MockHttpServletRequest req) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (req.isAsyncStarted()) {
+            assert System.currentTimeMillis() < deadline : "asynchronous request not completed: " + Beans.toString(req.getParameterMap());
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package lab;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+import com.sun.net.httpserver.*;
+import org.xillium.core.util.RemoteService;
+import org.testng.annotations.*;
+
+
+/**
+ * RemoteService over the keep-alive transport, against an embedded HTTP server.
+ */
+public class RemoteServiceTest {
+    private static final String RESPONSE = "{\"params\":{\"greeting\":\"hello\"},\"tables\":{}}";
+    private static final int CALLS = 200;
+
+    private HttpServer _server;
+    private final Set<Integer> _ports = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @BeforeClass
+    public void start() throws IOException {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        _server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        _server.createContext("/app", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                _ports.add(exchange.getRemoteAddress().getPort());
+                byte[] request = org.xillium.base.util.Bytes.read(exchange.getRequestBody());
+                String name = new String(request, "UTF-8").replaceAll(".*name=([^&]*).*", "$1");
+                byte[] body = RESPONSE.replace("hello", "hello " + name).getBytes("UTF-8");
+                if ("gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+                    gzip.write(body);
+                    gzip.close();
+                    body = bytes.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        _server.start();
+    }
+
+    @AfterClass
+    public void stop() {
+        _server.stop(0);
+    }
+
+    @Test(groups={"remote"})
+    public void testKeepAlive() {
+        String server = "http://127.0.0.1:" + _server.getAddress().getPort() + "/app";
+
+        RemoteService.Response response = RemoteService.call(server, "module/service", "name=world");
+        assert "hello world".equals(response.params.get("greeting")) : response.params;
+        assert response.body == null;
+
+        response = RemoteService.call(server, "module/service", false, true, "name=proxy");
+        assert "hello proxy".equals(response.params.get("greeting")) : response.params;
+        assert response.body != null && new String(response.body).contains("hello proxy");
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < CALLS; ++i) {
+            assert ("hello " + i).equals(RemoteService.call(server, "module/service", "name=" + i).params.get("greeting"));
+        }
+        System.err.println(CALLS + " calls in " + (System.currentTimeMillis() - now) + " ms over " + _ports.size() + " connection(s)");
+        assert _ports.size() == 1 : "connections not reused: " + _ports.size();
+    }
+}
@@ -0,0 +1,78 @@
+package lab;
+
+import java.util.*;
+import java.util.regex.*;
+import org.xillium.core.util.ServiceRouter;
+import org.testng.annotations.*;
+
+
+/**
+ * ServiceRouter vs. regular expression matching followed by hash lookup.
+ */
+public class ServiceRouterTest {
+    private static final Pattern URI_REGEX = Pattern.compile("/[^/?]+/([^/?]+/[^/?]+)"); // '/context/module/service'
+    private static final int MODULES = 40, SERVICES = 75, RUNS = 2000000;
+
+    private static Map<String, Integer> registry() {
+        Map<String, Integer> services = new HashMap<String, Integer>();
+        for (int m = 0; m < MODULES; ++m) {
+            for (int s = 0; s < SERVICES; ++s) {
+                services.put("module" + m + "/service-" + s, m*SERVICES + s);
+            }
+        }
+        services.put("x!/ping", -1);
+        services.put("x!/mgmt", -2);
+        services.put("module0/nested/service", -3);
+        return services;
+    }
+
+    private static Integer regex(Map<String, Integer> services, String uri) {
+        Matcher m = URI_REGEX.matcher(uri);
+        return m.matches() ? services.get(m.group(1)) : null;
+    }
+
+    @Test(groups={"router"})
+    public void testRouting() {
+        Map<String, Integer> services = registry();
+        ServiceRouter<Integer> router = new ServiceRouter<Integer>(services);
+
+        String[] uris = {
+            "/app/module3/service-14", "/app/x!/ping", "/app/x!/mgmt", "/app/module39/service-74", "/app/module0/nested/service",
+            "/app/module3/service-", "/app/module3/service-140", "/app/module3", "/app/module3/", "//module3/service-14", "/app",
+            "/", "", "app/module3/service-14", "/app/module3/service-14/", "/a?b/module3/service-14", "/app/x!/desc", "/app/module40/service-0"
+        };
+        for (String uri: uris) {
+            Map.Entry<String, Integer> route = router.route(uri);
+            Integer expected = regex(services, uri);
+            System.err.println(uri + " -> " + route);
+            assert expected == null ? route == null : route != null && expected.equals(route.getValue()) : "mismatch on " + uri;
+            if (route != null) assert uri.endsWith('/' + route.getKey());
+        }
+    }
+
+    @Test(groups={"router", "performance"})
+    public void runPerformance() {
+        Map<String, Integer> services = registry();
+        ServiceRouter<Integer> router = new ServiceRouter<Integer>(services);
+        String[] uris = new String[1024];
+        Random random = new Random(7);
+        for (int i = 0; i < uris.length; ++i) {
+            uris[i] = "/application/module" + random.nextInt(MODULES) + "/service-" + random.nextInt(SERVICES);
+        }
+
+        long sum = 0;
+        for (int i = 0; i < RUNS; ++i) {
+            sum += regex(services, uris[i & 1023]) + router.route(uris[i & 1023]).getValue();
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) sum += regex(services, uris[i & 1023]);
+        System.err.println("regex + hash lookup: " + (System.nanoTime() - now)/RUNS + " ns/request");
+
+        now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) sum += router.route(uris[i & 1023]).getValue();
+        System.err.println("     routing trie: " + (System.nanoTime() - now)/RUNS + " ns/request");
+
+        assert sum != 0;
+    }
+}
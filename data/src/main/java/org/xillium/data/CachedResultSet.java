@@ -47,13 +47,8 @@ public class CachedResultSet {
      */
     public CachedResultSet(ResultSet rset) throws SQLException {
         try {
-            ResultSetMetaData metaData = rset.getMetaData();
-            int width = metaData.getColumnCount();
-
-            this.columns = new String[width];
-            for (int i = 0; i < width; ++i) {
-                columns[i] = Strings.toLowerCamelCase(metaData.getColumnLabel(i+1), '_');
-            }
+            this.columns = getColumnNames(rset.getMetaData());
+            int width = columns.length;
 
             if (rset.next()) {
                 this.rows = new ArrayList<Object[]>();
@@ -185,7 +180,8 @@ public class CachedResultSet {
         for (String column: columns) try { fields.put(column, Beans.getKnownField(type, column)); } catch (Exception x) {}
 
         List<T> list = new ArrayList<T>();
-        for (Object[] row: rows) {
+        for (Iterator<Object[]> it = rowIterator(); it.hasNext();) {
+            Object[] row = it.next();
             T object = type.newInstance();
             for (int i = 0; i < row.length; ++i) {
                 Field field = fields.get(columns[i]);
@@ -237,6 +233,19 @@ public class CachedResultSet {
         return index;
     }
 
+    /**
+     * Returns an iterator over the rows of this result set.
+     *
+     * @return an iterator over the rows, which is empty if there are no rows
+     */
+    public Iterator<Object[]> rowIterator() {
+        if (rows != null) {
+            return rows.iterator();
+        } else {
+            return Collections.<Object[]>emptyList().iterator();
+        }
+    }
+
     /**
      * Inside an object: serialized the cached result set into JSON.
      *
@@ -246,4 +255,13 @@ public class CachedResultSet {
     public JSONBuilder toJSON(JSONBuilder jb) {
         return jb.append('{').serialize("columns", columns).append(',').serialize("rows", rows).append('}');
     }
+
+    // column names in lower camel case
+    static String[] getColumnNames(ResultSetMetaData metaData) throws SQLException {
+        String[] columns = new String[metaData.getColumnCount()];
+        for (int i = 0; i < columns.length; ++i) {
+            columns[i] = Strings.toLowerCamelCase(metaData.getColumnLabel(i+1), '_');
+        }
+        return columns;
+    }
 }
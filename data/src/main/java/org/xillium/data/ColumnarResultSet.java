@@ -0,0 +1,430 @@
+package org.xillium.data;
+
+import java.sql.*;
+import java.util.*;
+import org.xillium.base.beans.JSONBuilder;
+import org.xillium.data.persistence.ResultSetWorker;
+
+
+/**
+ * A cached result set that stores its data by column rather than by row, choosing the storage of each column from the result set
+ * meta data.
+ *
+ * <ul>
+ * <li>Integral columns are stored in a {@code long[]}, and floating point columns in a {@code double[]}, each with a null bitmap.</li>
+ * <li>String columns of low cardinality are dictionary-encoded, storing a code per row and each distinct value only once.</li>
+ * <li>All other columns are stored as objects.</li>
+ * </ul>
+ *
+ * <p>The {@code rows} field is a read-only view that materializes rows on access, with the same values as those in a
+ * CachedResultSet retrieved from the same JDBC result set, so a ColumnarResultSet serializes to the same JSON and XML. Use
+ * {@link #getValue(int, int)}, {@link #getLong(int, int)}, and {@link #getDouble(int, int)} for access without materializing rows.</p>
+ */
+public class ColumnarResultSet extends CachedResultSet {
+    public static final Builder BUILDER = new Builder();
+
+    // a string column is dictionary-encoded if no more than this fraction of its values are distinct
+    private static final int CARDINALITY_RATIO = 4;
+
+    private final Column[] _columns;
+    private final int _size;
+
+    /**
+     * A ResultSetWorker implementation that builds a ColumnarResultSet.
+     */
+    public static class Builder implements ResultSetWorker<ColumnarResultSet> {
+        public ColumnarResultSet process(ResultSet rs) throws SQLException {
+            return new ColumnarResultSet(rs);
+        }
+    }
+
+    /**
+     * Retrieves the rows from a freshly obtained JDBC result set into a ColumnarResultSet.
+     * Closes the JDBC result set after retrieval.
+     */
+    public ColumnarResultSet(ResultSet rset) throws SQLException {
+        this(new Table(rset));
+    }
+
+    private ColumnarResultSet(Table table) {
+        super(table.names, table.size > 0 ? new Rows(table.columns, table.size) : null);
+        _columns = table.columns;
+        _size = table.size;
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Returns the value at the given row and column, both starting from 0.
+     */
+    public Object getValue(int row, int column) {
+        return _columns[column].get(row);
+    }
+
+    /**
+     * Returns the value at the given row and column as a long, or 0 if the value is null.
+     *
+     * @throws ClassCastException if the column is not numeric
+     */
+    public long getLong(int row, int column) {
+        Column c = _columns[column];
+        if (c instanceof LongColumn) {
+            return c.isNull(row) ? 0 : ((LongColumn)c).values[row];
+        } else {
+            Object value = c.get(row);
+            return value != null ? ((Number)value).longValue() : 0;
+        }
+    }
+
+    /**
+     * Returns the value at the given row and column as a double, or 0 if the value is null.
+     *
+     * @throws ClassCastException if the column is not numeric
+     */
+    public double getDouble(int row, int column) {
+        Column c = _columns[column];
+        if (c instanceof DoubleColumn) {
+            return c.isNull(row) ? 0 : ((DoubleColumn)c).values[row];
+        } else {
+            Object value = c.get(row);
+            return value != null ? ((Number)value).doubleValue() : 0;
+        }
+    }
+
+    @Override
+    public JSONBuilder toJSON(JSONBuilder jb) {
+        jb.append('{').serialize("columns", columns).append(',').quote("rows").append(':');
+        if (rows != null) {
+            jb.append('[');
+            for (int r = 0; r < _size; ++r) {
+                jb.append('[');
+                for (Column column: _columns) {
+                    column.toJSON(jb, r);
+                    jb.append(',');
+                }
+                if (_columns.length > 0) {
+                    jb.replaceLast(']');
+                } else {
+                    jb.append(']');
+                }
+                jb.append(',');
+            }
+            jb.replaceLast(']');
+        } else {
+            jb.append("null");
+        }
+        return jb.append('}');
+    }
+
+    /*!
+     * The columns retrieved from a JDBC result set.
+     */
+    private static class Table {
+        final String[] names;
+        final Column[] columns;
+        int size;
+
+        Table(ResultSet rset) throws SQLException {
+            try {
+                ResultSetMetaData meta = rset.getMetaData();
+                names = getColumnNames(meta);
+                columns = new Column[names.length];
+                for (int i = 0; i < columns.length; ++i) {
+                    columns[i] = Column.of(meta.getColumnClassName(i+1));
+                }
+                for (; rset.next(); ++size) {
+                    for (int i = 0; i < columns.length; ++i) {
+                        // a column falls back to generic storage if the driver returns values not matching the meta data
+                        columns[i] = columns[i].read(rset, i+1, size);
+                    }
+                }
+                for (int i = 0; i < columns.length; ++i) {
+                    columns[i] = columns[i].seal();
+                }
+            } finally {
+                rset.close();
+            }
+        }
+    }
+
+    // read-only view of the rows
+    private static class Rows extends AbstractList<Object[]> implements RandomAccess {
+        private final Column[] _columns;
+        private final int _size;
+
+        Rows(Column[] columns, int size) {
+            _columns = columns;
+            _size = size;
+        }
+
+        @Override
+        public Object[] get(int index) {
+            if (index < 0 || index >= _size) throw new IndexOutOfBoundsException(String.valueOf(index));
+            Object[] row = new Object[_columns.length];
+            for (int i = 0; i < row.length; ++i) {
+                row[i] = _columns[i].get(index);
+            }
+            return row;
+        }
+
+        @Override
+        public int size() {
+            return _size;
+        }
+    }
+
+    /*!
+     * Column storage. Columns are filled in by read() one row at a time, and sealed to trim the storage afterwards.
+     */
+    private static abstract class Column {
+        int size;
+        long[] nulls = new long[1];
+
+        static Column of(String type) {
+            if ("java.lang.Long".equals(type)) {
+                return new LongColumn(LongColumn.LONG);
+            } else if ("java.lang.Integer".equals(type)) {
+                return new LongColumn(LongColumn.INTEGER);
+            } else if ("java.lang.Short".equals(type)) {
+                return new LongColumn(LongColumn.SHORT);
+            } else if ("java.lang.Byte".equals(type)) {
+                return new LongColumn(LongColumn.BYTE);
+            } else if ("java.lang.Double".equals(type)) {
+                return new DoubleColumn(false);
+            } else if ("java.lang.Float".equals(type)) {
+                return new DoubleColumn(true);
+            } else if ("java.lang.String".equals(type)) {
+                return new StringColumn();
+            } else {
+                return new ObjectColumn();
+            }
+        }
+
+        /*!
+         * Reads the value of a column in the current row, returning the column to store subsequent values.
+         */
+        Column read(ResultSet rset, int index, int row) throws SQLException {
+            Object value = rset.getObject(index);
+            if (value == null) {
+                grow(row);
+                setNull(row);
+                size = row + 1;
+                return this;
+            } else if (accepts(value)) {
+                grow(row);
+                store(row, value);
+                size = row + 1;
+                return this;
+            } else {
+                ObjectColumn column = new ObjectColumn();
+                column.values = new Object[capacity(0, row)];
+                for (int r = 0; r < row; ++r) {
+                    column.values[r] = get(r);
+                }
+                column.values[row] = value;
+                column.size = row + 1;
+                return column;
+            }
+        }
+
+        void setNull(int row) {
+            if ((row >> 6) >= nulls.length) nulls = Arrays.copyOf(nulls, Math.max(nulls.length*2, (row >> 6) + 1));
+            nulls[row >> 6] |= 1L << row;
+        }
+
+        boolean isNull(int row) {
+            return (row >> 6) < nulls.length && (nulls[row >> 6] & (1L << row)) != 0;
+        }
+
+        static int capacity(int length, int row) {
+            return Math.max(16, Math.max(length*2, row + 1));
+        }
+
+        abstract boolean accepts(Object value);
+        abstract void grow(int row);
+        abstract void store(int row, Object value);
+        abstract Object get(int row);
+        abstract Column seal();
+
+        void toJSON(JSONBuilder jb, int row) {
+            jb.serialize(get(row));
+        }
+    }
+
+    private static class LongColumn extends Column {
+        static final int LONG = 0, INTEGER = 1, SHORT = 2, BYTE = 3;
+        final int kind;
+        long[] values = new long[0];
+
+        LongColumn(int kind) {
+            this.kind = kind;
+        }
+
+        boolean accepts(Object value) {
+            switch (kind) {
+            case LONG: return value instanceof Long;
+            case INTEGER: return value instanceof Integer;
+            case SHORT: return value instanceof Short;
+            default: return value instanceof Byte;
+            }
+        }
+
+        void grow(int row) {
+            if (row >= values.length) values = Arrays.copyOf(values, capacity(values.length, row));
+        }
+
+        void store(int row, Object value) {
+            values[row] = ((Number)value).longValue();
+        }
+
+        Object get(int row) {
+            if (isNull(row)) return null;
+            long value = values[row];
+            switch (kind) {
+            case LONG: return value;
+            case INTEGER: return (int)value;
+            case SHORT: return (short)value;
+            default: return (byte)value;
+            }
+        }
+
+        Column seal() {
+            values = Arrays.copyOf(values, size);
+            return this;
+        }
+
+        @Override
+        void toJSON(JSONBuilder jb, int row) {
+            if (isNull(row)) {
+                jb.append("null");
+            } else {
+                jb.append(values[row]);
+            }
+        }
+    }
+
+    private static class DoubleColumn extends Column {
+        final boolean single;
+        double[] values = new double[0];
+
+        DoubleColumn(boolean single) {
+            this.single = single;
+        }
+
+        boolean accepts(Object value) {
+            return single ? value instanceof Float : value instanceof Double;
+        }
+
+        void grow(int row) {
+            if (row >= values.length) values = Arrays.copyOf(values, capacity(values.length, row));
+        }
+
+        void store(int row, Object value) {
+            values[row] = ((Number)value).doubleValue();
+        }
+
+        Object get(int row) {
+            if (isNull(row)) return null;
+            return single ? (Object)(float)values[row] : (Object)values[row];
+        }
+
+        Column seal() {
+            values = Arrays.copyOf(values, size);
+            return this;
+        }
+
+        @Override
+        void toJSON(JSONBuilder jb, int row) {
+            if (isNull(row)) {
+                jb.append("null");
+            } else if (single) {
+                jb.serialize(get(row));
+            } else {
+                jb.append(values[row]);
+            }
+        }
+    }
+
+    private static class StringColumn extends Column {
+        Map<String, Integer> codes = new HashMap<String, Integer>();
+        List<String> dictionary = new ArrayList<String>();
+        int[] values = new int[0];
+
+        boolean accepts(Object value) {
+            return value instanceof String;
+        }
+
+        void grow(int row) {
+            if (row >= values.length) values = Arrays.copyOf(values, capacity(values.length, row));
+        }
+
+        @Override
+        void setNull(int row) {
+            values[row] = -1;
+        }
+
+        void store(int row, Object value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                codes.put((String)value, code = dictionary.size());
+                dictionary.add((String)value);
+            }
+            values[row] = code;
+        }
+
+        Object get(int row) {
+            int code = values[row];
+            return code < 0 ? null : dictionary.get(code);
+        }
+
+        Column seal() {
+            codes = null;
+            if (dictionary.size()*CARDINALITY_RATIO > size) {
+                ObjectColumn column = new ObjectColumn();
+                column.values = new Object[size];
+                for (int r = 0; r < size; ++r) column.values[r] = get(r);
+                column.size = size;
+                return column;
+            } else {
+                values = Arrays.copyOf(values, size);
+                dictionary = Arrays.asList(dictionary.toArray(new String[dictionary.size()]));
+                return this;
+            }
+        }
+    }
+
+    private static class ObjectColumn extends Column {
+        Object[] values = new Object[0];
+
+        boolean accepts(Object value) {
+            return true;
+        }
+
+        void grow(int row) {
+            if (row >= values.length) values = Arrays.copyOf(values, capacity(values.length, row));
+        }
+
+        @Override
+        void setNull(int row) {
+            values[row] = null;
+        }
+
+        void store(int row, Object value) {
+            values[row] = value;
+        }
+
+        Object get(int row) {
+            return values[row];
+        }
+
+        Column seal() {
+            values = Arrays.copyOf(values, size);
+            return this;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.xillium.data;
+
+import java.sql.*;
+import java.util.*;
+import org.xillium.base.beans.JSONBuilder;
+
+
+/**
+ * A result set that keeps its JDBC cursor open and retrieves rows only as they are iterated, typically while the DataBinder
+ * holding it is being encoded. Peak memory is therefore bounded by the JDBC fetch size rather than by the number of rows.
+ *
+ * <p>A CursorResultSet can be iterated only once. Its {@code rows} field is always null. The result set, its statement, and
+ * the connection it owns, if any, are closed as soon as the rows are exhausted or {@link #close()} is called, whichever comes
+ * first.</p>
+ */
+public class CursorResultSet extends CachedResultSet implements AutoCloseable {
+    private final ResultSet _rset;
+    private final Connection _connection;
+    private boolean _iterated;
+    private boolean _closed;
+
+    /**
+     * Wraps an open JDBC result set into a CursorResultSet.
+     *
+     * @param rset an open JDBC result set
+     * @param connection a connection dedicated to this result set, which is to be committed and closed together with the result set,
+     *        or null if the connection is managed elsewhere
+     * @throws SQLException if the result set meta data can't be retrieved
+     */
+    public CursorResultSet(ResultSet rset, Connection connection) throws SQLException {
+        super(getColumnNames(rset.getMetaData()), null);
+        _rset = rset;
+        _connection = connection;
+    }
+
+    /**
+     * Returns an iterator that retrieves rows from the open cursor. The cursor is closed once the iterator is exhausted.
+     *
+     * @return an iterator over the rows
+     * @throws IllegalStateException if the rows have already been iterated
+     */
+    @Override
+    public Iterator<Object[]> rowIterator() {
+        if (_iterated) throw new IllegalStateException("CursorResultSet can only be iterated once");
+        _iterated = true;
+
+        return new Iterator<Object[]>() {
+            private Object[] _next;
+
+            public boolean hasNext() {
+                if (_next == null && !_closed) {
+                    try {
+                        if (_rset.next()) {
+                            _next = new Object[columns.length];
+                            for (int i = 0; i < columns.length; ++i) {
+                                _next[i] = _rset.getObject(i+1);
+                            }
+                        } else {
+                            close();
+                        }
+                    } catch (SQLException x) {
+                        close();
+                        throw new RuntimeException(x.getMessage(), x);
+                    }
+                }
+                return _next != null;
+            }
+
+            public Object[] next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Object[] row = _next;
+                _next = null;
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Inside an object: serialized the result set into JSON, retrieving rows from the cursor as they are serialized.
+     *
+     * @param jb a JSONBuilder to contain generated JSON text
+     * @return the JSONBuilder
+     */
+    @Override
+    public JSONBuilder toJSON(JSONBuilder jb) {
+        jb.append('{').serialize("columns", columns).append(',').quote("rows").append(':');
+        Iterator<Object[]> it = rowIterator();
+        if (it.hasNext()) {
+            jb.append('[');
+            do {
+                jb.serialize(it.next()).append(',');
+            } while (it.hasNext());
+            jb.replaceLast(']');
+        } else {
+            jb.append("null");
+        }
+        return jb.append('}');
+    }
+
+    /**
+     * Closes the cursor, its statement, and the connection owned by this result set. This method is idempotent.
+     */
+    @Override
+    public void close() {
+        if (_closed) return;
+        _closed = true;
+
+        try {
+            Statement statement = _rset.getStatement();
+            _rset.close();
+            if (statement != null) statement.close();
+        } catch (SQLException x) {
+            // ignored
+        }
+        if (_connection != null) {
+            try {
+                if (!_connection.getAutoCommit()) {
+                    _connection.commit();
+                    _connection.setAutoCommit(true);
+                }
+            } catch (SQLException x) {
+                // ignored
+            }
+            try { _connection.close(); } catch (SQLException x) {}
+        }
+    }
+}
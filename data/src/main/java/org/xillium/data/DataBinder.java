@@ -282,6 +282,23 @@ public class DataBinder extends HashMap<String, String> implements ResultSetWork
         return jb.toString();
     }
 
+    /**
+     * Writes a JSON representation of the contents of this data binder, excluding named objects, into a Writer. The JSON text
+     * is written in chunks whenever the buffered text reaches the threshold, so that it never resides in memory in its entirety.
+     *
+     * @param sink a Writer to receive the JSON text
+     * @param threshold the number of buffered characters that triggers a write into the sink
+     * @return the Writer
+     */
+    public <T extends Writer> T toJSON(T sink, int threshold) {
+        JSONBuilder jb = new JSONBuilder(sink, threshold).append('{');
+        appendParams(jb).append(',');
+        appendTables(jb);
+        jb.append('}').flush();
+
+        return sink;
+    }
+
     public JSONBuilder appendParams(JSONBuilder jb) {
         boolean json = false;
 
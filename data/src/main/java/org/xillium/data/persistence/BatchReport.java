@@ -0,0 +1,97 @@
+package org.xillium.data.persistence;
+
+import java.sql.SQLException;
+import java.util.*;
+
+
+/**
+ * The outcome of a chunked batch execution: the number of rows affected by the chunks that have been committed, and the chunks
+ * that have failed.
+ *
+ * @see Persistence#executeBatch(String, List, int, int, int)
+ */
+public class BatchReport {
+    /**
+     * A chunk that failed, either by itself or by being rolled back together with a failed chunk in the same commit unit.
+     */
+    public static class Failure {
+        /**
+         * The index of the first object in the chunk.
+         */
+        public final int from;
+
+        /**
+         * The index after the last object in the chunk.
+         */
+        public final int to;
+
+        /**
+         * The exception that caused the chunk to fail.
+         */
+        public final SQLException cause;
+
+        Failure(int from, int to, SQLException cause) {
+            this.from = from;
+            this.to = to;
+            this.cause = cause;
+        }
+
+        public String toString() {
+            return "[" + from + ',' + to + "):" + cause.getMessage();
+        }
+    }
+
+    private final int _chunks;
+    private final List<Failure> _failures = new ArrayList<Failure>();
+    private int _affected;
+
+    BatchReport(int chunks) {
+        _chunks = chunks;
+    }
+
+    /**
+     * Returns the total number of chunks.
+     */
+    public int getChunkCount() {
+        return _chunks;
+    }
+
+    /**
+     * Returns the number of rows affected by all committed chunks.
+     */
+    public synchronized int getAffectedRowCount() {
+        return _affected;
+    }
+
+    /**
+     * Returns the failed chunks, ordered by their positions.
+     */
+    public synchronized List<Failure> getFailures() {
+        List<Failure> failures = new ArrayList<Failure>(_failures);
+        Collections.sort(failures, new Comparator<Failure>() {
+            public int compare(Failure f1, Failure f2) {
+                return f1.from - f2.from;
+            }
+        });
+        return failures;
+    }
+
+    /**
+     * Tells whether all chunks have been committed.
+     */
+    public synchronized boolean isSuccessful() {
+        return _failures.isEmpty();
+    }
+
+    synchronized void commit(int affected) {
+        _affected += affected;
+    }
+
+    synchronized void fail(int from, int to, SQLException cause) {
+        _failures.add(new Failure(from, to, cause));
+    }
+
+    public String toString() {
+        return "BatchReport{chunks:" + _chunks + ",affected:" + getAffectedRowCount() + ",failures:" + getFailures() + '}';
+    }
+}
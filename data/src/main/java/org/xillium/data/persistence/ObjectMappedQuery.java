@@ -1,12 +1,8 @@
 package org.xillium.data.persistence;
 
-import org.xillium.base.beans.Beans;
-import org.xillium.base.beans.Strings;
 import org.xillium.data.*;
-import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
-import java.lang.reflect.Field;
 
 
 /**
@@ -15,16 +11,6 @@ import java.lang.reflect.Field;
  * Enums could be stored as String values. In such case this class converts String values into Java enums.
  */
 public class ObjectMappedQuery<T extends DataObject> extends ParametricQuery {
-    private static class Column2Field {
-        Field field;
-        int index;
-
-        Column2Field(int index, Field field) {
-            this.index = index;
-            this.field = field;
-        }
-    }
-
     private class  ResultSetMapper<C extends Collector<T>> implements ResultSetWorker<C> {
         private final C _collector;
 
@@ -32,35 +18,23 @@ public class ObjectMappedQuery<T extends DataObject> extends ParametricQuery {
             _collector = collector;
         }
 
-        @SuppressWarnings("unchecked")
-        public C process(ResultSet rs) throws SQLException, InstantiationException, IllegalAccessException {
+        public C process(ResultSet rs) throws Exception {
             try {
-                if (_c2fs == null) {
-                    synchronized(ObjectMappedQuery.this) {
-                        if (_c2fs == null) {
-                            List<Column2Field> list = new ArrayList<Column2Field>();
-                            ResultSetMetaData meta = rs.getMetaData();
-                            for (int i = 1, ii = meta.getColumnCount()+1; i < ii; ++i) {
-                                try {
-                                    String name = Strings.toLowerCamelCase(meta.getColumnLabel(i), '_');
-                                    list.add(new Column2Field(i, Beans.getKnownField(_type, name)));
-                                } catch (NoSuchFieldException x) {
-                                    // ignored
-                                }
-                            }
-                            _c2fs = list;
-                        }
-                    }
+                // a mapper compiled for a different result shape, e.g. after a column type change, is replaced
+                RowMapper<T> mapper = _mapper;
+                ResultSetMetaData meta = rs.getMetaData();
+                if (mapper == null || !mapper.matches(meta)) {
+                    _mapper = mapper = RowMapper.compile(_type, meta);
                 }
 
                 while (rs.next()) {
-                    T object = _type.newInstance();
-                    for (Column2Field c2f: _c2fs) {
-                        Beans.setValue(object, c2f.field, rs.getObject(c2f.index));
-                    }
-                    if (!_collector.add(object)) break;
+                    if (!_collector.add(mapper.map(rs))) break;
                 }
                 return _collector;
+            } catch (Exception | Error x) {
+                throw x;
+            } catch (Throwable t) {
+                throw new SQLException(t.getMessage(), t);
             } finally {
                 rs.close();
             }
@@ -76,7 +50,7 @@ public class ObjectMappedQuery<T extends DataObject> extends ParametricQuery {
     }
 
     private final Class<T> _type;
-    private volatile List<Column2Field> _c2fs; // lazily initialized with double checked locking
+    private volatile RowMapper<T> _mapper; // lazily compiled for the latest result shape
 
     public ObjectMappedQuery(Param[] parameters, String sql, Class<T> type) throws IllegalArgumentException {
         super(parameters, sql);
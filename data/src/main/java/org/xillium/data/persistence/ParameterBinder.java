@@ -0,0 +1,247 @@
+package org.xillium.data.persistence;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.sql.*;
+import java.util.*;
+import org.xillium.base.beans.Beans;
+
+
+/**
+ * A ParameterBinder binds the value of one field of a DataObject to one parameter of a PreparedStatement.
+ *
+ * <p>ParameterBinders are compiled once per ParametricStatement and DataObject class, resolving the field, its getter, and the
+ * necessary type conversion up front. Primitive and string fields whose types match the parameter's SQL type exactly are bound
+ * with the typed setters, without boxing. All other fields are bound the same way as they would be by reflection.</p>
+ */
+abstract class ParameterBinder {
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    /**
+     * Binds the field value of a DataObject to the parameter at the given index.
+     */
+    abstract void bind(PreparedStatement statement, int index, Object object) throws Throwable;
+
+    /**
+     * Compiles binders for all IN parameters against a DataObject class. Entries for parameters that are not IN parameters are null.
+     */
+    static ParameterBinder[] compile(ParametricStatement.Param[] params, Class<?> type) throws IllegalAccessException {
+        ParameterBinder[] binders = new ParameterBinder[params.length];
+        for (int i = 0; i < params.length; ++i) {
+            if ((params[i].direction & ParametricStatement.Param.IN) == 0) continue;
+            try {
+                binders[i] = compile(Beans.getKnownField(type, params[i].name), params[i].type);
+            } catch (NoSuchFieldException x) {
+                // LET database check the nullability of this column
+                binders[i] = new Null(params[i].type);
+            }
+        }
+        return binders;
+    }
+
+    private static ParameterBinder compile(Field field, int sqlType) throws IllegalAccessException {
+        Class<?> ftype = field.getType();
+        MethodHandle getter = lookup.unreflectGetter(field);
+
+        if (ftype == int.class && sqlType == Types.INTEGER) {
+            return new IntBinder(getter.asType(MethodType.methodType(int.class, Object.class)));
+        } else if (ftype == long.class && sqlType == Types.BIGINT) {
+            return new LongBinder(getter.asType(MethodType.methodType(long.class, Object.class)));
+        } else if (ftype == short.class && sqlType == Types.SMALLINT) {
+            return new ShortBinder(getter.asType(MethodType.methodType(short.class, Object.class)));
+        } else if (ftype == double.class && (sqlType == Types.DOUBLE || sqlType == Types.FLOAT)) {
+            return new DoubleBinder(getter.asType(MethodType.methodType(double.class, Object.class)));
+        } else if (ftype == float.class && sqlType == Types.REAL) {
+            return new FloatBinder(getter.asType(MethodType.methodType(float.class, Object.class)));
+        } else if (ftype == boolean.class && (sqlType == Types.BOOLEAN || sqlType == Types.BIT)) {
+            return new BooleanBinder(getter.asType(MethodType.methodType(boolean.class, Object.class)));
+        } else if (ftype == String.class && (sqlType == Types.VARCHAR || sqlType == Types.CHAR || sqlType == Types.LONGVARCHAR)) {
+            return new StringBinder(getter.asType(MethodType.methodType(String.class, Object.class)), sqlType);
+        }
+
+        getter = getter.asType(MethodType.methodType(Object.class, Object.class));
+        // NOTE: Class.isEnum() fails to return true if the field type is declared with a template parameter
+        if (Enum.class.isAssignableFrom(ftype)) { // store as string or integer
+            return new EnumBinder(getter, sqlType);
+        } else if (Calendar.class.isAssignableFrom(ftype)) {
+            return new CalendarBinder(getter, sqlType);
+        } else {
+            return new ObjectBinder(getter, sqlType);
+        }
+    }
+
+    private static class Null extends ParameterBinder {
+        private final int _type;
+
+        Null(int type) {
+            _type = type;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws SQLException {
+            statement.setNull(index, _type);
+        }
+    }
+
+    private static class IntBinder extends ParameterBinder {
+        private final MethodHandle _getter;
+
+        IntBinder(MethodHandle getter) {
+            _getter = getter;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws Throwable {
+            statement.setInt(index, (int)_getter.invokeExact(object));
+        }
+    }
+
+    private static class LongBinder extends ParameterBinder {
+        private final MethodHandle _getter;
+
+        LongBinder(MethodHandle getter) {
+            _getter = getter;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws Throwable {
+            statement.setLong(index, (long)_getter.invokeExact(object));
+        }
+    }
+
+    private static class ShortBinder extends ParameterBinder {
+        private final MethodHandle _getter;
+
+        ShortBinder(MethodHandle getter) {
+            _getter = getter;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws Throwable {
+            statement.setShort(index, (short)_getter.invokeExact(object));
+        }
+    }
+
+    private static class DoubleBinder extends ParameterBinder {
+        private final MethodHandle _getter;
+
+        DoubleBinder(MethodHandle getter) {
+            _getter = getter;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws Throwable {
+            statement.setDouble(index, (double)_getter.invokeExact(object));
+        }
+    }
+
+    private static class FloatBinder extends ParameterBinder {
+        private final MethodHandle _getter;
+
+        FloatBinder(MethodHandle getter) {
+            _getter = getter;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws Throwable {
+            statement.setFloat(index, (float)_getter.invokeExact(object));
+        }
+    }
+
+    private static class BooleanBinder extends ParameterBinder {
+        private final MethodHandle _getter;
+
+        BooleanBinder(MethodHandle getter) {
+            _getter = getter;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws Throwable {
+            statement.setBoolean(index, (boolean)_getter.invokeExact(object));
+        }
+    }
+
+    private static class StringBinder extends ParameterBinder {
+        private final MethodHandle _getter;
+        private final int _type;
+
+        StringBinder(MethodHandle getter, int type) {
+            _getter = getter;
+            _type = type;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws Throwable {
+            String value = (String)_getter.invokeExact(object);
+            if (value != null) {
+                statement.setString(index, value);
+            } else {
+                statement.setNull(index, _type);
+            }
+        }
+    }
+
+    private static class EnumBinder extends ParameterBinder {
+        private final MethodHandle _getter;
+        private final int _type;
+
+        EnumBinder(MethodHandle getter, int type) {
+            _getter = getter;
+            _type = type;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws Throwable {
+            Object value = (Object)_getter.invokeExact(object);
+            if (value == null) {
+                statement.setNull(index, _type);
+            } else if (Types.CHAR == _type || Types.VARCHAR == _type) {
+                statement.setObject(index, value.toString(), _type);
+            } else {
+                statement.setObject(index, ((Enum<?>)value).ordinal(), _type);
+            }
+        }
+    }
+
+    private static class CalendarBinder extends ParameterBinder {
+        private final MethodHandle _getter;
+        private final int _type;
+
+        CalendarBinder(MethodHandle getter, int type) {
+            _getter = getter;
+            _type = type;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws Throwable {
+            Object value = (Object)_getter.invokeExact(object);
+            if (value != null) {
+                statement.setObject(index, new java.sql.Date(((Calendar)value).getTime().getTime()), _type);
+            } else {
+                statement.setNull(index, _type);
+            }
+        }
+    }
+
+    private static class ObjectBinder extends ParameterBinder {
+        private final MethodHandle _getter;
+        private final int _type;
+
+        ObjectBinder(MethodHandle getter, int type) {
+            _getter = getter;
+            _type = type;
+        }
+
+        @Override
+        void bind(PreparedStatement statement, int index, Object object) throws Throwable {
+            Object value = (Object)_getter.invokeExact(object);
+            if (value != null) {
+                statement.setObject(index, value, _type);
+            } else {
+                statement.setNull(index, _type);
+            }
+        }
+    }
+}
@@ -40,12 +40,36 @@ public class ParametricQuery extends ParametricStatement {
      * The ResultSetWorker must close the result set before returning.
      */
     public <T> T executeSelect(Connection conn, DataObject object, ResultSetWorker<T> worker) throws Exception {
-        PreparedStatement statement = conn.prepareStatement(_sql);
+        StatementCache cache = StatementCache.lookup(conn);
+        PreparedStatement statement = prepare(conn, cache, StatementCache.PLAIN);
         try {
             load(statement, object);
             return worker.process(statement.executeQuery());
         } finally {
+            release(statement, cache, false);
+        }
+    }
+
+    /**
+     * Executes the SELECT statement, returning the open cursor as a CursorResultSet that retrieves rows only as they are iterated.
+     *
+     * The CursorResultSet takes over the connection, which is committed and closed together with the cursor. The connection must
+     * therefore be dedicated to the cursor, and not be bound to any transaction.
+     *
+     * @param conn a connection dedicated to the cursor
+     * @param object the DataObject carrying the bind parameters
+     * @param fetchSize the number of rows to retrieve from the database in each round trip
+     * @return a CursorResultSet
+     */
+    public CursorResultSet executeCursor(Connection conn, DataObject object, int fetchSize) throws SQLException {
+        PreparedStatement statement = conn.prepareStatement(_sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            load(statement, object);
+            statement.setFetchSize(fetchSize);
+            return new CursorResultSet(statement.executeQuery(), conn);
+        } catch (SQLException|RuntimeException x) {
             statement.close();
+            throw x;
         }
     }
 }
@@ -11,8 +11,8 @@ import org.xillium.data.*;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.*;
-import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import javassist.*;
 import javassist.bytecode.*;
@@ -152,6 +152,7 @@ public class ParametricStatement implements EnvironmentAware {
         _sql = transformer.invoke(new StringBuilder(), params, sql).toString();
         _params = params.toArray(new Param[params.size()]);
     }
+        _binders.clear();
         return this;
     }
 
@@ -223,38 +224,15 @@ public class ParametricStatement implements EnvironmentAware {
 //System.err.println("PreparedStatement: loading " + _sql);
         if (object != null && _params.length > 0) {
             Class<? extends DataObject> type = object.getClass();
+            ParameterBinder[] binders = getParameterBinders(type);
 
             for (int i = 0; i < _params.length; ++i) {
-                if ((_params[i].direction & Param.IN) == 0) continue;
+                if (binders[i] == null) continue;
                 try {
-                    Field field = Beans.getKnownField(type, _params[i].name);
-                    Object value = field.get(object);
-                    if (value != null) {
-                        // NOTE: Class.isEnum() fails to return true if the field type is declared with a template parameter
-                        if (Enum.class.isAssignableFrom(field.getType())) { // store as string or integer
-                            if (Types.CHAR == _params[i].type || Types.VARCHAR == _params[i].type) {
-                                statement.setObject(i+1, value.toString(), _params[i].type);
-                            } else {
-                                statement.setObject(i+1, ((Enum<?>)value).ordinal(), _params[i].type);
-                            }
-                        } else if (Calendar.class.isAssignableFrom(field.getType())) {
-                            statement.setObject(i+1, new java.sql.Date(((Calendar)value).getTime().getTime()), _params[i].type);
-                        } else {
-                            statement.setObject(i+1, value, _params[i].type);
-                        }
-                    } else {
-                        //throw new NoSuchFieldException(_params[i].name + ": null");
-                        statement.setNull(i+1, _params[i].type);
-                    }
-                } catch (NoSuchFieldException x) {
-                    //if (_params[i].nullable) {
-                    // LET database check the nullability of this column
-                        statement.setNull(i+1, _params[i].type);
-                    //} else {
-                        //statement.close();
-                        //throw new SQLException("Failed to retrieve non-nullable '" + _params[i].name + "' from DataObject (" + type.getName() + ')', x);
-                    //}
-                } catch (Exception x) {
+                    binders[i].bind(statement, i+1, object);
+                } catch (Error x) {
+                    throw x;
+                } catch (Throwable x) {
                     statement.close();
                     throw new SQLException("Exception in retrieval of '" + _params[i].name + "' from " + type.getName() + ": " + x.getMessage(), x);
                 }
@@ -263,18 +241,32 @@ public class ParametricStatement implements EnvironmentAware {
         return statement;
     }
 
+    // returns the ParameterBinders compiled for a DataObject class, compiling them upon first use
+    private ParameterBinder[] getParameterBinders(Class<? extends DataObject> type) throws SQLException {
+        ParameterBinder[] binders = _binders.get(type);
+        if (binders == null) {
+            try {
+                _binders.put(type, binders = ParameterBinder.compile(_params, type));
+            } catch (IllegalAccessException x) {
+                throw new SQLException("Exception in binding parameters from " + type.getName() + ": " + x.getMessage(), x);
+            }
+        }
+        return binders;
+    }
+
     /**
      * Executes an UPDATE or DELETE statement.
      *
      * @return the number of rows affected
      */
     public int executeUpdate(Connection conn, DataObject object) throws SQLException {
-        PreparedStatement statement = conn.prepareStatement(_sql);
+        StatementCache cache = StatementCache.lookup(conn);
+        PreparedStatement statement = prepare(conn, cache, StatementCache.PLAIN);
         try {
             load(statement, object);
             return statement.executeUpdate();
         } finally {
-            statement.close();
+            release(statement, cache, false);
         }
     }
 
@@ -284,7 +276,8 @@ public class ParametricStatement implements EnvironmentAware {
      * @return the number of rows affected
      */
     public int executeUpdate(Connection conn, DataObject[] objects) throws SQLException {
-        PreparedStatement statement = conn.prepareStatement(_sql);
+        StatementCache cache = StatementCache.lookup(conn);
+        PreparedStatement statement = prepare(conn, cache, StatementCache.PLAIN);
         try {
             for (DataObject object: objects) {
                 load(statement, object);
@@ -293,7 +286,7 @@ public class ParametricStatement implements EnvironmentAware {
             int count = getAffectedRowCount(statement.executeBatch());
             return count;
         } finally {
-            statement.close();
+            release(statement, cache, true);
         }
     }
 
@@ -303,7 +296,8 @@ public class ParametricStatement implements EnvironmentAware {
      * @return the number of rows affected
      */
     public int executeUpdate(Connection conn, Collection<? extends DataObject> objects) throws SQLException {
-        PreparedStatement statement = conn.prepareStatement(_sql);
+        StatementCache cache = StatementCache.lookup(conn);
+        PreparedStatement statement = prepare(conn, cache, StatementCache.PLAIN);
         try {
             for (DataObject object: objects) {
                 load(statement, object);
@@ -312,7 +306,7 @@ public class ParametricStatement implements EnvironmentAware {
             int count = getAffectedRowCount(statement.executeBatch());
             return count;
         } finally {
-            statement.close();
+            release(statement, cache, true);
         }
     }
 
@@ -323,7 +317,8 @@ public class ParametricStatement implements EnvironmentAware {
      *          contains the keys; otherwise the content of the array is not defined.
      */
     public long[] executeInsert(Connection conn, DataObject object, boolean generatedKeys) throws SQLException {
-        PreparedStatement statement = conn.prepareStatement(_sql, generatedKeys ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS);
+        StatementCache cache = StatementCache.lookup(conn);
+        PreparedStatement statement = prepare(conn, cache, generatedKeys ? StatementCache.RETURN_GENERATED_KEYS : StatementCache.NO_GENERATED_KEYS);
         try {
             load(statement, object);
             long[] keys = new long[statement.executeUpdate()];
@@ -336,7 +331,7 @@ public class ParametricStatement implements EnvironmentAware {
             }
             return keys;
         } finally {
-            statement.close();
+            release(statement, cache, false);
         }
     }
 
@@ -347,12 +342,13 @@ public class ParametricStatement implements EnvironmentAware {
      * @return the number of rows inserted.
      */
     public int executeInsert(Connection conn, DataObject object) throws SQLException {
-        PreparedStatement statement = conn.prepareStatement(_sql, Statement.NO_GENERATED_KEYS);
+        StatementCache cache = StatementCache.lookup(conn);
+        PreparedStatement statement = prepare(conn, cache, StatementCache.NO_GENERATED_KEYS);
         try {
             load(statement, object);
             return statement.executeUpdate();
         } finally {
-            statement.close();
+            release(statement, cache, false);
         }
     }
 
@@ -362,7 +358,8 @@ public class ParametricStatement implements EnvironmentAware {
      * @return the number of rows inserted.
      */
     public int executeInsert(Connection conn, DataObject[] objects) throws SQLException {
-        PreparedStatement statement = conn.prepareStatement(_sql);
+        StatementCache cache = StatementCache.lookup(conn);
+        PreparedStatement statement = prepare(conn, cache, StatementCache.PLAIN);
         try {
             for (DataObject object: objects) {
                 load(statement, object);
@@ -370,7 +367,7 @@ public class ParametricStatement implements EnvironmentAware {
             }
             return getAffectedRowCount(statement.executeBatch());
         } finally {
-            statement.close();
+            release(statement, cache, true);
         }
     }
 
@@ -380,7 +377,8 @@ public class ParametricStatement implements EnvironmentAware {
      * @return the number of rows inserted.
      */
     public int executeInsert(Connection conn, Collection<? extends DataObject> objects) throws SQLException {
-        PreparedStatement statement = conn.prepareStatement(_sql);
+        StatementCache cache = StatementCache.lookup(conn);
+        PreparedStatement statement = prepare(conn, cache, StatementCache.PLAIN);
         try {
             for (DataObject object: objects) {
                 load(statement, object);
@@ -388,17 +386,56 @@ public class ParametricStatement implements EnvironmentAware {
             }
             return getAffectedRowCount(statement.executeBatch());
         } finally {
-            statement.close();
+            release(statement, cache, true);
+        }
+    }
+
+    /**
+     * Executes a batch INSERT, UPDATE, or DELETE statement in chunks, calling executeBatch() once every {@code batchSize} objects
+     * so that the driver never holds more than one chunk at a time.
+     *
+     * @return the number of rows affected
+     */
+    public int executeBatch(Connection conn, Collection<? extends DataObject> objects, int batchSize) throws SQLException {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize");
+        StatementCache cache = StatementCache.lookup(conn);
+        PreparedStatement statement = prepare(conn, cache, StatementCache.PLAIN);
+        try {
+            int count = 0, pending = 0;
+            for (DataObject object: objects) {
+                load(statement, object);
+                statement.addBatch();
+                if (++pending == batchSize) {
+                    count += getAffectedRowCount(statement.executeBatch());
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                count += getAffectedRowCount(statement.executeBatch());
+            }
+            return count;
+        } finally {
+            release(statement, cache, true);
         }
     }
 
+    /**
+     * Executes a batch INSERT, UPDATE, or DELETE statement over the objects in the range [from, to) of a list.
+     *
+     * @return the number of rows affected
+     */
+    public int executeBatch(Connection conn, List<? extends DataObject> objects, int from, int to) throws SQLException {
+        return executeBatch(conn, objects.subList(from, to), Integer.MAX_VALUE);
+    }
+
     /**
      * Executes a callable statement that performs updates.
      *
      * @return the number of rows affected
      */
     public int executeProcedure(Connection conn, DataObject object) throws SQLException {
-        CallableStatement statement = conn.prepareCall(_sql);
+        StatementCache cache = StatementCache.lookup(conn);
+        CallableStatement statement = (CallableStatement)prepare(conn, cache, StatementCache.CALLABLE);
         try {
             for (int i = 0; i < _params.length; ++i) {
                 if ((_params[i].direction & Param.OUT) == 0) continue;
@@ -424,6 +461,33 @@ public class ParametricStatement implements EnvironmentAware {
             }
             return result;
         } finally {
+            release(statement, cache, false);
+        }
+    }
+
+    /**
+     * Prepares a statement over the connection, reusing the one cached for the connection's transaction if there is a StatementCache.
+     */
+    PreparedStatement prepare(Connection conn, StatementCache cache, int variant) throws SQLException {
+        if (cache != null) {
+            return cache.prepare(this, variant);
+        } else switch (variant) {
+        case StatementCache.NO_GENERATED_KEYS:
+            return conn.prepareStatement(_sql, Statement.NO_GENERATED_KEYS);
+        case StatementCache.RETURN_GENERATED_KEYS:
+            return conn.prepareStatement(_sql, Statement.RETURN_GENERATED_KEYS);
+        case StatementCache.CALLABLE:
+            return conn.prepareCall(_sql);
+        default:
+            return conn.prepareStatement(_sql);
+        }
+    }
+
+    /**
+     * Closes a statement obtained from prepare(), or clears it for reuse if it is cached.
+     */
+    static void release(PreparedStatement statement, StatementCache cache, boolean batch) throws SQLException {
+        if (cache == null || !cache.release(statement, batch)) {
             statement.close();
         }
     }
@@ -470,6 +534,7 @@ public class ParametricStatement implements EnvironmentAware {
     );
 
     private /*final*/ Param[] _params;
+    private final Map<Class<?>, ParameterBinder[]> _binders = new ConcurrentHashMap<Class<?>, ParameterBinder[]>();
     protected EnvironmentReference _env;
     protected String _sql;
     protected String _tag;
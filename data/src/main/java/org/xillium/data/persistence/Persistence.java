@@ -3,6 +3,9 @@ package org.xillium.data.persistence;
 import java.sql.*;
 import java.util.*;
 import java.math.BigDecimal;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.sql.DataSource;
 import org.xillium.base.beans.*;
 import org.xillium.base.model.ObjectAssembly;
@@ -11,6 +14,8 @@ import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.transaction.*;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 
 public class Persistence {
@@ -22,6 +27,8 @@ public class Persistence {
     private final Map<String, ParametricStatement> _statements;
     private PlatformTransactionManager _manager;
     private DefaultTransactionDefinition _readonly;
+    private int _cacheSize;
+    private StatementCache.Statistics _cacheStats;
 
     /**
      * A task that can be wrapped in a Transaction.
@@ -57,7 +64,7 @@ public class Persistence {
      * upon transaction commit/rollback.
      */
     public Connection getConnection() {
-        return DataSourceUtils.getConnection(_dataSource);
+        return connect();
     }
 
     /**
@@ -85,7 +92,7 @@ public class Persistence {
     public int executeUpdate(String name, DataObject object) throws SQLException {
         ParametricStatement statement = _statements.get(name);
         if (statement != null) {
-            return statement.executeUpdate(DataSourceUtils.getConnection(_dataSource), object);
+            return statement.executeUpdate(connect(), object);
         } else {
             throw new RuntimeException("ParametricStatement '" + name + "' not found");
         }
@@ -97,7 +104,7 @@ public class Persistence {
     public int executeUpdate(String name, DataObject[] objects) throws SQLException {
         ParametricStatement statement = _statements.get(name);
         if (statement != null) {
-            return statement.executeUpdate(DataSourceUtils.getConnection(_dataSource), objects);
+            return statement.executeUpdate(connect(), objects);
         } else {
             throw new RuntimeException("ParametricStatement '" + name + "' not found");
         }
@@ -109,7 +116,7 @@ public class Persistence {
     public int executeUpdate(String name, Collection<? extends DataObject> objects) throws SQLException {
         ParametricStatement statement = _statements.get(name);
         if (statement != null) {
-            return statement.executeUpdate(DataSourceUtils.getConnection(_dataSource), objects);
+            return statement.executeUpdate(connect(), objects);
         } else {
             throw new RuntimeException("ParametricStatement '" + name + "' not found");
         }
@@ -121,7 +128,7 @@ public class Persistence {
     public int executeProcedure(String name, DataObject object) throws SQLException {
         ParametricStatement statement = _statements.get(name);
         if (statement != null) {
-            return statement.executeProcedure(DataSourceUtils.getConnection(_dataSource), object);
+            return statement.executeProcedure(connect(), object);
         } else {
             throw new RuntimeException("ParametricStatement '" + name + "' not found");
         }
@@ -133,7 +140,7 @@ public class Persistence {
     public long[] executeInsert(String name, DataObject object, boolean generatedKeys) throws SQLException {
         ParametricStatement statement = _statements.get(name);
         if (statement != null) {
-            return statement.executeInsert(DataSourceUtils.getConnection(_dataSource), object, generatedKeys);
+            return statement.executeInsert(connect(), object, generatedKeys);
         } else {
             throw new RuntimeException("ParametricStatement '" + name + "' not found");
         }
@@ -147,7 +154,7 @@ public class Persistence {
     public int executeInsert(String name, DataObject object) throws SQLException {
         ParametricStatement statement = _statements.get(name);
         if (statement != null) {
-            return statement.executeInsert(DataSourceUtils.getConnection(_dataSource), object);
+            return statement.executeInsert(connect(), object);
         } else {
             throw new RuntimeException("ParametricStatement '" + name + "' not found");
         }
@@ -159,7 +166,7 @@ public class Persistence {
     public int executeInsert(String name, DataObject[] objects) throws SQLException {
         ParametricStatement statement = _statements.get(name);
         if (statement != null) {
-            return statement.executeInsert(DataSourceUtils.getConnection(_dataSource), objects);
+            return statement.executeInsert(connect(), objects);
         } else {
             throw new RuntimeException("ParametricStatement '" + name + "' not found");
         }
@@ -171,24 +178,137 @@ public class Persistence {
     public int executeInsert(String name, Collection<? extends DataObject> objects) throws SQLException {
         ParametricStatement statement = _statements.get(name);
         if (statement != null) {
-            return statement.executeInsert(DataSourceUtils.getConnection(_dataSource), objects);
+            return statement.executeInsert(connect(), objects);
         } else {
             throw new RuntimeException("ParametricStatement '" + name + "' not found");
         }
     }
 
+    /**
+     * Executes a batch INSERT/UPDATE/DELETE statement within the current transaction, calling executeBatch() once every
+     * {@code batchSize} objects.
+     *
+     * @see ParametricStatement#executeBatch(Connection, Collection, int)
+     */
+    public int executeBatch(String name, Collection<? extends DataObject> objects, int batchSize) throws SQLException {
+        ParametricStatement statement = _statements.get(name);
+        if (statement != null) {
+            return statement.executeBatch(connect(), objects, batchSize);
+        } else {
+            throw new RuntimeException("ParametricStatement '" + name + "' not found");
+        }
+    }
+
+    /**
+     * Executes a batch INSERT/UPDATE/DELETE statement in chunks of {@code batchSize} objects, outside of any transaction bound
+     * to the current thread.
+     *
+     * The chunks are distributed over {@code parallelism} connections of their own, each committing after every
+     * {@code commitInterval} chunks. A failed chunk rolls back the uncommitted chunks on its connection, all of which are
+     * reported as failed, and the execution continues with the next chunk.
+     *
+     * @param name the name of the ParametricStatement
+     * @param objects the DataObjects, one for each row
+     * @param batchSize the number of objects in a chunk
+     * @param commitInterval the number of chunks between commits
+     * @param parallelism the number of connections to use in parallel
+     * @return a BatchReport of the number of rows affected and the failed chunks
+     */
+    public BatchReport executeBatch(String name, final List<? extends DataObject> objects, final int batchSize, final int commitInterval, int parallelism) {
+        final ParametricStatement statement = _statements.get(name);
+        if (statement == null) {
+            throw new RuntimeException("ParametricStatement '" + name + "' not found");
+        } else if (batchSize < 1 || commitInterval < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("batchSize, commitInterval, and parallelism must be positive");
+        }
+
+        final int chunks = (objects.size() + batchSize - 1) / batchSize;
+        final BatchReport report = new BatchReport(chunks);
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<SQLException> unconnected = new AtomicReference<SQLException>();
+
+        parallelism = Math.min(parallelism, chunks);
+        if (parallelism == 1) {
+            runBatches(statement, objects, batchSize, commitInterval, next, report, unconnected);
+        } else if (parallelism > 1) {
+            ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+                for (int i = 0; i < parallelism; ++i) {
+                    workers.add(new Callable<Void>() {
+                        public Void call() {
+                            runBatches(statement, objects, batchSize, commitInterval, next, report, unconnected);
+                            return null;
+                        }
+                    });
+                }
+                executor.invokeAll(workers);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(x.getMessage(), x);
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        // chunks left behind because no connection could be obtained
+        for (int chunk = next.getAndSet(chunks); chunk < chunks; ++chunk) {
+            report.fail(chunk*batchSize, Math.min((chunk+1)*batchSize, objects.size()), unconnected.get());
+        }
+        return report;
+    }
+
     /**
      * Executes a SELECT statement and passes the result set to the ResultSetWorker.
      */
     public <T> T executeSelect(String name, DataObject object, ResultSetWorker<T> worker) throws Exception {
         ParametricQuery statement = (ParametricQuery)_statements.get(name);
         if (statement != null) {
-            return statement.executeSelect(DataSourceUtils.getConnection(_dataSource), object, worker);
+            return statement.executeSelect(connect(), object, worker);
         } else {
             throw new RuntimeException("ParametricQuery '" + name + "' not found");
         }
     }
 
+    /**
+     * Executes a SELECT statement and returns the open cursor as a CursorResultSet, whose rows are retrieved from the database only
+     * as they are iterated.
+     *
+     * The cursor runs on a second connection taken from the data source, outside of any transaction bound to the current thread,
+     * so that it can outlive the transaction. It therefore does not see changes made but not yet committed by that transaction, and
+     * it holds a pooled connection in addition to the transaction's own until the CursorResultSet is exhausted or closed.
+     *
+     * @param name the name of the ParametricQuery
+     * @param object the DataObject carrying the bind parameters
+     * @param fetchSize the number of rows to retrieve from the database in each round trip
+     * @return a CursorResultSet
+     */
+    public CursorResultSet executeCursor(String name, DataObject object, int fetchSize) throws SQLException {
+        ParametricQuery statement = (ParametricQuery)_statements.get(name);
+        if (statement != null) {
+            return executeCursor(statement, object, fetchSize);
+        } else {
+            throw new RuntimeException("ParametricQuery '" + name + "' not found");
+        }
+    }
+
+    /**
+     * Executes a SELECT statement and returns the open cursor as a CursorResultSet, whose rows are retrieved from the database only
+     * as they are iterated.
+     *
+     * @see #executeCursor(String, DataObject, int)
+     */
+    public CursorResultSet executeCursor(ParametricQuery statement, DataObject object, int fetchSize) throws SQLException {
+        Connection connection = _dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false); // some drivers honor the fetch size only outside of auto-commit mode
+            return statement.executeCursor(connection, object, fetchSize);
+        } catch (SQLException|RuntimeException x) {
+            connection.close();
+            throw x;
+        }
+    }
+
     /**
      * Executes a SELECT statement and returns the result set as a list of objects
      */
@@ -196,7 +316,7 @@ public class Persistence {
         @SuppressWarnings("unchecked")
         ObjectMappedQuery<T> statement = (ObjectMappedQuery<T>)_statements.get(name);
         if (statement != null) {
-            return statement.getResults(DataSourceUtils.getConnection(_dataSource), object);
+            return statement.getResults(connect(), object);
         } else {
             throw new RuntimeException("ObjectMappedQuery '" + name + "' not found");
         }
@@ -209,7 +329,7 @@ public class Persistence {
         @SuppressWarnings("unchecked")
         ObjectMappedQuery<T> statement = (ObjectMappedQuery<T>)_statements.get(name);
         if (statement != null) {
-            return statement.getResults(DataSourceUtils.getConnection(_dataSource), object);
+            return statement.getResults(connect(), object);
         } else {
             throw new RuntimeException("ObjectMappedQuery '" + name + "' not found");
         }
@@ -222,7 +342,7 @@ public class Persistence {
         @SuppressWarnings("unchecked")
         ObjectMappedQuery<T> statement = (ObjectMappedQuery<T>)_statements.get(name);
         if (statement != null) {
-            return statement.getObject(DataSourceUtils.getConnection(_dataSource), object);
+            return statement.getObject(connect(), object);
         } else {
             throw new RuntimeException("ObjectMappedQuery '" + name + "' not found");
         }
@@ -235,7 +355,7 @@ public class Persistence {
         @SuppressWarnings("unchecked")
         ObjectMappedQuery<T> statement = (ObjectMappedQuery<T>)_statements.get(name);
         if (statement != null) {
-            return statement.getObject(DataSourceUtils.getConnection(_dataSource), object);
+            return statement.getObject(connect(), object);
         } else {
             throw new RuntimeException("ObjectMappedQuery '" + name + "' not found");
         }
@@ -248,7 +368,7 @@ public class Persistence {
         @SuppressWarnings("unchecked")
         ObjectMappedQuery<T> statement = (ObjectMappedQuery<T>)_statements.get(name);
         if (statement != null) {
-            return statement.getResults(DataSourceUtils.getConnection(_dataSource), object, collector);
+            return statement.getResults(connect(), object, collector);
         } else {
             throw new RuntimeException("ObjectMappedQuery '" + name + "' not found");
         }
@@ -280,6 +400,28 @@ public class Persistence {
         return count;
     }
 
+    /**
+     * Enables per-transaction caching of prepared statements. Within a transaction, up to the given number of ParametricStatements
+     * keep their prepared statements open for reuse, until the transaction completes.
+     *
+     * @param size the maximum number of ParametricStatements to cache per transaction, or 0 to disable caching
+     */
+    public void setStatementCacheSize(int size) {
+        _cacheSize = size;
+        if (size > 0 && _cacheStats == null) _cacheStats = new StatementCache.Statistics();
+    }
+
+    public int getStatementCacheSize() {
+        return _cacheSize;
+    }
+
+    /**
+     * Returns the cumulative statistics of statement caching, or null if caching has never been enabled.
+     */
+    public StatementCache.Statistics getStatementCacheStatistics() {
+        return _cacheStats;
+    }
+
     public StringBuilder print(StringBuilder sb) {
         return sb.append("Persistence:DataSource=").append(_dataSource.toString());
     }
@@ -321,6 +463,82 @@ public class Persistence {
         return _statements;
     }
 
+    // obtains the transaction-bound connection, binding a StatementCache to it for the duration of the transaction if so configured
+    private Connection connect() {
+        final Connection connection = DataSourceUtils.getConnection(_dataSource);
+        if (_cacheSize > 0 && TransactionSynchronizationManager.isSynchronizationActive()
+        && StatementCache.bind(connection, _cacheSize, _cacheStats)) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void beforeCompletion() {
+                    StatementCache.unbind(connection);
+                }
+            });
+        }
+        return connection;
+    }
+
+    // executes chunks claimed from the shared counter on a connection of its own, until all chunks are claimed
+    private void runBatches(ParametricStatement statement, List<? extends DataObject> objects, int batchSize, int commitInterval,
+    AtomicInteger next, BatchReport report, AtomicReference<SQLException> unconnected) {
+        Connection connection;
+        try {
+            connection = _dataSource.getConnection();
+        } catch (SQLException x) {
+            unconnected.set(x);
+            return;
+        }
+
+        StatementCache.bind(connection, 1, new StatementCache.Statistics());
+        try {
+            connection.setAutoCommit(false);
+            List<int[]> uncommitted = new ArrayList<int[]>();
+            int affected = 0;
+            for (int chunk = next.getAndIncrement(), size = objects.size(); chunk*(long)batchSize < size; chunk = next.getAndIncrement()) {
+                int from = chunk*batchSize, to = Math.min(from + batchSize, size);
+                uncommitted.add(new int[]{ from, to });
+                try {
+                    affected += statement.executeBatch(connection, objects, from, to);
+                    if (uncommitted.size() == commitInterval) {
+                        affected = commit(connection, affected, uncommitted, report);
+                    }
+                } catch (SQLException|RuntimeException x) {
+                    affected = rollback(connection, x, uncommitted, report);
+                }
+            }
+            if (uncommitted.size() > 0) {
+                commit(connection, affected, uncommitted, report);
+            }
+        } catch (SQLException x) {
+            unconnected.set(x);
+        } finally {
+            StatementCache.unbind(connection);
+            try { connection.setAutoCommit(true); } catch (SQLException x) {}
+            try { connection.close(); } catch (SQLException x) {}
+        }
+    }
+
+    // commits the pending chunks, or reports them as failed if the commit fails, returning the new count of uncommitted rows
+    private static int commit(Connection connection, int affected, List<int[]> uncommitted, BatchReport report) {
+        try {
+            connection.commit();
+            report.commit(affected);
+            uncommitted.clear();
+            return 0;
+        } catch (SQLException x) {
+            return rollback(connection, x, uncommitted, report);
+        }
+    }
+
+    // rolls back the pending chunks and reports them as failed, returning the new count of uncommitted rows
+    private static int rollback(Connection connection, Exception x, List<int[]> uncommitted, BatchReport report) {
+        SQLException cause = x instanceof SQLException ? (SQLException)x : new SQLException(x.getMessage(), x);
+        try { connection.rollback(); } catch (SQLException t) {}
+        for (int[] range: uncommitted) report.fail(range[0], range[1], cause);
+        uncommitted.clear();
+        return 0;
+    }
+
     private final <T, F> T doTransaction(F facility, Task<T, F> task, TransactionDefinition definition) {
         TransactionStatus transaction = _manager.getTransaction(definition);
         try {
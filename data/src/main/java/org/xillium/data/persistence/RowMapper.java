@@ -0,0 +1,265 @@
+package org.xillium.data.persistence;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+import org.xillium.base.beans.Beans;
+import org.xillium.base.beans.Strings;
+
+
+/**
+ * A RowMapper maps rows of result sets of a particular shape into objects of a particular class.
+ *
+ * <p>A RowMapper is compiled from the result set meta data. A column whose reported Java class is exactly that of its field
+ * (or of its field's wrapper type) is read with the typed getter and written directly into the field, without going through
+ * boxing and {@link Beans#setValue(Object, Field, Object) Beans.setValue()}. All other columns are mapped by Beans.setValue(),
+ * with its type coercion. A RowMapper is only applicable to result sets of the shape it has been compiled for.</p>
+ */
+class RowMapper<T> {
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private final Class<T> _type;
+    private final MethodHandle _constructor;
+    private final String[] _labels;
+    private final String[] _classes;
+    private final Column[] _columns;
+
+    private RowMapper(Class<T> type, MethodHandle constructor, String[] labels, String[] classes, Column[] columns) {
+        _type = type;
+        _constructor = constructor;
+        _labels = labels;
+        _classes = classes;
+        _columns = columns;
+    }
+
+    /**
+     * Compiles a RowMapper for the result set shape described by the meta data.
+     */
+    static <T> RowMapper<T> compile(Class<T> type, ResultSetMetaData meta) throws SQLException {
+        int count = meta.getColumnCount();
+        String[] labels = new String[count], classes = new String[count];
+        List<Column> columns = new ArrayList<Column>();
+        for (int i = 0; i < count; ++i) {
+            labels[i] = meta.getColumnLabel(i+1);
+            classes[i] = meta.getColumnClassName(i+1);
+            try {
+                columns.add(compile(i+1, Beans.getKnownField(type, Strings.toLowerCamelCase(labels[i], '_')), classes[i]));
+            } catch (NoSuchFieldException x) {
+                // ignored
+            }
+        }
+
+        MethodHandle constructor = null;
+        try {
+            Constructor<T> c = type.getDeclaredConstructor();
+            c.setAccessible(true);
+            constructor = lookup.unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException | SecurityException x) {
+            // leave it to Class.newInstance() to report
+        }
+
+        return new RowMapper<T>(type, constructor, labels, classes, columns.toArray(new Column[columns.size()]));
+    }
+
+    /**
+     * Tells whether this RowMapper is applicable to result sets described by the meta data.
+     */
+    boolean matches(ResultSetMetaData meta) throws SQLException {
+        if (meta.getColumnCount() != _labels.length) return false;
+        for (int i = 0; i < _labels.length; ++i) {
+            if (!_labels[i].equals(meta.getColumnLabel(i+1)) || !Objects.equals(_classes[i], meta.getColumnClassName(i+1))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Maps the current row of a result set into a new object.
+     */
+    T map(ResultSet rs) throws Throwable {
+        @SuppressWarnings("unchecked")
+        T object = _constructor != null ? (T)(Object)_constructor.invokeExact() : _type.newInstance();
+        for (Column column: _columns) {
+            column.map(rs, object);
+        }
+        return object;
+    }
+
+    private static Column compile(int index, Field field, String cname) {
+        Class<?> ftype = field.getType();
+        try {
+            if (cname != null && !Modifier.isStatic(field.getModifiers())) {
+                MethodHandle setter = lookup.unreflectSetter(field);
+                if ((ftype == long.class || ftype == Long.class) && cname.equals(Long.class.getName())) {
+                    return new LongColumn(index, setter.asType(MethodType.methodType(void.class, Object.class, long.class)));
+                } else if ((ftype == int.class || ftype == Integer.class) && cname.equals(Integer.class.getName())) {
+                    return new IntColumn(index, setter.asType(MethodType.methodType(void.class, Object.class, int.class)));
+                } else if ((ftype == short.class || ftype == Short.class) && cname.equals(Short.class.getName())) {
+                    return new ShortColumn(index, setter.asType(MethodType.methodType(void.class, Object.class, short.class)));
+                } else if ((ftype == double.class || ftype == Double.class) && cname.equals(Double.class.getName())) {
+                    return new DoubleColumn(index, setter.asType(MethodType.methodType(void.class, Object.class, double.class)));
+                } else if ((ftype == float.class || ftype == Float.class) && cname.equals(Float.class.getName())) {
+                    return new FloatColumn(index, setter.asType(MethodType.methodType(void.class, Object.class, float.class)));
+                } else if ((ftype == boolean.class || ftype == Boolean.class) && cname.equals(Boolean.class.getName())) {
+                    return new BooleanColumn(index, setter.asType(MethodType.methodType(void.class, Object.class, boolean.class)));
+                } else if (ftype == String.class && cname.equals(String.class.getName())) {
+                    return new StringColumn(index, setter.asType(MethodType.methodType(void.class, Object.class, Object.class)));
+                } else if (ftype == BigDecimal.class && cname.equals(BigDecimal.class.getName())) {
+                    return new DecimalColumn(index, setter.asType(MethodType.methodType(void.class, Object.class, Object.class)));
+                }
+            }
+        } catch (IllegalAccessException x) {
+            // final fields, for example, are left to Beans.setValue()
+        }
+        return new GenericColumn(index, field);
+    }
+
+    private static abstract class Column {
+        final int index;
+
+        Column(int index) {
+            this.index = index;
+        }
+
+        abstract void map(ResultSet rs, Object object) throws Throwable;
+    }
+
+    private static class GenericColumn extends Column {
+        private final Field _field;
+
+        GenericColumn(int index, Field field) {
+            super(index);
+            _field = field;
+        }
+
+        @Override
+        void map(ResultSet rs, Object object) throws Throwable {
+            Beans.setValue(object, _field, rs.getObject(index));
+        }
+    }
+
+    private static class LongColumn extends Column {
+        private final MethodHandle _setter;
+
+        LongColumn(int index, MethodHandle setter) {
+            super(index);
+            _setter = setter;
+        }
+
+        @Override
+        void map(ResultSet rs, Object object) throws Throwable {
+            long value = rs.getLong(index);
+            if (!rs.wasNull()) _setter.invokeExact(object, value);
+        }
+    }
+
+    private static class IntColumn extends Column {
+        private final MethodHandle _setter;
+
+        IntColumn(int index, MethodHandle setter) {
+            super(index);
+            _setter = setter;
+        }
+
+        @Override
+        void map(ResultSet rs, Object object) throws Throwable {
+            int value = rs.getInt(index);
+            if (!rs.wasNull()) _setter.invokeExact(object, value);
+        }
+    }
+
+    private static class ShortColumn extends Column {
+        private final MethodHandle _setter;
+
+        ShortColumn(int index, MethodHandle setter) {
+            super(index);
+            _setter = setter;
+        }
+
+        @Override
+        void map(ResultSet rs, Object object) throws Throwable {
+            short value = rs.getShort(index);
+            if (!rs.wasNull()) _setter.invokeExact(object, value);
+        }
+    }
+
+    private static class DoubleColumn extends Column {
+        private final MethodHandle _setter;
+
+        DoubleColumn(int index, MethodHandle setter) {
+            super(index);
+            _setter = setter;
+        }
+
+        @Override
+        void map(ResultSet rs, Object object) throws Throwable {
+            double value = rs.getDouble(index);
+            if (!rs.wasNull()) _setter.invokeExact(object, value);
+        }
+    }
+
+    private static class FloatColumn extends Column {
+        private final MethodHandle _setter;
+
+        FloatColumn(int index, MethodHandle setter) {
+            super(index);
+            _setter = setter;
+        }
+
+        @Override
+        void map(ResultSet rs, Object object) throws Throwable {
+            float value = rs.getFloat(index);
+            if (!rs.wasNull()) _setter.invokeExact(object, value);
+        }
+    }
+
+    private static class BooleanColumn extends Column {
+        private final MethodHandle _setter;
+
+        BooleanColumn(int index, MethodHandle setter) {
+            super(index);
+            _setter = setter;
+        }
+
+        @Override
+        void map(ResultSet rs, Object object) throws Throwable {
+            boolean value = rs.getBoolean(index);
+            if (!rs.wasNull()) _setter.invokeExact(object, value);
+        }
+    }
+
+    private static class StringColumn extends Column {
+        private final MethodHandle _setter;
+
+        StringColumn(int index, MethodHandle setter) {
+            super(index);
+            _setter = setter;
+        }
+
+        @Override
+        void map(ResultSet rs, Object object) throws Throwable {
+            Object value = rs.getString(index);
+            if (value != null) _setter.invokeExact(object, value);
+        }
+    }
+
+    private static class DecimalColumn extends Column {
+        private final MethodHandle _setter;
+
+        DecimalColumn(int index, MethodHandle setter) {
+            super(index);
+            _setter = setter;
+        }
+
+        @Override
+        void map(ResultSet rs, Object object) throws Throwable {
+            Object value = rs.getBigDecimal(index);
+            if (value != null) _setter.invokeExact(object, value);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.xillium.data.persistence;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A cache of PreparedStatements prepared on a single connection, with a capacity limit and the LRU replacement policy.
+ *
+ * <p>A StatementCache is bound to a connection for as long as the connection is bound to a transaction, and is unbound, with all
+ * cached statements closed, before the transaction completes. While it is bound, ParametricStatements executed over the connection
+ * reuse the statements prepared earlier in the same transaction, instead of preparing and closing them on every execution.</p>
+ *
+ * <p>A cached statement is checked out by prepare() and checked back in by release(). While it is checked out, it is never evicted,
+ * and a nested use of the same ParametricStatement, e.g. by a ResultSetWorker that executes it again, gets an uncached statement
+ * instead, which release() closes.</p>
+ *
+ * <p>A StatementCache is only ever accessed by the thread that owns the connection's transaction.</p>
+ */
+public class StatementCache {
+    static final int PLAIN = 0;
+    static final int NO_GENERATED_KEYS = 1;
+    static final int RETURN_GENERATED_KEYS = 2;
+    static final int CALLABLE = 3;
+
+    private static final Map<Connection, StatementCache> _bound = new ConcurrentHashMap<Connection, StatementCache>();
+
+    /**
+     * Cumulative statistics of all StatementCaches created on behalf of one Persistence.
+     */
+    public static class Statistics {
+        private final AtomicInteger _size = new AtomicInteger();
+        private final AtomicInteger _max = new AtomicInteger();
+        private final AtomicLong _read = new AtomicLong();
+        private final AtomicLong _hit = new AtomicLong();
+        private final AtomicLong _swap = new AtomicLong();
+
+        /**
+         * Returns the number of statements currently cached.
+         */
+        public int getSize() { return _size.get(); }
+
+        /**
+         * Returns the maximum number of statements ever cached at the same time.
+         */
+        public int getMax() { return _max.get(); }
+
+        /**
+         * Returns the number of cache reads.
+         */
+        public long getRead() { return _read.get(); }
+
+        /**
+         * Returns the number of cache hits.
+         */
+        public long getHit() { return _hit.get(); }
+
+        /**
+         * Returns the number of statements evicted to make room for others.
+         */
+        public long getSwap() { return _swap.get(); }
+
+        /**
+         * Resets the cumulative counters.
+         */
+        public void reset() {
+            _max.set(_size.get());
+            _read.set(0);
+            _hit.set(0);
+            _swap.set(0);
+        }
+
+        void grow(int delta) {
+            int size = _size.addAndGet(delta);
+            for (int max = _max.get(); size > max && !_max.compareAndSet(max, size); max = _max.get());
+        }
+    }
+
+    private final Connection _connection;
+    private final Statistics _stats;
+    private final LinkedHashMap<ParametricStatement, PreparedStatement[]> _statements;
+    private final Set<PreparedStatement> _busy = Collections.newSetFromMap(new IdentityHashMap<PreparedStatement, Boolean>());
+
+    private StatementCache(Connection connection, final int limit, Statistics stats) {
+        _connection = connection;
+        _stats = stats;
+        _statements = new LinkedHashMap<ParametricStatement, PreparedStatement[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ParametricStatement, PreparedStatement[]> eldest) {
+                if (size() > limit) {
+                    // evicts the least recently used entry with no statements checked out, if any
+                    for (Iterator<PreparedStatement[]> it = values().iterator(); it.hasNext();) {
+                        PreparedStatement[] statements = it.next();
+                        if (isEvictable(statements)) {
+                            it.remove();
+                            _stats.grow(-close(statements));
+                            _stats._swap.incrementAndGet();
+                            break;
+                        }
+                    }
+                }
+                return false;
+            }
+            private static final long serialVersionUID = 1L;
+        };
+    }
+
+    /**
+     * Binds a new StatementCache to a connection, unless one is already bound.
+     *
+     * @param connection a transaction-bound connection
+     * @param limit the maximum number of ParametricStatements whose prepared statements are to be cached
+     * @param stats the statistics to update
+     * @return whether a new StatementCache has been bound
+     */
+    public static boolean bind(Connection connection, int limit, Statistics stats) {
+        if (_bound.containsKey(connection)) {
+            return false;
+        } else {
+            _bound.put(connection, new StatementCache(connection, limit, stats));
+            return true;
+        }
+    }
+
+    /**
+     * Unbinds the StatementCache from a connection, closing all cached statements.
+     *
+     * @param connection a connection to which a StatementCache has been bound
+     */
+    public static void unbind(Connection connection) {
+        StatementCache cache = _bound.remove(connection);
+        if (cache != null) {
+            int count = 0;
+            for (PreparedStatement[] statements: cache._statements.values()) {
+                count += close(statements);
+            }
+            cache._statements.clear();
+            cache._busy.clear();
+            cache._stats.grow(-count);
+        }
+    }
+
+    /**
+     * Looks up the StatementCache bound to a connection.
+     *
+     * @return the StatementCache, or null if none is bound to the connection
+     */
+    static StatementCache lookup(Connection connection) {
+        return _bound.isEmpty() ? null : _bound.get(connection);
+    }
+
+    /**
+     * Checks out a prepared statement for a ParametricStatement, preparing a new one only upon cache miss. If the cached statement
+     * is already checked out, an uncached statement is prepared instead.
+     *
+     * @param statement the ParametricStatement
+     * @param variant one of PLAIN, NO_GENERATED_KEYS, RETURN_GENERATED_KEYS, and CALLABLE
+     * @return the prepared statement, to be returned through release()
+     */
+    PreparedStatement prepare(ParametricStatement statement, int variant) throws SQLException {
+        _stats._read.incrementAndGet();
+
+        PreparedStatement[] statements = _statements.get(statement);
+        if (statements == null) {
+            _statements.put(statement, statements = new PreparedStatement[CALLABLE+1]);
+        }
+
+        PreparedStatement prepared = statements[variant];
+        if (prepared != null && _busy.contains(prepared)) {
+            return statement.prepare(_connection, null, variant);
+        } else if (prepared != null && !prepared.isClosed()) {
+            _stats._hit.incrementAndGet();
+        } else {
+            prepared = statement.prepare(_connection, null, variant);
+            if (statements[variant] == null) _stats.grow(1);
+            statements[variant] = prepared;
+        }
+        _busy.add(prepared);
+        return prepared;
+    }
+
+    /**
+     * Checks in a statement obtained from prepare(), clearing it for reuse.
+     *
+     * @param statement the prepared statement
+     * @param batch whether the statement has been used in batch mode
+     * @return whether the statement is a cached one, or false if it is uncached and is to be closed by the caller
+     */
+    boolean release(PreparedStatement statement, boolean batch) {
+        if (_busy.remove(statement)) {
+            try {
+                if (batch) statement.clearBatch();
+                statement.clearParameters();
+            } catch (SQLException x) {
+                // a statement in a bad state is closed, to be prepared again upon next use
+                try { statement.close(); } catch (SQLException t) {}
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    // an entry can be evicted if it holds statements, none of which is checked out
+    private boolean isEvictable(PreparedStatement[] statements) {
+        boolean cached = false;
+        for (PreparedStatement statement: statements) {
+            if (statement != null) {
+                if (_busy.contains(statement)) return false;
+                cached = true;
+            }
+        }
+        return cached;
+    }
+
+    // closes all statements in the array, returning the number of statements cached in it
+    private static int close(PreparedStatement[] statements) {
+        int count = 0;
+        for (PreparedStatement statement: statements) {
+            if (statement != null) {
+                ++count;
+                try { statement.close(); } catch (SQLException x) {}
+            }
+        }
+        return count;
+    }
+}
@@ -1,8 +1,13 @@
 package org.xillium.data.validation;
 
 import org.xillium.data.DataObject;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -10,23 +15,38 @@ import java.util.*;
  */
 @lombok.extern.log4j.Log4j2
 public class Reifier {
-    protected static final Map<Class<?>, Map<String, Validator>> _cached = new HashMap<Class<?>, Map<String, Validator>>();
+    // in-place validators by declaring class and field name, read without locking
+    protected static final ConcurrentMap<Class<?>, ConcurrentMap<String, Validator>> _cached = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, Validator>>();
 
-    public static synchronized Validator cache(Class<?> type, String name, Validator validator) {
-        Map<String, Validator> validators = _cached.get(type);
-        if (validators == null) {
-            _cached.put(type, validators = new HashMap<String, Validator>());
-        }
-        validators.put(name, validator);
+    public static Validator cache(Class<?> type, String name, Validator validator) {
+        validators(type).put(name, validator);
         return validator;
     }
 
-    public static synchronized Validator find(Class<?> type, String name) {
+    public static Validator find(Class<?> type, String name) {
         Map<String, Validator> validators = _cached.get(type);
         return validators != null ? validators.get(name) : null;
     }
 
+    /*!
+     * Returns the in-place validators of a declaring class, creating the map if necessary. The map is never replaced once created.
+     */
+    private static ConcurrentMap<String, Validator> validators(Class<?> type) {
+        ConcurrentMap<String, Validator> validators = _cached.get(type);
+        if (validators == null) {
+            ConcurrentMap<String, Validator> existing = _cached.putIfAbsent(type, validators = new ConcurrentHashMap<String, Validator>());
+            if (existing != null) validators = existing;
+        }
+        return validators;
+    }
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private static final int MAX_PLANNED_INDEX = 256;
+
     Map<String, Validator> _named = new HashMap<String, Validator>();
+
+    // collection plans by DataObject class
+    private final ConcurrentMap<Class<?>, Plan> _plans = new ConcurrentHashMap<Class<?>, Plan>();
     
     /**
      * Adds a set of data type specifications.
@@ -45,6 +65,7 @@ public class Reifier {
                 _log.trace("Ignored non-public field: {}", field.getName());
             }
         }
+        _plans.clear();
 
         return this;
     }
@@ -62,197 +83,304 @@ public class Reifier {
      * @throws SecurityException if the data object is inproperly designed
      */
     public <T extends DataObject> T collect(T data, Map<String, String> binder) throws SecurityException, DataValidationException {
-        return collect(data, binder, null);
+        return collect(data, binder, plan(data.getClass()));
     }
 
-    private final <T extends DataObject> T collect(T data, Map<String, String> binder, String prefix) throws SecurityException, DataValidationException {
+    private final <T extends DataObject> T collect(T data, Map<String, String> binder, Plan plan) throws DataValidationException {
         int present = 0;
         String absent = null;
 
-        for (Field field: data.getClass().getFields()) {
-            if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) continue;
-
-            Class<?> ftype = field.getType();
-            String name = field.getName();
-            String qualified = prefix != null ? prefix + '.' + name : name;
-            _log.trace("collect(): qualified = {}", qualified);
-
-            if (ftype.isArray()) {
-                _log.trace("collect(): field is an array");
+        for (Member member: plan.members) {
+            if (member.array) {
                 ArrayList<Object> list = new ArrayList<Object>();
-                Class<?> ctype = ftype.getComponentType();
-                
-                if (DataObject.class.isAssignableFrom(ctype)) {
-                    _log.trace("collect(): DataObject array");
+
+                if (member.composite) {
                     for (int index = 0; true; ++index) {
                         try {
-                            list.add(collect((DataObject)ctype.newInstance(), binder, qualified + '[' + index + ']'));
+                            list.add(collect(member.instantiate(), binder, member.element(index)));
                         } catch (EmptyDataObjectException x) {
-                            _log.trace("DataObject array '{}': no more elements", qualified);
+                            _log.trace("DataObject array '{}': no more elements", member.key);
                             break;
-                        } catch (InstantiationException x) {
-                            throw new ValidationSpecificationException("Impossible to instantiate " + ctype.getName(), x);
-                        } catch (IllegalAccessException x) {
-                            throw new ValidationSpecificationException("Impossible to instantiate " + ctype.getName(), x);
                         }
                     }
                 } else {
-                    _log.trace("collect(): simple array");
                     for (int index = 0; true; ++index) {
-                        String text = binder.get(qualified + '[' + index + ']');
+                        String text = binder.get(member.key(index));
                         if (text != null) {
-                            list.add(translate(field, name, text));
+                            list.add(translate(member, text));
                         } else {
-                            _log.trace("Simple array '{}': no more elements", qualified);
+                            _log.trace("Simple array '{}': no more elements", member.key);
                             break;
                         }
                     }
                 }
-                _log.trace("collect(): array - get elements {}", list.size());
                 if (list.size() > 0) {
-                    _log.trace("Storing array '{}' with length {}", qualified, list.size());
-                    try {
-                        field.set(data, list.toArray((Object[])Array.newInstance(ctype, list.size())));
-                    } catch (IllegalAccessException x) {
-                        // should not happen
-                        throw new RuntimeException("While setting array field " + field, x);
-                    }
-                    _log.trace("Array '{}' stored", qualified );
-                } else if (field.getAnnotation(required.class) != null) {
-                    throw new MissingParameterException(
-                        name, (prefix != null ? prefix : "") + '(' + data.getClass().getName() + ')'
-                    );
+                    _log.trace("Storing array '{}' with length {}", member.key, list.size());
+                    member.set(data, list.toArray((Object[])Array.newInstance(member.ctype, list.size())));
+                } else if (member.required) {
+                    throw new MissingParameterException(member.name, plan.context);
                 } else {
                     continue;
                 }
-            } else if (DataObject.class.isAssignableFrom(ftype)) {
+            } else if (member.composite) {
                 try {
-                    field.set(data, collect((DataObject)ftype.newInstance(), binder, qualified));
+                    member.set(data, collect(member.instantiate(), binder, member.child()));
                 } catch (EmptyDataObjectException x) {
-                    if (isRequired(data, field, prefix, name, present)) {
-                        absent = name;
+                    if (isRequired(plan, member, present)) {
+                        absent = member.name;
                     }
                     continue;
-                } catch (InstantiationException x) {
-                    throw new ValidationSpecificationException("Impossible to instantiate " + ftype.getName(), x);
-                } catch (IllegalAccessException x) {
-                    throw new RuntimeException("While setting field " + field, x);
                 }
             } else {
-                String text = binder.get(qualified);
+                String text = binder.get(member.key);
                 if (text != null && text.length() > 0) {
                     if (absent != null) {
                         // now report missing required parameters
-                        throw new MissingParameterException(
-                            absent, (prefix != null ? prefix : "") + '('+data.getClass().getName()+')'
-                        );
+                        throw new MissingParameterException(absent, plan.context);
                     } else {
-                        try {
-                            field.set(data, translate(field, name, text));
-                        } catch (IllegalAccessException x) {
-                            throw new RuntimeException("While setting field " + field, x);
-                        }
+                        member.set(data, translate(member, text));
                     }
                 } else {
                     Object prefill = null;
                     try {
-                        prefill = field.get(data);
+                        prefill = member.get(data);
                     } catch (Throwable t) {}
                     if (prefill != null) {
                         // re-translate the value, passing it through validation
                         try {
-                            translate(field, name, String.valueOf(prefill));
+                            translate(member, String.valueOf(prefill));
                         } catch (Exception x) {
                             prefill = null;
                         }
                     }
-                    if (prefill == null && isRequired(data, field, prefix, name, present)) {
-                        absent = name;
+                    if (prefill == null && isRequired(plan, member, present)) {
+                        absent = member.name;
                     }
                     continue;
                 }
             }
 
-            _log.trace("Got {}", name);
+            _log.trace("Got {}", member.name);
             ++present;
         }
 
         // EmptyDataObjectException should never be thrown for the top-level object (where prefix == null)
-        if (present == 0 && prefix != null) {
-            throw new EmptyDataObjectException(prefix);
-        } else if (prefix == null && absent != null) {
-            throw new MissingParameterException(absent, "(" + data.getClass().getName()+')');
+        if (present == 0 && plan.prefix != null) {
+            throw new EmptyDataObjectException(plan.prefix);
+        } else if (plan.prefix == null && absent != null) {
+            throw new MissingParameterException(absent, plan.context);
         } else {
             return data;
         }
     }
 
     /*!
-     * Translates a text string to a value of the appropriate type for the given field.
+     * Translates a text string to a value of the appropriate type for the given member.
      */
-    private final Object translate(Field field, String name, String text) throws DataValidationException {
+    private final Object translate(Member member, String text) throws DataValidationException {
         Object value = null;
 
         try {
             // in-place validator first
-            Class<?> type = field.getType();
-            if (type.isArray()) {
-                type = type.getComponentType();
-            }
-
-            Validator inplaceValidator = find(field.getDeclaringClass(), name);
-            if (inplaceValidator == null) {
-                _log.trace("New Validator for type {}", type);
-                inplaceValidator = cache(field.getDeclaringClass(), name, new Validator(name, type, field));
-            }
-            /*
-            _log.trace("New Validator for type " + type);
-            Validator inplaceValidator = new Validator(name, type, field);
-            */
+            Validator inplaceValidator = member.validator();
 
             // validations in extended-type?
-            subtype restriction = field.getAnnotation(subtype.class);
-            Validator namedValidator = restriction != null ? _named.get(restriction.value()) : null;
-
-            if (namedValidator != null) {
+            if (member.named != null) {
                 inplaceValidator.preValidate(text);
-                value = namedValidator.parse(text);
+                value = member.named.parse(text);
                 inplaceValidator.postValidate(value);
             } else {
                 value = inplaceValidator.parse(text);
             }
         } catch (IllegalArgumentException x) {
-            throw new ValidationSpecificationException(field.getDeclaringClass().getSimpleName() + '.' + name, x);
+            throw new ValidationSpecificationException(member.field.getDeclaringClass().getSimpleName() + '.' + member.name, x);
         }
 
         return value;
     }
 
     /*!
-     * Tests whether the specified field is a required field.
+     * Returns the top-level collection plan of a DataObject class.
+     */
+    private final Plan plan(Class<?> type) {
+        Plan plan = _plans.get(type);
+        if (plan == null) {
+            Plan existing = _plans.putIfAbsent(type, plan = new Plan(type, null));
+            if (existing != null) plan = existing;
+        }
+        return plan;
+    }
+
+    /*!
+     * A collection plan of a DataObject class under a particular name prefix, listing the data members with precomputed keys,
+     * field handles and validators. Plans of nested data objects are built on first use.
+     */
+    private final class Plan {
+        final String prefix;
+        final String context;
+        final Member[] members;
+
+        Plan(Class<?> type, String prefix) {
+            this.prefix = prefix;
+            this.context = (prefix != null ? prefix : "") + '(' + type.getName() + ')';
+            List<Member> members = new ArrayList<Member>();
+            for (Field field: type.getFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) continue;
+                members.add(new Member(field, prefix));
+            }
+            this.members = members.toArray(new Member[members.size()]);
+        }
+    }
+
+    /*!
+     * A data member in a collection plan.
+     */
+    private final class Member {
+        final Field field;
+        final String name;
+        final String key;
+        final Class<?> ctype;
+        final boolean array;
+        final boolean composite;
+        final boolean required;
+        final Validator named;
+        private final MethodHandle _getter;
+        private final MethodHandle _setter;
+        private volatile ConcurrentMap<String, Validator> _validators;
+        private volatile MethodHandle _constructor;
+        private volatile Plan _child;
+        private volatile String[] _keys = new String[0];
+        private volatile Plan[] _elements = new Plan[0];
+
+        Member(Field field, String prefix) {
+            Class<?> ftype = field.getType();
+            this.field = field;
+            this.name = field.getName();
+            this.key = prefix != null ? prefix + '.' + name : name;
+            this.array = ftype.isArray();
+            this.ctype = array ? ftype.getComponentType() : ftype;
+            this.composite = DataObject.class.isAssignableFrom(ctype);
+            this.required = field.getAnnotation(required.class) != null;
+
+            subtype restriction = field.getAnnotation(subtype.class);
+            this.named = restriction != null ? _named.get(restriction.value()) : null;
+
+            MethodHandle getter = null, setter = null;
+            try {
+                field.setAccessible(true);
+                getter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+                if (!Modifier.isFinal(field.getModifiers())) {
+                    setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+                }
+            } catch (IllegalAccessException | SecurityException x) {
+                _log.trace("Field {} not accessible: {}", field, x.getMessage());
+            }
+            _getter = getter;
+            _setter = setter;
+        }
+
+        Object get(Object data) throws Throwable {
+            if (_getter == null) throw new IllegalAccessException(field.toString());
+            return _getter.invokeExact(data);
+        }
+
+        void set(Object data, Object value) {
+            try {
+                if (_setter == null) throw new IllegalAccessException(field.toString());
+                _setter.invokeExact(data, value);
+            } catch (RuntimeException | Error x) {
+                throw x;
+            } catch (Throwable t) {
+                throw new RuntimeException("While setting field " + field, t);
+            }
+        }
+
+        // looked up in the shared cache every time, so that an override through Reifier.cache() takes effect immediately
+        Validator validator() {
+            ConcurrentMap<String, Validator> validators = _validators;
+            if (validators == null) {
+                _validators = validators = validators(field.getDeclaringClass());
+            }
+            Validator validator = validators.get(name);
+            if (validator == null) {
+                _log.trace("New Validator for type {}", ctype);
+                Validator existing = validators.putIfAbsent(name, validator = new Validator(name, ctype, field));
+                if (existing != null) validator = existing;
+            }
+            return validator;
+        }
+
+        DataObject instantiate() {
+            MethodHandle constructor = _constructor;
+            try {
+                if (constructor == null) {
+                    _constructor = constructor = lookup.findConstructor(ctype, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+                }
+                return (DataObject)(Object)constructor.invokeExact();
+            } catch (RuntimeException | Error x) {
+                throw x;
+            } catch (Throwable t) {
+                throw new ValidationSpecificationException("Impossible to instantiate " + ctype.getName(), t);
+            }
+        }
+
+        Plan child() {
+            Plan child = _child;
+            if (child == null) {
+                _child = child = new Plan(ctype, key);
+            }
+            return child;
+        }
+
+        String key(int index) {
+            String[] keys = _keys;
+            if (index < keys.length) {
+                return keys[index];
+            } else if (index < MAX_PLANNED_INDEX) {
+                keys = Arrays.copyOf(keys, index + 1);
+                for (int i = _keys.length; i < keys.length; ++i) keys[i] = key + '[' + i + ']';
+                _keys = keys;
+                return keys[index];
+            } else {
+                return key + '[' + index + ']';
+            }
+        }
+
+        Plan element(int index) {
+            Plan[] elements = _elements;
+            if (index < elements.length) {
+                return elements[index];
+            } else if (index < MAX_PLANNED_INDEX) {
+                elements = Arrays.copyOf(elements, index + 1);
+                for (int i = _elements.length; i < elements.length; ++i) elements[i] = new Plan(ctype, key(i));
+                _elements = elements;
+                return elements[index];
+            } else {
+                return new Plan(ctype, key(index));
+            }
+        }
+    }
+
+    /*!
+     * Tests whether the specified member is a required member.
      *
-     * @param data - the containing data object
-     * @param field - the field
-     * @param prefix - the current prefix indicating the name of the containing data object
-     * @param name - the cached name of the field
+     * @param plan - the collection plan of the containing data object
+     * @param member - the member
      * @param present - the number of data members already having values
      *
-     * @throws MissingParameterException if the field is required and there's already another member present (present > 0)
-     * @return true if the field is required, false otherwise
+     * @throws MissingParameterException if the member is required and there's already another member present (present > 0)
+     * @return true if the member is required, false otherwise
      */
-    private static final boolean isRequired(DataObject data, Field field, String prefix, String name, int present)
-    throws MissingParameterException {
-        if (field.getAnnotation(required.class) != null) {
+    private static final boolean isRequired(Plan plan, Member member, int present) throws MissingParameterException {
+        if (member.required) {
             //if (present == 0) {
-            if (present == 0 && prefix != null) { // Brian 3/9/2012
+            if (present == 0 && plan.prefix != null) { // Brian 3/9/2012
                 // hold the exception report as long as the data object is empty
-                _log.trace("Hold the exception report on field {}", name);
+                _log.trace("Hold the exception report on field {}", member.name);
                 return true;
             } else {
                 _log.trace("Data object already has {} member values", present );
-                throw new MissingParameterException(
-                    name, (prefix != null ? prefix : "") + '(' + data.getClass().getName() + ')'
-                );
+                throw new MissingParameterException(member.name, plan.context);
             }
         } else {
             return false;
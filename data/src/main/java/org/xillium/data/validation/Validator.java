@@ -5,6 +5,7 @@ import org.xillium.base.type.typeinfo;
 import org.xillium.base.util.ValueOf;
 import org.xillium.base.util.Objects;
 import java.lang.reflect.*;
+import java.util.*;
 import java.util.regex.*;
 
 
@@ -26,12 +27,19 @@ public class Validator {
         }
     }
 
+    // enumerated integral values up to this bound are kept in a BitSet
+    private static final int MAX_CODE = 4096;
+
     String _name;
     ValueOf _valueOf;
     Range<?>[] _ranges;
+    Range<?>[] _reaches;
     Pattern _pattern;
+    ThreadLocal<Matcher> _matcher;
     int _size;
-    Object[] _values;
+    Set<Object> _values;
+    BitSet _codes;
+    Class<?> _codeType;
 
     /**
      * Constructs a Validator for a member field inside a DataObject.
@@ -69,15 +77,24 @@ public class Validator {
                     );
                 }
             }
+            if (_ranges != null) index();
 
             pattern p = field.getAnnotation(pattern.class);
             _pattern = p != null ? Pattern.compile(p.value()) : null;
+            if (_pattern != null) {
+                _matcher = new ThreadLocal<Matcher>() {
+                    @Override
+                    protected Matcher initialValue() {
+                        return _pattern.matcher("");
+                    }
+                };
+            }
 
             size z = field.getAnnotation(size.class);
             _size = (z != null && z.value() > 0) ? z.value() : 0;
 
             values v = field.getAnnotation(values.class);
-            _values = v != null ? (_valueOf.isString() ? v.value() : Objects.apply(new Object[v.value().length], v.value(), _valueOf)) : null;
+            if (v != null) index(_valueOf.isString() ? v.value() : Objects.apply(new Object[v.value().length], v.value(), _valueOf));
         } catch (ClassCastException x) {
             throw new IllegalArgumentException("Type is not Comparable yet has range specifications");
         }
@@ -123,7 +140,7 @@ public class Validator {
 
         // pattern
         _log.trace("preValidate: pattern = {}", _pattern);
-        if (_pattern != null && !_pattern.matcher(text).matches()) {
+        if (_pattern != null && !_matcher.get().reset(text).matches()) {
             throw new DataValidationException("PATTERN", _name, text);
         }
     }
@@ -134,28 +151,124 @@ public class Validator {
      * @param object - the data value
      * @throws DataValidationException if any of the data constraints are violated
      */
-    @SuppressWarnings("unchecked")
     public void postValidate(Object object) throws DataValidationException {
-        if (_values != null || _ranges != null) {
-            if (_values != null) for (Object value: _values) {
-                if (value.equals(object)) return;
+        if (_values != null || _codes != null || _ranges != null) {
+            if (_values != null && _values.contains(object)) return;
+
+            if (_codes != null && object != null && object.getClass() == _codeType) {
+                long code = ((Number)object).longValue();
+                if (code >= 0 && code < MAX_CODE && _codes.get((int)code)) return;
             }
 
-            if (_ranges != null) for (@SuppressWarnings("rawtypes") Range r: _ranges) {
-                @SuppressWarnings("rawtypes")
-                Comparable o = (Comparable)object;
-                if (r.inclusive) {
-                    if ((r.min == null || r.min.compareTo(o) <= 0) && (r.max == null || o.compareTo(r.max) <= 0)) {
-                        return;
-                    }
-                } else {
-                    if ((r.min == null || r.min.compareTo(o) < 0) && (r.max == null || o.compareTo(r.max) < 0)) {
-                        return;
+            if (_ranges != null) {
+                // the ranges whose lower bounds admit the value form a prefix of _ranges
+                int low = 0, high = _ranges.length;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (above(_ranges[middle], object)) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
                     }
                 }
+                if (low > 0 && below(_reaches[low-1], object)) return;
             }
 
             throw new DataValidationException("VALUES/RANGES", _name, object);
         }
     }
+
+    /*!
+     * Tells whether the value is above the lower bound of the range.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static boolean above(Range r, Object o) {
+        if (r.min == null) return true;
+        int c = r.min.compareTo((Comparable)o);
+        return r.inclusive ? c <= 0 : c < 0;
+    }
+
+    /*!
+     * Tells whether the value is below the upper bound of the range.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static boolean below(Range r, Object o) {
+        if (r.max == null) return true;
+        int c = ((Comparable)o).compareTo(r.max);
+        return r.inclusive ? c <= 0 : c < 0;
+    }
+
+    /*!
+     * Sorts the ranges by their lower bounds, with inclusive bounds before exclusive ones, and records in _reaches the range
+     * reaching the furthest among each prefix of the sorted ranges.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void index() {
+        Arrays.sort(_ranges, new Comparator<Range>() {
+            public int compare(Range a, Range b) {
+                if (a.min == null || b.min == null) {
+                    return a.min == null ? (b.min == null ? 0 : -1) : 1;
+                }
+                int c = a.min.compareTo(b.min);
+                return c != 0 ? c : (a.inclusive == b.inclusive ? 0 : a.inclusive ? -1 : 1);
+            }
+        });
+        _reaches = new Range[_ranges.length];
+        Range reach = null;
+        for (int i = 0; i < _ranges.length; ++i) {
+            Range r = _ranges[i];
+            if (reach == null) {
+                reach = r;
+            } else if (reach.max != null) {
+                if (r.max == null) {
+                    reach = r;
+                } else {
+                    int c = r.max.compareTo(reach.max);
+                    if (c > 0 || (c == 0 && r.inclusive && !reach.inclusive)) reach = r;
+                }
+            }
+            _reaches[i] = reach;
+        }
+    }
+
+    /*!
+     * Indexes the enumerated values: small non-negative integral values into a BitSet, enum constants into an EnumSet, and
+     * all others into a HashSet.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void index(Object[] values) {
+        Class<?> type = values.length > 0 && values[0] != null ? values[0].getClass() : null;
+        if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+            BitSet codes = new BitSet();
+            for (Object value: values) {
+                long code = value != null && value.getClass() == type ? ((Number)value).longValue() : -1;
+                if (code < 0 || code >= MAX_CODE) {
+                    codes = null;
+                    break;
+                }
+                codes.set((int)code);
+            }
+            if (codes != null) {
+                _codes = codes;
+                _codeType = type;
+                return;
+            }
+        }
+
+        if (type != null && type.isEnum()) {
+            _values = (Set)EnumSet.noneOf((Class<Enum>)type);
+            for (Object value: values) {
+                if (value != null && value.getClass() == type) {
+                    _values.add(value);
+                } else {
+                    _values = null;
+                    break;
+                }
+            }
+            if (_values != null) return;
+        }
+
+        _values = new HashSet<Object>();
+        for (Object value: values) if (value != null) _values.add(value);
+    }
 }
@@ -4,20 +4,11 @@ import java.io.IOException;
 import java.io.InputStream;;
 import java.io.Writer;
 import java.util.*;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
- 
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.xml.sax.*;
-import org.xml.sax.helpers.DefaultHandler;
 import org.xillium.base.beans.Strings;
 import org.xillium.base.util.XML;
 import org.xillium.data.DataBinder;
@@ -38,69 +29,143 @@ public class XDBCodec {
     public static final String R = XDB.Element.R.toString().toLowerCase();
     public static final String C = XDB.Element.C.toString().toLowerCase();
 
-	public static Writer encode(Writer sink, DataBinder binder) throws ParserConfigurationException, TransformerException, IOException {
-        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-        Element root = doc.createElementNS(NAMESPACE, XDB_NS + M);
+    /**
+     * Encodes a data binder as an XML document into a writer. The document is streamed into the writer as it is generated, and
+     * result set rows are visited one at a time through {@link CachedResultSet#rowIterator()}, so result sets that materialize
+     * their rows lazily are never fully materialized. Returns the writer.
+     */
+    public static Writer encode(Writer sink, DataBinder binder) throws ParserConfigurationException, TransformerException, IOException {
+        StringBuilder sb = new StringBuilder(BUFFER_SIZE + 256);
+        sb.append(PROLOG).append('<').append(XDB_NS).append(M).append(" xmlns:").append(XDB_NS, 0, XDB_NS.length()-1).append("=\"");
+        attribute(sb, NAMESPACE).append('"');
+        boolean empty = true;
 
-        Iterator<String> it = binder.keySet().iterator();
-        while (it.hasNext()) {
-            String key = it.next();
+        for (String key: binder.keySet()) {
             if (key.charAt(0) == '#' && key.charAt(key.length()-1) == '#') continue;
-            String val = binder.get(key);
-
-            Element param = doc.createElement(P);
-            Attr attr = doc.createAttribute(NAME);
-            attr.setValue(key);
-            param.setAttributeNode(attr);
-
-            if (val != null) {
-                param.appendChild(doc.createTextNode(val.toString()));
-            } else {
-                param.appendChild(doc.createTextNode(""));
+            if (empty) {
+                sb.append('>');
+                empty = false;
             }
-            root.appendChild(param);
+            sb.append('<').append(P).append(' ').append(NAME).append("=\"");
+            attribute(sb, key).append('"');
+            element(sb, P, binder.get(key));
         }
 
-        Set<String> rsets = binder.getResultSetNames();
-        it = rsets.iterator();
-        while (it.hasNext()) {
-            String key = it.next();
-
-            Element table = doc.createElement(T);
-            Attr attr = doc.createAttribute(NAME);
-            attr.setValue(key);
-            table.setAttributeNode(attr);
+        for (String key: binder.getResultSetNames()) {
+            if (empty) {
+                sb.append('>');
+                empty = false;
+            }
+            sb.append('<').append(T).append(' ').append(NAME).append("=\"");
+            attribute(sb, key).append("\">");
 
             CachedResultSet rset = binder.getResultSet(key);
-            Element row = doc.createElement(H);
-            for (int i = 0; i < rset.columns.length; ++i) {
-                Element col = doc.createElement(C);
-                col.appendChild(doc.createTextNode(rset.columns[i]));
-                row.appendChild(col);
+            sb.append('<').append(H);
+            if (rset.columns.length > 0) {
+                sb.append('>');
+                for (int i = 0; i < rset.columns.length; ++i) {
+                    sb.append('<').append(C);
+                    element(sb, C, rset.columns[i]);
+                }
+                sb.append("</").append(H).append('>');
+            } else {
+                sb.append("/>");
             }
-            table.appendChild(row);
 
-            for (int r = 0; r < rset.rows.size(); ++r) {
-                row = doc.createElement(R);
-                for (int i = 0; i < rset.columns.length; ++i) {
-                    Element col = doc.createElement(C);
-                    col.appendChild(doc.createTextNode(Strings.toString(rset.rows.get(r)[i])));
-                    row.appendChild(col);
+            for (Iterator<Object[]> rows = rset.rowIterator(); rows.hasNext();) {
+                Object[] data = rows.next();
+                sb.append('<').append(R);
+                if (rset.columns.length > 0) {
+                    sb.append('>');
+                    for (int i = 0; i < rset.columns.length; ++i) {
+                        sb.append('<').append(C);
+                        element(sb, C, Strings.toString(data[i]));
+                    }
+                    sb.append("</").append(R).append('>');
+                } else {
+                    sb.append("/>");
+                }
+                if (sb.length() > BUFFER_SIZE) {
+                    sink.write(sb.toString());
+                    sb.setLength(0);
                 }
-                table.appendChild(row);
             }
-            root.appendChild(table);
+            sb.append("</").append(T).append('>');
         }
 
-        doc.appendChild(root);
-
-        // send the content into the writer
-        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc), new StreamResult(sink));
+        if (empty) {
+            sb.append("/>");
+        } else {
+            sb.append("</").append(XDB_NS).append(M).append('>');
+        }
+        sink.write(sb.toString());
         sink.flush();
 
         return sink;
     }
 
+    private static final String PROLOG = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+    private static final int BUFFER_SIZE = 8192;
+
+    /*!
+     * Completes an element whose start tag is open, with the given text as content.
+     */
+    private static void element(StringBuilder sb, String name, String text) {
+        if (text != null && text.length() > 0) {
+            sb.append('>');
+            escape(sb, text, false);
+            sb.append("</").append(name).append('>');
+        } else {
+            sb.append("/>");
+        }
+    }
+
+    private static StringBuilder attribute(StringBuilder sb, String text) {
+        return escape(sb, text, true);
+    }
+
+    /*!
+     * Escapes text the same way as the JDK's XML serializer does.
+     */
+    private static StringBuilder escape(StringBuilder sb, String text, boolean attribute) {
+        int start = 0;
+        for (int i = 0, ii = text.length(); i < ii; ++i) {
+            char c = text.charAt(i);
+            String escape;
+            if (c >= 0x20 && c < 0x7f && c != '<' && c != '>' && c != '&' && c != '"') {
+                continue;
+            } else if (c == '<') {
+                escape = "&lt;";
+            } else if (c == '>') {
+                escape = "&gt;";
+            } else if (c == '&') {
+                escape = "&amp;";
+            } else if (c == '"') {
+                if (!attribute) continue;
+                escape = "&quot;";
+            } else if (c == '\n' || c == '\t') {
+                if (!attribute) continue;
+                escape = null;
+            } else if (c <= 0x9f) {
+                escape = null;
+            } else if (Character.isHighSurrogate(c) && i + 1 < ii && Character.isLowSurrogate(text.charAt(i + 1))) {
+                sb.append(text, start, i).append("&#").append(Character.toCodePoint(c, text.charAt(++i))).append(';');
+                start = i + 1;
+                continue;
+            } else {
+                continue;
+            }
+            sb.append(text, start, i);
+            if (escape != null) {
+                sb.append(escape);
+            } else {
+                sb.append("&#").append((int)c).append(';');
+            }
+            start = i + 1;
+        }
+        return sb.append(text, start, text.length());
+    }
+
     /**
      * Decodes an XML stream. Returns the input stream.
      */
@@ -108,5 +173,17 @@ public class XDBCodec {
         XML.newSAXParser().parse(stream, new XDBHandler(binder));
         return stream;
     }
-}
 
+    /**
+     * Decodes an XML stream in pull mode, through an XMLStreamReader. Returns the input stream.
+     */
+    public static InputStream pull(DataBinder binder, InputStream stream) throws XMLStreamException {
+        XMLStreamReader reader = XML.newXMLStreamReader(stream);
+        try {
+            new XDBHandler(binder).parse(reader);
+        } finally {
+            reader.close();
+        }
+        return stream;
+    }
+}
@@ -6,6 +6,9 @@ import java.util.*;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.xml.sax.*;
 import org.xml.sax.helpers.DefaultHandler;
 
@@ -14,13 +17,15 @@ import org.xillium.data.*;
 
 
 /**
- * A SAX handler to help assemble a DataBinder from a compliant XML document.
+ * A SAX handler to help assemble a DataBinder from a compliant XML document. The handler can also be driven in pull mode from
+ * an XMLStreamReader.
  */
 public class XDBHandler extends DefaultHandler {
     private final StringBuilder _text = new StringBuilder();
     private final List<String> _data = new ArrayList<String>();
     private final DataBinder _binder;
     private String _name;
+    private String _prefix;
     private String[] _heading;
     private int _cindex;
     private int _rindex;
@@ -29,6 +34,30 @@ public class XDBHandler extends DefaultHandler {
         _binder = binder;
     }
 
+    /**
+     * Pulls all events of a compliant XML document from an XMLStreamReader, assembling the DataBinder along the way.
+     *
+     * @param reader an XMLStreamReader positioned at the start of the document
+     * @throws XMLStreamException if the reader fails
+     */
+    public void parse(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                start(reader.getLocalName(), reader.getAttributeCount() > 0 ? reader.getAttributeValue(null, XDBCodec.NAME) : null);
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                end(reader.getLocalName());
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                _text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            }
+        }
+    }
+
     /**
      * Receive notification of the beginning of the document.
      */
@@ -48,36 +77,7 @@ public class XDBHandler extends DefaultHandler {
      */
     @Override
     public void startElement(String uri, String l, String q, Attributes a) {
-        try {
-            XDB.Element element = Enum.valueOf(XDB.Element.class, l.toUpperCase());
-            switch (element) {
-            case M:
-                break;
-
-            case P:
-                _name = a.getValue("name");
-                break;
-
-            case T:
-                _name = a.getValue("name");
-                _rindex = 0;
-                break;
-
-            case H:
-                _data.clear();
-                _heading = null;
-                break;
-
-            case R:
-                _cindex = 0;
-                break;
-
-            case C:
-                break;
-            }
-        } catch (Exception x) {
-            throw new RuntimeException("Failed to recognize element " + q, x);
-        }
+        start(l, a.getLength() > 0 ? a.getValue(XDBCodec.NAME) : null);
     }
 
     /**
@@ -85,41 +85,7 @@ public class XDBHandler extends DefaultHandler {
      */
     @Override
     public void endElement(String uri, String l, String q) {
-        /*
-         * 1. If current element is a String, update its value from the string buffer.
-         * 2. Add the element to parent.
-         */
-        XDB.Element element = Enum.valueOf(XDB.Element.class, l.toUpperCase());
-
-        switch (element) {
-        case M:
-            break;
-
-        case P:
-            _binder.put(_name, _text.toString());
-            break;
-
-        case T:
-            break;
-
-        case H:
-            _heading = _data.toArray(new String[_data.size()]);
-            break;
-
-        case R:
-            ++_rindex;
-            break;
-
-        case C:
-            if (_heading == null) {
-                _data.add(_text.toString());
-            } else {
-                _binder.put(_name + '[' + _rindex + "]." + _heading[_cindex], _text.toString());
-                ++_cindex;
-            }
-            break;
-        }
-        _text.setLength(0);
+        end(l);
     }
 
     /**
@@ -127,16 +93,6 @@ public class XDBHandler extends DefaultHandler {
      */
     @Override
     public void characters (char ch[], int start, int len) {
-        while (len > 0 && Character.isWhitespace(ch[start])) {
-            ++start;
-            --len;
-        }
-        while (len > 0 && Character.isWhitespace(ch[start+len-1])) {
-            --len;
-        }
-        if (_text.length() > 0) {
-            _text.append(' ');
-        }
         _text.append(ch, start, len);
     }
 
@@ -163,4 +119,90 @@ public class XDBHandler extends DefaultHandler {
     public void fatalError (SAXParseException e) throws SAXException {
         throw e;
     }
+
+    private void start(String l, String name) {
+        switch (element(l)) {
+        case 'm':
+            break;
+
+        case 'p':
+            _name = name;
+            break;
+
+        case 't':
+            _name = name;
+            _rindex = 0;
+            break;
+
+        case 'h':
+            _data.clear();
+            _heading = null;
+            break;
+
+        case 'r':
+            _prefix = _name + '[' + _rindex + "].";
+            _cindex = 0;
+            break;
+
+        case 'c':
+            break;
+        }
+        _text.setLength(0);
+    }
+
+    private void end(String l) {
+        switch (element(l)) {
+        case 'm':
+            break;
+
+        case 'p':
+            _binder.put(_name, text());
+            break;
+
+        case 't':
+            break;
+
+        case 'h':
+            _heading = _data.toArray(new String[_data.size()]);
+            break;
+
+        case 'r':
+            ++_rindex;
+            break;
+
+        case 'c':
+            if (_heading == null) {
+                _data.add(text());
+            } else {
+                _binder.put(_prefix + _heading[_cindex], text());
+                ++_cindex;
+            }
+            break;
+        }
+        _text.setLength(0);
+    }
+
+    /*!
+     * Recognizes an element by its single-letter local name, without allocation.
+     */
+    private static char element(String l) {
+        if (l.length() == 1) {
+            char c = (char)(l.charAt(0) | 0x20);
+            switch (c) {
+            case 'm': case 'p': case 't': case 'h': case 'r': case 'c':
+                return c;
+            }
+        }
+        throw new RuntimeException("Failed to recognize element " + l);
+    }
+
+    /*!
+     * Returns the text collected since the last element boundary, with surrounding white space removed.
+     */
+    private String text() {
+        int start = 0, end = _text.length();
+        while (start < end && Character.isWhitespace(_text.charAt(start))) ++start;
+        while (end > start && Character.isWhitespace(_text.charAt(end-1))) --end;
+        return _text.substring(start, end);
+    }
 }
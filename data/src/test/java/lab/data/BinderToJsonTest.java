@@ -54,4 +54,24 @@ public class BinderToJsonTest {
         assert deserialized.tables.size() == 1;
     }
 
+    @Test(groups={"json"})
+    public void testBinderToStreamedJSON() throws Exception {
+        Properties props = new Properties();
+        props.load(getClass().getResourceAsStream("/validation/SubmitPurchaseOrderData.properties"));
+
+        DataBinder binder = new DataBinder().load(props);
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < 1000; ++i) {
+            rows.add(new Object[] { i, "row \"" + i + '"', i % 3 == 0 ? null : new java.math.BigDecimal(i).movePointLeft(2) });
+        }
+        binder.putResultSet("rows", new CachedResultSet(new String[] { "id", "name", "amount" }, rows));
+        binder.putResultSet("empty", new CachedResultSet(new String[] {}, new ArrayList<Object[]>()));
+        binder.put("interface", DataObject.Util.describe(DataObject.Empty.class, "json:"));
+
+        String json = binder.toJSON();
+        for (int threshold: new int[] { 1, 7, 256, 1024*1024 }) {
+            assert json.equals(binder.toJSON(new java.io.StringWriter(), threshold).toString()) : "streamed JSON differs at threshold " + threshold;
+        }
+    }
+
 }
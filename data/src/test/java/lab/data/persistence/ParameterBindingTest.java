@@ -0,0 +1,143 @@
+package lab.data.persistence;
+
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+import org.testng.annotations.*;
+
+import org.xillium.base.beans.Beans;
+import org.xillium.data.DataObject;
+import org.xillium.data.persistence.ParametricStatement;
+
+
+/**
+ * Compiled parameter binding vs. reflective field lookup.
+ */
+public class ParameterBindingTest {
+    private static final int RUNS = 200000;
+
+    public static enum Tier { BRONZE, SILVER, GOLD }
+
+    public static class Base implements DataObject {
+        private String owner = "xillium";
+    }
+
+    public static class Account extends Base {
+        public int id = 42;
+        public long balance = 1234567890123L;
+        public double ratio = 0.25;
+        public String name = "checking";
+        public String memo;
+        public BigDecimal limit = new BigDecimal("1000.50");
+        public Tier tier = Tier.GOLD;
+        public Tier level = Tier.SILVER;
+        public Calendar opened = new GregorianCalendar(2011, 8, 4);
+    }
+
+    private static final String SQL = "UPDATE ACCOUNT SET BALANCE = :balance:BIGINT, RATIO = :ratio:DOUBLE, NAME = :name:VARCHAR, MEMO = :memo?:VARCHAR,"
+                                    + " CREDIT = :limit:DECIMAL, TIER = :tier:VARCHAR, LVL = :level:INTEGER, OPENED = :opened:DATE, OWNER = :owner:VARCHAR,"
+                                    + " NOTE = :missing?:VARCHAR WHERE ID = :id:INTEGER";
+
+    @Test(groups={"binding"})
+    public void testCompiledBinding() throws Exception {
+        ParametricStatement statement = new ParametricStatement().set(SQL);
+        Account account = new Account();
+
+        Map<Integer, Object> compiled = new HashMap<Integer, Object>();
+        statement.executeUpdate(connection(compiled), account);
+
+        Map<Integer, Object> reflective = new HashMap<Integer, Object>();
+        reflectiveLoad(statement.getParameters(), statement(reflective), account);
+
+        System.err.println("compiled: " + compiled);
+        System.err.println("reflective: " + reflective);
+        assert compiled.size() == statement.getParameters().length;
+        assert compiled.equals(reflective) : "compiled binding differs from reflective binding";
+    }
+
+    @Test(groups={"binding", "performance"})
+    public void runPerformance() throws Exception {
+        ParametricStatement statement = new ParametricStatement().set(SQL);
+        ParametricStatement.Param[] params = statement.getParameters();
+        Account account = new Account();
+        Map<Integer, Object> sink = new HashMap<Integer, Object>();
+        Connection conn = connection(sink);
+        PreparedStatement ps = statement(sink);
+
+        for (int i = 0; i < RUNS; ++i) {
+            statement.executeUpdate(conn, account);
+            reflectiveLoad(params, ps, account);
+        }
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < RUNS; ++i) reflectiveLoad(params, ps, account);
+        System.err.println("reflective binding: " + (System.currentTimeMillis() - now));
+
+        now = System.currentTimeMillis();
+        for (int i = 0; i < RUNS; ++i) statement.executeUpdate(conn, account);
+        System.err.println("  compiled binding: " + (System.currentTimeMillis() - now));
+    }
+
+    // the reflective parameter loading previously in ParametricStatement.load()
+    private static void reflectiveLoad(ParametricStatement.Param[] params, PreparedStatement statement, DataObject object) throws SQLException {
+        Class<? extends DataObject> type = object.getClass();
+        for (int i = 0; i < params.length; ++i) {
+            if ((params[i].direction & ParametricStatement.Param.IN) == 0) continue;
+            try {
+                Field field = Beans.getKnownField(type, params[i].name);
+                Object value = field.get(object);
+                if (value != null) {
+                    if (Enum.class.isAssignableFrom(field.getType())) {
+                        if (Types.CHAR == params[i].type || Types.VARCHAR == params[i].type) {
+                            statement.setObject(i+1, value.toString(), params[i].type);
+                        } else {
+                            statement.setObject(i+1, ((Enum<?>)value).ordinal(), params[i].type);
+                        }
+                    } else if (Calendar.class.isAssignableFrom(field.getType())) {
+                        statement.setObject(i+1, new java.sql.Date(((Calendar)value).getTime().getTime()), params[i].type);
+                    } else {
+                        statement.setObject(i+1, value, params[i].type);
+                    }
+                } else {
+                    statement.setNull(i+1, params[i].type);
+                }
+            } catch (NoSuchFieldException x) {
+                statement.setNull(i+1, params[i].type);
+            } catch (Exception x) {
+                throw new SQLException(x.getMessage(), x);
+            }
+        }
+    }
+
+    // a Connection whose prepared statements record the bound parameters
+    private static Connection connection(final Map<Integer, Object> values) {
+        return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{ Connection.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("prepareStatement") ? statement(values) : defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    // a PreparedStatement that records the bound parameters, with null standing for setNull()
+    private static PreparedStatement statement(final Map<Integer, Object> values) {
+        return (PreparedStatement)Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{ PreparedStatement.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().startsWith("set")) {
+                    values.put((Integer)args[0], method.getName().equals("setNull") ? null : args[1]);
+                }
+                return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == int.class) {
+            return 0;
+        } else if (type == boolean.class) {
+            return false;
+        } else {
+            return null;
+        }
+    }
+}
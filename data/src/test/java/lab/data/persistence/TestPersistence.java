@@ -8,6 +8,7 @@ import javax.annotation.Resource;
 import org.springframework.test.context.ContextConfiguration;
 //import org.springframework.test.context.transaction.TransactionConfiguration;
 import org.springframework.test.context.testng.AbstractTransactionalTestNGSpringContextTests;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.testng.annotations.*;
@@ -59,6 +60,15 @@ public class TestPersistence extends AbstractTransactionalTestNGSpringContextTes
         public String lastName;
     }
 
+    public static class Position implements org.xillium.data.DataObject {
+        public long id;
+        public int count;
+        public double ratio;
+        public java.math.BigDecimal amount;
+        public String symbol;
+        public String note = "untouched";
+    }
+
 	@BeforeClass
 	public void startup() {
 System.err.println(applicationContext);
@@ -99,6 +109,151 @@ System.err.println(getClass().getResource("/object-mapped.xml"));
         System.err.println("***testResultSet2Xml: done");
     }
 
+    @Test(groups={"persistence", "object"})
+    public void testCursorResultSet() throws Exception {
+        XMLBeanAssembler assembler = new XMLBeanAssembler(new DefaultObjectFactory());
+        assembler.build(getClass().getResourceAsStream("/object-mapped.xml"));
+        ParametricQuery selectMemberships = (ParametricQuery)StorageConfiguration.getParametricStatement("SelectAllMemberships");
+
+        CachedResultSet cached = selectMemberships.executeSelect(DataSourceUtils.getConnection(dataSource), null, CachedResultSet.BUILDER);
+        java.sql.Connection connection = dataSource.getConnection();
+        CursorResultSet cursor = selectMemberships.executeCursor(connection, null, 2);
+        assert Arrays.equals(cached.columns, cursor.columns);
+        String json = cursor.toJSON(new JSONBuilder()).toString();
+        System.err.println("***testCursorResultSet: " + json);
+        assert cached.toJSON(new JSONBuilder()).toString().equals(json) : "***testCursorResultSet: JSON mismatch";
+        assert connection.isClosed() : "***testCursorResultSet: connection not released";
+        try {
+            cursor.rowIterator();
+            assert false : "***testCursorResultSet: iterated twice";
+        } catch (IllegalStateException x) {
+            // expected
+        }
+    }
+
+    @Test(groups={"persistence", "object"})
+    public void testStatementCache() throws Exception {
+        XMLBeanAssembler assembler = new XMLBeanAssembler(new DefaultObjectFactory());
+        assembler.build(getClass().getResourceAsStream("/object-mapped.xml"));
+        Persistence persistence = new Persistence(dataSource);
+        persistence.getStatementMap().put("SelectAllMemberships", StorageConfiguration.getParametricStatement("SelectAllMemberships"));
+        persistence.setStatementCacheSize(4);
+
+        CachedResultSet first = persistence.executeSelect("SelectAllMemberships", null, CachedResultSet.BUILDER);
+        CachedResultSet second = persistence.executeSelect("SelectAllMemberships", null, CachedResultSet.BUILDER);
+        assert first.toJSON(new JSONBuilder()).toString().equals(second.toJSON(new JSONBuilder()).toString());
+
+        StatementCache.Statistics stats = persistence.getStatementCacheStatistics();
+        System.err.println("***testStatementCache: size = " + stats.getSize() + ", read = " + stats.getRead() + ", hit = " + stats.getHit());
+        assert stats.getSize() == 1 : "***testStatementCache: statement not cached";
+        assert stats.getRead() == 2 && stats.getHit() == 1 : "***testStatementCache: statement not reused";
+
+        // a worker executing the same statement again must not disturb the result set it is processing
+        final Persistence p = persistence;
+        CachedResultSet[] nested = persistence.executeSelect("SelectAllMemberships", null, new ResultSetWorker<CachedResultSet[]>() {
+            public CachedResultSet[] process(java.sql.ResultSet rs) throws Exception {
+                CachedResultSet inner = p.executeSelect("SelectAllMemberships", null, CachedResultSet.BUILDER);
+                return new CachedResultSet[] { CachedResultSet.BUILDER.process(rs), inner };
+            }
+        });
+        assert first.toJSON(new JSONBuilder()).toString().equals(nested[0].toJSON(new JSONBuilder()).toString()) : "***testStatementCache: outer rows lost";
+        assert first.toJSON(new JSONBuilder()).toString().equals(nested[1].toJSON(new JSONBuilder()).toString()) : "***testStatementCache: inner rows lost";
+        assert stats.getSize() == 1 : "***testStatementCache: uncached statement cached";
+    }
+
+    @Test(groups={"persistence", "object"})
+    public void testCompiledRowMapper() throws Exception {
+        ObjectMappedQuery<Position> query = new ObjectMappedQuery<Position>(Position.class).set(
+            "SELECT CAST(7 AS BIGINT) ID, CAST(3 AS INTEGER) COUNT, CAST(0.5 AS DOUBLE) RATIO, CAST(12.25 AS DECIMAL(8,2)) AMOUNT, 'XIL' SYMBOL, CAST(NULL AS VARCHAR(8)) NOTE FROM (VALUES(0))"
+        );
+        Position position = query.getObject(DataSourceUtils.getConnection(dataSource), null);
+        assert position.id == 7 && position.count == 3 && position.ratio == 0.5 : "***testCompiledRowMapper: numeric columns";
+        assert position.amount.compareTo(new java.math.BigDecimal("12.25")) == 0 && position.symbol.equals("XIL") : "***testCompiledRowMapper: object columns";
+        assert position.note.equals("untouched") : "***testCompiledRowMapper: null column assigned";
+
+        // column types changed: falls back to type coercion
+        query.set(
+            "SELECT CAST(8 AS INTEGER) ID, CAST(4 AS BIGINT) COUNT, CAST(0.5 AS DECIMAL(4,2)) RATIO, CAST(13 AS INTEGER) AMOUNT, 'XIL' SYMBOL, 'new' NOTE FROM (VALUES(0))"
+        );
+        position = query.getObject(DataSourceUtils.getConnection(dataSource), null);
+        assert position.id == 8 && position.count == 4 && position.ratio == 0.5 : "***testCompiledRowMapper: coerced numeric columns";
+        assert position.amount.intValue() == 13 && position.note.equals("new") : "***testCompiledRowMapper: coerced object columns";
+    }
+
+    @Test(groups={"persistence", "object"})
+    @Transactional(propagation=Propagation.NOT_SUPPORTED)
+    public void testParallelBatch() throws Exception {
+        Persistence persistence = new Persistence(dataSource);
+        persistence.getStatementMap().put("InsertMembership", new ParametricStatement().set(
+            "INSERT INTO MEMBERSHIP(EMAIL,FIRST_NAME,LAST_NAME) VALUES(:email:VARCHAR, :firstName:VARCHAR, :lastName:VARCHAR)"
+        ));
+        persistence.getStatementMap().put("DeleteMembership", new ParametricStatement().set("DELETE FROM MEMBERSHIP WHERE EMAIL = :email:VARCHAR"));
+
+        List<Membership> memberships = new ArrayList<Membership>();
+        for (int i = 0; i < 100; ++i) {
+            Membership membership = new Membership();
+            membership.email = "bulk" + (i == 57 ? 3 : i) + "@xillium.org";
+            membership.firstName = "Bulk";
+            membership.lastName = String.valueOf(i);
+            memberships.add(membership);
+        }
+
+        BatchReport report = persistence.executeBatch("InsertMembership", memberships, 10, 1, 4);
+        System.err.println("***testParallelBatch: " + report);
+        assert report.getChunkCount() == 10;
+        assert report.getAffectedRowCount() == 90 : "***testParallelBatch: wrong number of rows inserted";
+        assert report.getFailures().size() == 1 : "***testParallelBatch: duplicate key not reported";
+        int from = report.getFailures().get(0).from;
+        assert from == 0 || from == 50 : "***testParallelBatch: wrong chunk reported";
+
+        report = persistence.executeBatch("DeleteMembership", memberships, 10, 3, 1);
+        System.err.println("***testParallelBatch: " + report);
+        assert report.isSuccessful() && report.getAffectedRowCount() == 90 : "***testParallelBatch: wrong number of rows deleted";
+    }
+
+    @Test(groups={"persistence", "object"})
+    public void testColumnarResultSet() throws Exception {
+        String report =
+            "SELECT N ID, CAST(N*1000 AS BIGINT) AMOUNT, CASE WHEN MOD(N, 10) = 0 THEN NULL ELSE N/8.0E0 END PRICE," +
+            " CAST(CASE MOD(N, 3) WHEN 0 THEN 'EAST' WHEN 1 THEN 'WEST' ELSE NULL END AS VARCHAR(8)) REGION," +
+            " CAST('NOTE-' || N AS VARCHAR(16)) NOTE, CAST(N/100.0 AS DECIMAL(8,2)) RATE" +
+            " FROM UNNEST(SEQUENCE_ARRAY(1, 5000, 1)) AS T(N)";
+        java.sql.Connection connection = DataSourceUtils.getConnection(dataSource);
+        CachedResultSet cached = new CachedResultSet(connection.createStatement().executeQuery(report));
+        ColumnarResultSet columnar = new ColumnarResultSet(connection.createStatement().executeQuery(report));
+
+        assert Arrays.equals(cached.columns, columnar.columns) && cached.rows.size() == columnar.size();
+        for (int i = 0; i < columnar.size(); ++i) {
+            assert Arrays.equals(cached.rows.get(i), columnar.rows.get(i)) : "***testColumnarResultSet: row " + i;
+        }
+        assert columnar.getLong(9, 1) == 10000 && columnar.getDouble(9, 2) == 0 && columnar.getValue(9, 2) == null;
+
+        String json = cached.toJSON(new JSONBuilder()).toString();
+        assert columnar.toJSON(new JSONBuilder()).toString().equals(json) : "***testColumnarResultSet: JSON mismatch";
+        StringWriter sink = new StringWriter();
+        columnar.toJSON(new JSONBuilder(sink, 256)).flush();
+        assert sink.toString().equals(json) : "***testColumnarResultSet: streamed JSON mismatch";
+
+        DataBinder a = new DataBinder(), b = new DataBinder();
+        a.putResultSet("report", cached);
+        b.putResultSet("report", columnar);
+        assert org.xillium.data.xml.XDBCodec.encode(new StringWriter(), a).toString().equals(org.xillium.data.xml.XDBCodec.encode(new StringWriter(), b).toString());
+
+        ColumnarResultSet empty = new ColumnarResultSet(connection.createStatement().executeQuery(report + " WHERE N < 0"));
+        assert empty.rows == null && empty.toJSON(new JSONBuilder()).toString().equals(new CachedResultSet(connection.createStatement().executeQuery(report + " WHERE N < 0")).toJSON(new JSONBuilder()).toString());
+
+        for (int i = 0; i < 200; ++i) {
+            cached.toJSON(new JSONBuilder(json.length()));
+            columnar.toJSON(new JSONBuilder(json.length()));
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < 200; ++i) cached.toJSON(new JSONBuilder(json.length()));
+        long elapsed = System.nanoTime() - now;
+        now = System.nanoTime();
+        for (int i = 0; i < 200; ++i) columnar.toJSON(new JSONBuilder(json.length()));
+        System.err.println("***testColumnarResultSet: toJSON row-wise " + elapsed/200000 + " us, columnar " + (System.nanoTime() - now)/200000 + " us");
+    }
+
     @Test(groups={"persistence", "object"})
     public void testDataObjectClassGen() throws Exception {
         XMLBeanAssembler assembler = new XMLBeanAssembler(new DefaultObjectFactory());
@@ -0,0 +1,156 @@
+package lab.data.validation;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import lab.*;
+import lab.data.*;
+import org.xillium.base.beans.*;
+import org.xillium.data.*;
+import org.xillium.data.validation.*;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.testng.annotations.*;
+
+
+/**
+ * Reifier.collect throughput over the validation request types.
+ */
+public class ReifierPerformanceTest {
+    private static final int RUNS = 100000, THREADS = 32, LOOKUPS = 1000000;
+
+    private Reifier _reifier;
+    private DataBinder _purchase, _transfer;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        _reifier = new XMLBeanAssembler(new DefaultObjectFactory()).build(getClass().getResourceAsStream("/validation/reifier.xml"), Reifier.class);
+
+        _purchase = new DataBinder();
+        DataUtil.loadFromProperties(_purchase, getClass().getResourceAsStream("/validation/SubmitPurchaseOrderData.properties"));
+
+        _transfer = new DataBinder();
+        _transfer.put("userName", "brian@abc.com");
+        _transfer.put("sourceAccount", "001-223344");
+        _transfer.put("targetAccount", "001-556677");
+        _transfer.put("amount", "123.45");
+        _transfer.put("flags", "20");
+        _transfer.put("operation", "debit");
+        _transfer.put("payment.cardNumber", "1234567890123456");
+        _transfer.put("payment.expirationDate", "2012-03-01");
+        _transfer.put("payment.billingAddress.streetAddress1", "5410 LBJ Freeway");
+        _transfer.put("payment.billingAddress.city", "Tampa");
+        _transfer.put("payment.billingAddress.state", "FL");
+        _transfer.put("payment.billingAddress.zipCode", "33334");
+        _transfer.put("shippingAddress.streetAddress1", "6000 New Haven Ave.");
+        _transfer.put("shippingAddress.city", "Melbourne");
+        _transfer.put("shippingAddress.state", "FL");
+        _transfer.put("shippingAddress.zipCode", "32904");
+    }
+
+    @Test(groups={"validation", "performance"})
+    public void runCollection() throws Exception {
+        SubmitPurchaseOrderData purchase = _reifier.collect(new SubmitPurchaseOrderData(), _purchase);
+        assert purchase.products.length == 2 && purchase.products[0].coupons.length == 1 && purchase.aliases.length == 2;
+        assert "Melbourne".equals(purchase.shippingAddress.city) && "Suite 1103".equals(purchase.payment.billingAddress.streetAddress2);
+
+        BalanceTransferRequestData transfer = _reifier.collect(new BalanceTransferRequestData(), _transfer);
+        assert transfer.amount == 123.45 && transfer.flags == 20 && "Tampa".equals(transfer.payment.billingAddress.city);
+
+        // keep trace logging out of the measurement
+        Level level = LogManager.getRootLogger().getLevel();
+        Configurator.setRootLevel(Level.WARN);
+        try {
+            measure();
+        } finally {
+            Configurator.setRootLevel(level);
+        }
+    }
+
+    private void measure() throws Exception {
+        long sum = 0;
+        for (int i = 0; i < RUNS; ++i) {
+            sum += _reifier.collect(new SubmitPurchaseOrderData(), _purchase).products.length;
+            sum += _reifier.collect(new BalanceTransferRequestData(), _transfer).flags;
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) sum += _reifier.collect(new SubmitPurchaseOrderData(), _purchase).products.length;
+        System.err.println("SubmitPurchaseOrderData: " + (System.nanoTime() - now)/RUNS + " ns/collect");
+
+        now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) sum += _reifier.collect(new BalanceTransferRequestData(), _transfer).flags;
+        System.err.println("BalanceTransferRequestData: " + (System.nanoTime() - now)/RUNS + " ns/collect");
+
+        assert sum > 0;
+    }
+
+    @Test(groups={"validation", "performance"})
+    public void runContention() throws Exception {
+        _reifier.collect(new SubmitPurchaseOrderData(), _purchase);
+        _reifier.collect(new BalanceTransferRequestData(), _transfer);
+        final Class<?>[] types = { SubmitPurchaseOrderData.class, BalanceTransferRequestData.class, Product.class, Coupon.class };
+
+        // the validator cache as it was: one global monitor guarding a map of maps
+        final Map<Class<?>, Map<String, Validator>> locked = new HashMap<Class<?>, Map<String, Validator>>();
+        for (Class<?> type: types) {
+            Map<String, Validator> validators = new HashMap<String, Validator>();
+            for (java.lang.reflect.Field field: type.getFields()) validators.put(field.getName(), Reifier.find(type, field.getName()));
+            locked.put(type, validators);
+        }
+
+        Level level = LogManager.getRootLogger().getLevel();
+        Configurator.setRootLevel(Level.WARN);
+        try {
+            contend("synchronized lookup", LOOKUPS, new Callable<Object>() {
+                int i;
+                public Object call() {
+                    Class<?> type = types[++i & 3];
+                    synchronized (locked) {
+                        return locked.get(type).get("description");
+                    }
+                }
+            });
+            contend("  lock-free lookup", LOOKUPS, new Callable<Object>() {
+                int i;
+                public Object call() {
+                    return Reifier.find(types[++i & 3], "description");
+                }
+            });
+            contend("           collect", RUNS/THREADS, new Callable<Object>() {
+                int i;
+                public Object call() throws Exception {
+                    return (++i & 1) == 0 ? _reifier.collect(new SubmitPurchaseOrderData(), _purchase) : _reifier.collect(new BalanceTransferRequestData(), _transfer);
+                }
+            });
+        } finally {
+            Configurator.setRootLevel(level);
+        }
+    }
+
+    private static void contend(String name, final int runs, final Callable<Object> task) throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS + 1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; ++t) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        barrier.await();
+                        for (int i = 0; i < runs; ++i) task.call();
+                    } catch (Throwable x) {
+                        failure.set(x);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        barrier.await();
+        long now = System.nanoTime();
+        for (Thread thread: threads) thread.join();
+        long elapsed = System.nanoTime() - now;
+        assert failure.get() == null : failure.get();
+        System.err.println(name + " with " + THREADS + " threads: " + elapsed/1000000 + " ms, " + elapsed/((long)runs*THREADS) + " ns/op");
+    }
+}
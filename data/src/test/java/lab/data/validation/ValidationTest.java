@@ -71,4 +71,28 @@ public class ValidationTest {
         assert expected.price.equals(special.price);
         assert expected.multiple.equals(special.multiple);
     }
+
+    public static class Priced implements DataObject {
+        @range(max="2000") public java.math.BigInteger price;
+    }
+
+    public static class Relaxed {
+        @range(max="3000") public java.math.BigInteger price;
+    }
+
+    @Test(groups={"validation"})
+    public void testValidatorOverride() throws Exception {
+        DataBinder binder = new DataBinder();
+        binder.put("price", "2015");
+
+        Reifier reifier = new Reifier();
+        try {
+            reifier.collect(new Priced(), binder);
+            assert false : "range not enforced";
+        } catch (DataValidationException x) {}
+
+        // an override must be seen by the collection plan already built for the class
+        Reifier.cache(Priced.class, "price", new Validator("price", java.math.BigInteger.class, Relaxed.class.getField("price")));
+        assert reifier.collect(new Priced(), binder).price.intValue() == 2015 : "override not seen";
+    }
 }
@@ -0,0 +1,325 @@
+package lab.data.validation;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.*;
+import org.xillium.base.util.ValueOf;
+import org.xillium.data.validation.*;
+import org.testng.annotations.*;
+
+
+/**
+ * Validator.postValidate over indexed values and ranges vs. the linear scans it replaced.
+ */
+public class ValidatorTest {
+    private static final int RUNS = 1000000;
+
+    public static enum Options {
+        A,
+        B,
+        C
+    }
+
+    public static class Constrained {
+        @values({
+            "0", "20", "40", "60", "80", "100", "120", "140", "160", "180", "200", "220",
+            "240", "260", "280", "300", "320", "340", "360", "380", "400", "420", "440", "460",
+            "480", "500", "520", "540", "560", "580", "600", "620", "640", "660", "680", "700",
+            "720", "740", "760", "780", "800", "820", "840", "860", "880", "900", "920", "940",
+            "960", "980", "1000", "1020", "1040", "1060", "1080", "1100", "1120", "1140", "1160", "1180",
+            "1200", "1220", "1240", "1260", "1280", "1300", "1320", "1340", "1360", "1380", "1400", "1420",
+            "1440", "1460", "1480", "1500", "1520", "1540", "1560", "1580", "1600", "1620", "1640", "1660",
+            "1680", "1700", "1720", "1740", "1760", "1780", "1800", "1820", "1840", "1860", "1880", "1900",
+            "1920", "1940", "1960", "1980", "2000", "2020", "2040", "2060", "2080", "2100", "2120", "2140",
+            "2160", "2180", "2200", "2220", "2240", "2260", "2280", "2300", "2320", "2340", "2360", "2380",
+            "2400", "2420", "2440", "2460", "2480", "2500", "2520", "2540", "2560", "2580", "2600", "2620",
+            "2640", "2660", "2680", "2700", "2720", "2740", "2760", "2780", "2800", "2820", "2840", "2860",
+            "2880", "2900", "2920", "2940", "2960", "2980", "3000", "3020", "3040", "3060", "3080", "3100",
+            "3120", "3140", "3160", "3180", "3200", "3220", "3240", "3260", "3280", "3300", "3320", "3340",
+            "3360", "3380", "3400", "3420", "3440", "3460", "3480", "3500", "3520", "3540", "3560", "3580",
+            "3600", "3620", "3640", "3660", "3680", "3700", "3720", "3740", "3760", "3780", "3800", "3820",
+            "3840", "3860", "3880", "3900", "3920", "3940", "3960", "3980"
+        })
+        public Integer code;
+
+        @values({
+            "C001", "C002", "C003", "C004", "C005", "C006", "C007", "C008", "C009", "C010", "C011", "C012",
+            "C013", "C014", "C015", "C016", "C017", "C018", "C019", "C020", "C021", "C022", "C023", "C024",
+            "C025", "C026", "C027", "C028", "C029", "C030", "C031", "C032", "C033", "C034", "C035", "C036",
+            "C037", "C038", "C039", "C040", "C041", "C042", "C043", "C044", "C045", "C046", "C047", "C048",
+            "C049", "C050", "C051", "C052", "C053", "C054", "C055", "C056", "C057", "C058", "C059", "C060",
+            "C061", "C062", "C063", "C064", "C065", "C066", "C067", "C068", "C069", "C070", "C071", "C072",
+            "C073", "C074", "C075", "C076", "C077", "C078", "C079", "C080", "C081", "C082", "C083", "C084",
+            "C085", "C086", "C087", "C088", "C089", "C090", "C091", "C092", "C093", "C094", "C095", "C096",
+            "C097", "C098", "C099", "C100", "C101", "C102", "C103", "C104", "C105", "C106", "C107", "C108",
+            "C109", "C110", "C111", "C112", "C113", "C114", "C115", "C116", "C117", "C118", "C119", "C120",
+            "C121", "C122", "C123", "C124", "C125", "C126", "C127", "C128", "C129", "C130", "C131", "C132",
+            "C133", "C134", "C135", "C136", "C137", "C138", "C139", "C140", "C141", "C142", "C143", "C144",
+            "C145", "C146", "C147", "C148", "C149", "C150", "C151", "C152", "C153", "C154", "C155", "C156",
+            "C157", "C158", "C159", "C160", "C161", "C162", "C163", "C164", "C165", "C166", "C167", "C168",
+            "C169", "C170", "C171", "C172", "C173", "C174", "C175", "C176", "C177", "C178", "C179", "C180",
+            "C181", "C182", "C183", "C184", "C185", "C186", "C187", "C188", "C189", "C190", "C191", "C192",
+            "C193", "C194", "C195", "C196", "C197", "C198", "C199", "C200", "C201", "C202", "C203", "C204",
+            "C205", "C206", "C207", "C208", "C209", "C210", "C211", "C212", "C213", "C214", "C215", "C216",
+            "C217", "C218", "C219", "C220", "C221", "C222", "C223", "C224", "C225", "C226", "C227", "C228",
+            "C229", "C230", "C231", "C232", "C233", "C234", "C235", "C236", "C237", "C238", "C239", "C240",
+            "C241", "C242", "C243", "C244", "C245", "C246", "C247", "C248", "C249", "C250", "C251", "C252",
+            "C253", "C254", "C255", "C256", "C257", "C258", "C259", "C260", "C261", "C262", "C263", "C264",
+            "C265", "C266", "C267", "C268", "C269", "C270", "C271", "C272", "C273", "C274", "C275", "C276",
+            "C277", "C278", "C279", "C280", "C281", "C282", "C283", "C284", "C285", "C286", "C287", "C288",
+            "C289", "C290", "C291", "C292", "C293", "C294", "C295", "C296", "C297", "C298", "C299", "C300"
+        })
+        public String tag;
+
+        @values({"A", "C"})
+        public Options option;
+
+        @values({"10000000000", "-5", "7"})
+        public Long big;
+
+        @ranges({
+        @range(min="-228", max="-227", inclusive=false),
+        @range(min="785", max="815", inclusive=false),
+        @range(min="951", max="967", inclusive=false),
+        @range(max="-900"),
+        @range(min="-746", max="-721"),
+        @range(min="627", max="706", inclusive=false),
+        @range(min="881", max="898", inclusive=false),
+        @range(min="900"),
+        @range(min="707", max="719"),
+        @range(min="-271", max="-249", inclusive=false),
+        @range(min="-671", max="-613", inclusive=false),
+        @range(min="-174", max="-166"),
+        @range(min="-740", max="-735"),
+        @range(min="-842", max="-768", inclusive=false),
+        @range(min="-132", max="-61"),
+        @range(min="647", max="708"),
+        @range(min="679", max="742", inclusive=false),
+        @range(min="-903", max="-851", inclusive=false),
+        @range(min="979", max="979"),
+        @range(min="-551", max="-512"),
+        @range(min="940", max="942", inclusive=false),
+        @range(min="-521", max="-498"),
+        @range(min="547", max="554"),
+        @range(min="810", max="857", inclusive=false),
+        @range(min="292", max="361"),
+        @range(min="-244", max="-221"),
+        @range(min="-64", max="-21"),
+        @range(min="-230", max="-198"),
+        @range(min="-774", max="-678", inclusive=false),
+        @range(min="-349", max="-346"),
+        @range(min="159", max="237"),
+        @range(min="171", max="171"),
+        @range(min="-470", max="-456"),
+        @range(min="-468", max="-464", inclusive=false),
+        @range(min="662", max="663", inclusive=false),
+        @range(min="924", max="943", inclusive=false),
+        @range(min="-793", max="-751"),
+        @range(min="435", max="454"),
+        @range(min="-741", max="-736"),
+        @range(min="-810", max="-738", inclusive=false)
+        })
+        public Integer level;
+
+        @ranges({
+        @range(min="404.1", max="412.2"),
+        @range(min="-219.4", max="-219.3"),
+        @range(min="-474.3", max="-473.3"),
+        @range(max="-450.0"),
+        @range(min="-299.0", max="-298.9"),
+        @range(min="-25.9", max="-21.3", inclusive=false),
+        @range(min="-51.4", max="-51.2", inclusive=false),
+        @range(min="450.0", inclusive=false),
+        @range(min="-30.2", max="-30.0", inclusive=false),
+        @range(min="281.3", max="281.6"),
+        @range(min="89.3", max="95.7", inclusive=false),
+        @range(min="233.6", max="235.5"),
+        @range(min="-246.5", max="-243.9", inclusive=false),
+        @range(min="-414.7", max="-413.5"),
+        @range(min="454.6", max="457.9", inclusive=false),
+        @range(min="-272.2", max="-271.2"),
+        @range(min="14.1", max="17.5"),
+        @range(min="-425.0", max="-424.5"),
+        @range(min="-325.1", max="-323.8"),
+        @range(min="476.4", max="476.4"),
+        @range(min="318.7", max="318.8"),
+        @range(min="-172.0", max="-171.3"),
+        @range(min="146.7", max="154.6"),
+        @range(min="-234.5", max="-230.1", inclusive=false)
+        })
+        public BigDecimal amount;
+
+        @values({"1", "2"}) @range(min="100", max="200", inclusive=false)
+        public Integer mixed;
+
+        @pattern("[A-Z]{3}-[0-9]+")
+        public String reference;
+    }
+
+    @Test(groups={"validation"})
+    public void testPostValidate() throws Exception {
+        Random random = new Random(25);
+        for (Field field: Constrained.class.getFields()) {
+            if (field.getAnnotation(pattern.class) != null) continue;
+            Validator validator = new Validator(field.getName(), field.getType(), field);
+            List<String> texts = new ArrayList<String>();
+            ranges s = field.getAnnotation(ranges.class);
+            range r = field.getAnnotation(range.class);
+            for (range b: s != null ? s.value() : r != null ? new range[] { r } : new range[0]) {
+                texts.add(b.min());
+                texts.add(b.max());
+            }
+            values v = field.getAnnotation(values.class);
+            if (v != null) texts.addAll(Arrays.asList(v.value()));
+            for (int i = 0; i < 2000; ++i) {
+                if (field.getType() == Integer.class) {
+                    texts.add(String.valueOf(random.nextInt(4400) - 1200));
+                } else if (field.getType() == Long.class) {
+                    texts.add(String.valueOf(random.nextInt(20) - 10));
+                } else if (field.getType() == BigDecimal.class) {
+                    texts.add(BigDecimal.valueOf(random.nextInt(12000) - 6000, 1).toString());
+                } else if (field.getType() == String.class) {
+                    texts.add("C" + (random.nextInt(1100) + 1));
+                } else {
+                    texts.add(Options.values()[random.nextInt(3)].toString());
+                }
+            }
+
+            ValueOf valueOf = new ValueOf(field.getType());
+            Legacy legacy = new Legacy(field);
+            int accepted = 0;
+            for (String text: texts) {
+                if (text.length() == 0) continue;
+                Object value = valueOf.invoke(text);
+                boolean actual = true;
+                try {
+                    validator.postValidate(value);
+                } catch (DataValidationException x) {
+                    actual = false;
+                }
+                assert actual == legacy.accepts(value) : field.getName() + " <- " + text + ": " + actual;
+                if (actual) ++accepted;
+            }
+            assert accepted > 0 && accepted < texts.size() : field.getName() + ": " + accepted + "/" + texts.size();
+        }
+    }
+
+    @Test(groups={"validation"})
+    public void testPattern() throws Exception {
+        final Validator validator = new Validator("reference", String.class, Constrained.class.getField("reference"));
+        Thread[] threads = new Thread[4];
+        final boolean[] failed = new boolean[1];
+        for (int t = 0; t < threads.length; ++t) {
+            final int n = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 10000; ++i) {
+                        try {
+                            validator.preValidate("ABC-" + n + i);
+                        } catch (DataValidationException x) {
+                            failed[0] = true;
+                        }
+                        try {
+                            validator.preValidate("ABC" + n + i);
+                            failed[0] = true;
+                        } catch (DataValidationException x) {}
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread: threads) thread.join();
+        assert !failed[0];
+    }
+
+    @Test(groups={"validation", "performance"})
+    public void runPostValidate() throws Exception {
+        for (String name: new String[] { "code", "tag", "level", "amount" }) {
+            Field field = Constrained.class.getField(name);
+            Validator validator = new Validator(name, field.getType(), field);
+            Legacy legacy = new Legacy(field);
+            // accepted values only, so that both checks run to completion without exceptions
+            Object[] probes = new Object[1024];
+            for (int i = 0, n = 0; n < probes.length; ++i) {
+                Object probe;
+                switch (name) {
+                case "code": probe = (i * 20) % 4000; break;
+                case "tag": probe = "C" + (i % 1000); break;
+                case "level": probe = (i * 7) % 2000 - 1000; break;
+                default: probe = BigDecimal.valueOf((i * 37) % 10000 - 5000, 1); break;
+                }
+                if (legacy.accepts(probe)) probes[n++] = probe;
+            }
+
+            long count = 0;
+            for (int r = 0; r < 2; ++r) {
+                long now = System.nanoTime();
+                for (int i = 0; i < RUNS; ++i) if (legacy.accepts(probes[i & 1023])) ++count;
+                if (r > 0) System.err.println(String.format("%6s:   linear scan: %4d ns/check", name, (System.nanoTime() - now)/RUNS));
+
+                now = System.nanoTime();
+                for (int i = 0; i < RUNS; ++i) {
+                    try {
+                        validator.postValidate(probes[i & 1023]);
+                        ++count;
+                    } catch (DataValidationException x) {}
+                }
+                if (r > 0) System.err.println(String.format("%6s: indexed check: %4d ns/check", name, (System.nanoTime() - now)/RUNS));
+            }
+            assert count == 4L*RUNS;
+        }
+    }
+
+    // Validator.postValidate as it was, scanning all values and ranges
+    private static class Legacy {
+        final Object[] values;
+        final Comparable<?>[] mins, maxes;
+        final boolean[] inclusive;
+
+        Legacy(Field field) {
+            ValueOf valueOf = new ValueOf(field.getType());
+            values v = field.getAnnotation(values.class);
+            if (v != null) {
+                values = new Object[v.value().length];
+                for (int i = 0; i < values.length; ++i) values[i] = valueOf.invoke(v.value()[i]);
+            } else {
+                values = null;
+            }
+            ranges s = field.getAnnotation(ranges.class);
+            range r = field.getAnnotation(range.class);
+            range[] bounds = s != null ? s.value() : r != null ? new range[] { r } : null;
+            if (bounds != null) {
+                mins = new Comparable<?>[bounds.length];
+                maxes = new Comparable<?>[bounds.length];
+                inclusive = new boolean[bounds.length];
+                for (int i = 0; i < bounds.length; ++i) {
+                    mins[i] = (Comparable<?>)valueOf.invoke(bounds[i].min());
+                    maxes[i] = (Comparable<?>)valueOf.invoke(bounds[i].max());
+                    inclusive[i] = bounds[i].inclusive();
+                }
+            } else {
+                mins = maxes = null;
+                inclusive = null;
+            }
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        boolean accepts(Object object) {
+            if (values == null && mins == null) return true;
+
+            if (values != null) for (Object value: values) {
+                if (value.equals(object)) return true;
+            }
+
+            if (mins != null) for (int i = 0; i < mins.length; ++i) {
+                Comparable min = mins[i], max = maxes[i], o = (Comparable)object;
+                if (inclusive[i]) {
+                    if ((min == null || min.compareTo(o) <= 0) && (max == null || o.compareTo(max) <= 0)) return true;
+                } else {
+                    if ((min == null || min.compareTo(o) < 0) && (max == null || o.compareTo(max) < 0)) return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package lab.data.xml;
+
+import java.io.*;
+import java.util.*;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xillium.base.beans.Strings;
+import org.xillium.base.util.XML;
+import org.xillium.data.*;
+import org.xillium.data.xml.*;
+import org.testng.annotations.*;
+
+
+/**
+ * XDBCodec's streaming encoder and decoders vs. the DOM encoder and SAX handler they replaced.
+ */
+public class XDBCodecTest {
+    private static final int ROWS = 5000, RUNS = 20;
+
+    private static DataBinder binder(int size) {
+        DataBinder binder = new DataBinder();
+        binder.put("plain", "value");
+        binder.put("empty", "");
+        binder.put("markup", "<a href=\"x\">&amp; 'quoted' > ]]></a>");
+        binder.put("white\tspace", "line 1\nline 2\r\n\ttabbed");
+        binder.put("unicode \"name\" & <more>", "café 中文 😀  ");
+        binder.put("#hidden#", "not encoded");
+        binder.put("controls\u0001\r\n", "\u0001\u0008\u001f\u007f\u0085\u009f\u00a0\u2028\u2029\ufffd");
+        binder.putResultSet("empty", new CachedResultSet(new String[] { "a", "b" }, null));
+        binder.putResultSet("none", new CachedResultSet(new String[0], new ArrayList<Object[]>()));
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < size; ++i) {
+            rows.add(new Object[] { i, "name <" + i + "> & co", i % 3 == 0 ? null : i * 1.5, i % 5 == 0 ? "" : "x\ny" });
+        }
+        binder.putResultSet("table", new CachedResultSet(new String[] { "id", "name", "amount", "note" }, rows));
+        return binder;
+    }
+
+    // without the control characters that XML 1.0 does not allow
+    private static DataBinder wellFormed(int size) {
+        DataBinder binder = binder(size);
+        binder.remove("controls\u0001\r\n");
+        return binder;
+    }
+
+    @Test(groups={"xml"})
+    public void testEquivalence() throws Exception {
+        for (DataBinder binder: new DataBinder[] { new DataBinder(), binder(20) }) {
+            String expected = legacy(new StringWriter(), binder).toString();
+            String actual = XDBCodec.encode(new StringWriter(), binder).toString();
+            assert expected.equals(actual) : "\n" + expected + "\n!=\n" + actual;
+        }
+
+        // round trip
+        DataBinder decoded = new DataBinder();
+        XDBCodec.decode(decoded, new ByteArrayInputStream(XDBCodec.encode(new StringWriter(), wellFormed(20)).toString().getBytes("UTF-8")));
+        assert decoded.get("plain").equals("value") && decoded.get("table[19].id").equals("19") : decoded;
+    }
+
+    @Test(groups={"xml"})
+    public void testDecoding() throws Exception {
+        DataBinder binder = wellFormed(20);
+        byte[] xml = XDBCodec.encode(new StringWriter(), binder).toString().getBytes("UTF-8");
+
+        DataBinder pushed = new DataBinder(), pulled = new DataBinder();
+        XDBCodec.decode(pushed, new ByteArrayInputStream(xml));
+        XDBCodec.pull(pulled, new ByteArrayInputStream(xml));
+        assert pushed.equals(pulled) : pushed + "\n!=\n" + pulled;
+        assert pulled.get("markup").equals(binder.get("markup")) && pulled.get("unicode \"name\" & <more>").equals(binder.get("unicode \"name\" & <more>").trim());
+        assert pulled.get("table[19].name").equals("name <19> & co") && pulled.get("table[19].note").equals("x\ny");
+        assert pulled.get("table[0].amount").equals("") && pulled.get("table[20].id") == null;
+
+        try {
+            XDBCodec.pull(new DataBinder(), new ByteArrayInputStream("<xdb:m xmlns:xdb=\"x\"><q/></xdb:m>".getBytes("UTF-8")));
+            assert false;
+        } catch (RuntimeException x) {
+            assert x.getMessage().contains("q");
+        }
+    }
+
+    @Test(groups={"xml"})
+    public void testLazyRows() throws Exception {
+        final int[] materialized = new int[1];
+        DataBinder binder = new DataBinder();
+        binder.putResultSet("lazy", new CachedResultSet(new String[] { "n" }, new AbstractList<Object[]>() {
+            public Object[] get(int index) {
+                ++materialized[0];
+                return new Object[] { index };
+            }
+            public int size() {
+                return 3;
+            }
+        }));
+        String xml = XDBCodec.encode(new StringWriter(), binder).toString();
+        assert xml.endsWith("<t name=\"lazy\"><h><c>n</c></h><r><c>0</c></r><r><c>1</c></r><r><c>2</c></r></t></xdb:m>") : xml;
+        assert materialized[0] == 3;
+    }
+
+    @Test(groups={"xml", "performance"})
+    public void runEncoding() throws Exception {
+        DataBinder binder = binder(ROWS);
+        long length = 0;
+        for (int i = 0; i < 3; ++i) {
+            length += legacy(new StringWriter(), binder).toString().length() + XDBCodec.encode(new StringWriter(), binder).toString().length();
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) length += legacy(new StringWriter(), binder).toString().length();
+        System.err.println("DOM encoder: " + (System.nanoTime() - now)/RUNS/1000 + " us/binder");
+
+        now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) length += XDBCodec.encode(new StringWriter(), binder).toString().length();
+        System.err.println("streaming encoder: " + (System.nanoTime() - now)/RUNS/1000 + " us/binder");
+
+        assert length > 0;
+    }
+
+    @Test(groups={"xml", "performance"})
+    public void runDecoding() throws Exception {
+        byte[] xml = XDBCodec.encode(new StringWriter(), wellFormed(ROWS)).toString().getBytes("UTF-8");
+        long size = 0;
+        for (int i = 0; i < 3; ++i) {
+            DataBinder binder = new DataBinder();
+            XML.newSAXParser().parse(new ByteArrayInputStream(xml), new LegacyHandler(binder));
+            XDBCodec.decode(binder, new ByteArrayInputStream(xml));
+            XDBCodec.pull(binder, new ByteArrayInputStream(xml));
+            size += binder.size();
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) {
+            DataBinder binder = new DataBinder();
+            XML.newSAXParser().parse(new ByteArrayInputStream(xml), new LegacyHandler(binder));
+            size += binder.size();
+        }
+        System.err.println("Enum.valueOf handler: " + (System.nanoTime() - now)/RUNS/1000 + " us/binder");
+
+        now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) size += XDBCodec.decode(new DataBinder(), new ByteArrayInputStream(xml)).available();
+        System.err.println("    SAX XDBHandler: " + (System.nanoTime() - now)/RUNS/1000 + " us/binder");
+
+        now = System.nanoTime();
+        for (int i = 0; i < RUNS; ++i) size += XDBCodec.pull(new DataBinder(), new ByteArrayInputStream(xml)).available();
+        System.err.println("   StAX XDBHandler: " + (System.nanoTime() - now)/RUNS/1000 + " us/binder");
+
+        assert size > 0;
+    }
+
+    // XDBHandler as it was, recognizing elements with Enum.valueOf
+    private static class LegacyHandler extends DefaultHandler {
+        private final StringBuilder _text = new StringBuilder();
+        private final List<String> _data = new ArrayList<String>();
+        private final DataBinder _binder;
+        private String _name;
+        private String[] _heading;
+        private int _cindex, _rindex;
+
+        LegacyHandler(DataBinder binder) {
+            _binder = binder;
+        }
+
+        @Override
+        public void startElement(String uri, String l, String q, Attributes a) {
+            switch (Enum.valueOf(XDB.Element.class, l.toUpperCase())) {
+            case P: _name = a.getValue("name"); break;
+            case T: _name = a.getValue("name"); _rindex = 0; break;
+            case H: _data.clear(); _heading = null; break;
+            case R: _cindex = 0; break;
+            default: break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String l, String q) {
+            switch (Enum.valueOf(XDB.Element.class, l.toUpperCase())) {
+            case P: _binder.put(_name, _text.toString()); break;
+            case H: _heading = _data.toArray(new String[_data.size()]); break;
+            case R: ++_rindex; break;
+            case C:
+                if (_heading == null) {
+                    _data.add(_text.toString());
+                } else {
+                    _binder.put(_name + '[' + _rindex + "]." + _heading[_cindex], _text.toString());
+                    ++_cindex;
+                }
+                break;
+            default: break;
+            }
+            _text.setLength(0);
+        }
+
+        @Override
+        public void characters(char ch[], int start, int len) {
+            while (len > 0 && Character.isWhitespace(ch[start])) { ++start; --len; }
+            while (len > 0 && Character.isWhitespace(ch[start+len-1])) --len;
+            if (_text.length() > 0) _text.append(' ');
+            _text.append(ch, start, len);
+        }
+    }
+
+    // XDBCodec.encode as it was, building a DOM and serializing it with a Transformer
+    private static Writer legacy(Writer sink, DataBinder binder) throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element root = doc.createElementNS(XDBCodec.NAMESPACE, XDBCodec.XDB_NS + XDBCodec.M);
+        for (String key: binder.keySet()) {
+            if (key.charAt(0) == '#' && key.charAt(key.length()-1) == '#') continue;
+            String val = binder.get(key);
+            Element param = doc.createElement(XDBCodec.P);
+            param.setAttribute(XDBCodec.NAME, key);
+            param.appendChild(doc.createTextNode(val != null ? val : ""));
+            root.appendChild(param);
+        }
+        for (String key: binder.getResultSetNames()) {
+            Element table = doc.createElement(XDBCodec.T);
+            table.setAttribute(XDBCodec.NAME, key);
+            CachedResultSet rset = binder.getResultSet(key);
+            Element row = doc.createElement(XDBCodec.H);
+            for (int i = 0; i < rset.columns.length; ++i) {
+                Element col = doc.createElement(XDBCodec.C);
+                col.appendChild(doc.createTextNode(rset.columns[i]));
+                row.appendChild(col);
+            }
+            table.appendChild(row);
+            for (Iterator<Object[]> rows = rset.rowIterator(); rows.hasNext();) {
+                Object[] data = rows.next();
+                row = doc.createElement(XDBCodec.R);
+                for (int i = 0; i < rset.columns.length; ++i) {
+                    Element col = doc.createElement(XDBCodec.C);
+                    col.appendChild(doc.createTextNode(Strings.toString(data[i])));
+                    row.appendChild(col);
+                }
+                table.appendChild(row);
+            }
+            root.appendChild(table);
+        }
+        doc.appendChild(root);
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc), new StreamResult(sink));
+        sink.flush();
+        return sink;
+    }
+}
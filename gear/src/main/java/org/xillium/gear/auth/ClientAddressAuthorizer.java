@@ -2,7 +2,6 @@ package org.xillium.gear.auth;
 
 import java.util.*;
 import java.util.regex.*;
-import java.net.InetAddress;
 import org.xillium.base.beans.Strings;
 import org.xillium.data.*;
 import org.xillium.data.persistence.Persistence;
@@ -18,9 +17,12 @@ import org.xillium.core.management.ManagedComponent;
  * <li> "172.21.*.*",
  * <li> "234.66.*.10",
  * <li> "0:0:0:0:0:0:0:1"
+ * <li> "10.8.0.0/13", "2001:db8::/32" (CIDR notation)
  * </ul>
- * <p>Zero-compression in IPv6 addresses is not permitted in address patterns. This restriction does not apply to
- * client addresses to be authorized.</p>
+ * <p>Zero-compression in IPv6 addresses is not permitted in wildcard address patterns. This restriction does not apply to
+ * CIDR notation or to client addresses to be authorized.</p>
+ * <p>All patterns are compiled into a radix trie per address family, so an address is matched in time proportional to its
+ * length regardless of the number of patterns. Client addresses must be numeric, and are parsed without name resolution.</p>
  * <p>You can also use the {@code allowingPrivate} property to authorize all private IP addresses, as shown
  * in this Spring bean definition.</p>
  * <pre>{@code
@@ -40,8 +42,20 @@ public class ClientAddressAuthorizer extends ManagedComponent implements Authori
         Pattern.CASE_INSENSITIVE
     );
 
-    private final List<short[]> _ipv4patterns = new ArrayList<short[]>();
-    private final List<short[]> _ipv6patterns = new ArrayList<short[]>();
+    private static final Pattern CIDR_PATTERN = Pattern.compile("([0-9a-f.:]+)/([0-9]{1,3})", Pattern.CASE_INSENSITIVE);
+    private static final AddressTrie PRIVATE_IPv4 = new AddressTrie(), PRIVATE_IPv6 = new AddressTrie();
+    static {
+        // loopback, link-local, and site-local addresses
+        PRIVATE_IPv4.addAll(Arrays.asList(
+            range(parse("127.0.0.0"), 8), range(parse("169.254.0.0"), 16), range(parse("10.0.0.0"), 8), range(parse("172.16.0.0"), 12), range(parse("192.168.0.0"), 16)
+        ));
+        PRIVATE_IPv6.addAll(Arrays.asList(
+            range(parse("::1"), 128), range(parse("fe80::"), 10), range(parse("fec0::"), 10)
+        ));
+    }
+
+    private final AddressTrie _ipv4patterns = new AddressTrie();
+    private final AddressTrie _ipv6patterns = new AddressTrie();
     private boolean _allowingPrivate;
 
 
@@ -78,10 +92,19 @@ public class ClientAddressAuthorizer extends ManagedComponent implements Authori
      * Adds authorized address patterns as a String array.
      */
     public void setAuthorizedPatternArray(String[] patterns) {
+        List<short[][]> ipv4patterns = new ArrayList<short[][]>(), ipv6patterns = new ArrayList<short[][]>();
         Matcher matcher;
 
         patterns: for (String pattern: patterns) {
-            if ((matcher = IPv4_ADDRESS_PATTERN.matcher(pattern)).matches()) {
+            if ((matcher = CIDR_PATTERN.matcher(pattern)).matches()) {
+                byte[] address = parse(matcher.group(1));
+                if (address == null || Integer.parseInt(matcher.group(2)) > address.length*8) {
+                    _log.warn("Invalid pattern ignored: {}", pattern);
+                } else {
+                    _log.trace("normalized {} range = {}/{}", address.length == 4 ? "ipv4" : "ipv6", Strings.toHexString(address), matcher.group(2));
+                    (address.length == 4 ? ipv4patterns : ipv6patterns).add(range(address, Integer.parseInt(matcher.group(2))));
+                }
+            } else if ((matcher = IPv4_ADDRESS_PATTERN.matcher(pattern)).matches()) {
                 short[] address = new short[4];
                 for (int i = 0; i < address.length; ++i) {
                     String p = matcher.group(i+1);
@@ -101,7 +124,7 @@ public class ClientAddressAuthorizer extends ManagedComponent implements Authori
                     }
                 }
                 _log.trace("normalized ipv4 address pattern = {}", () -> Strings.join(address, '.'));
-                _ipv4patterns.add(address);
+                ipv4patterns.add(wildcard(address));
             } else if ((matcher = IPv6_ADDRESS_PATTERN.matcher(pattern)).matches()) {
                 short[] address = new short[16];
                 for (int i = 0; i < address.length; i += 2) {
@@ -121,37 +144,225 @@ public class ClientAddressAuthorizer extends ManagedComponent implements Authori
                     }
                 }
                 _log.trace("normalized ipv6 address pattern = {}", () -> Strings.join(address, '.'));
-                _ipv6patterns.add(address);
+                ipv6patterns.add(wildcard(address));
             } else {
                 _log.warn("Invalid pattern ignored: {}", pattern);
             }
         }
+        _ipv4patterns.addAll(ipv4patterns);
+        _ipv6patterns.addAll(ipv6patterns);
     }
 
     @Override
     public void authorize(Service service, String deployment, DataBinder parameters, Persistence persist) throws AuthorizationException {
         String address = parameters.get(Service.REQUEST_CLIENT_ADDR);
         _log.trace("checking address {}", address);
-        try {
-            InetAddress inet = InetAddress.getByName(address); 
-            if (_allowingPrivate && (inet.isLoopbackAddress() || inet.isLinkLocalAddress() || inet.isSiteLocalAddress())) {
+        byte[] bytes = address != null ? parse(address) : null;
+        if (bytes != null) {
+            if (_allowingPrivate && (bytes.length == 4 ? PRIVATE_IPv4 : PRIVATE_IPv6).matches(bytes)) {
                 return;
             }
+            if ((bytes.length == 4 ? _ipv4patterns : _ipv6patterns).matches(bytes)) {
+                _log.trace("pattern match {}", address);
+                return;
+            }
+        }
+        throw new AuthorizationException(address);
+    }
 
-            byte[] bytes = inet.getAddress();
+    /*!
+     * Converts a CIDR range into the lower and upper bounds of its leading bytes.
+     */
+    private static short[][] range(byte[] address, int bits) {
+        short[] lower = new short[(bits + 7)/8], upper = new short[lower.length];
+        for (int i = 0; i < lower.length; ++i) {
+            int mask = bits >= (i+1)*8 ? 0xff : (0xff << (8 - bits % 8)) & 0xff;
+            lower[i] = (short)(address[i] & mask);
+            upper[i] = (short)(lower[i] | ~mask & 0xff);
+        }
+        return new short[][] { lower, upper };
+    }
+
+    /*!
+     * Converts a pattern of wildcard (256) and exact bytes into the lower and upper bounds of its leading bytes.
+     */
+    private static short[][] wildcard(short[] pattern) {
+        int length = pattern.length;
+        while (length > 0 && pattern[length-1] > 255) --length;
+        short[] lower = new short[length], upper = new short[length];
+        for (int i = 0; i < length; ++i) {
+            lower[i] = pattern[i] > 255 ? 0 : pattern[i];
+            upper[i] = pattern[i] > 255 ? 255 : pattern[i];
+        }
+        return new short[][] { lower, upper };
+    }
+
+    /**
+     * Parses a numeric IPv4 or IPv6 address without name resolution. An IPv4-mapped IPv6 address is returned as an IPv4 address.
+     *
+     * @param address an IPv4 address in dotted decimal notation, or an IPv6 address in any of its text forms
+     * @return the address as 4 or 16 bytes, or null if the text is not a numeric IP address
+     */
+    public static byte[] parse(String address) {
+        int end = address.indexOf('%');
+        if (end < 0) end = address.length();
+        if (address.indexOf(':') < 0) {
+            byte[] bytes = new byte[4];
+            return parseIPv4(address, 0, end, bytes, 0) ? bytes : null;
+        }
+
+        byte[] bytes = new byte[16];
+        int length = 0, compressed = -1, start = 0;
+        if (address.startsWith("::")) {
+            if (end == 2) return bytes;
+            compressed = 0;
+            start = 2;
+        } else if (address.startsWith(":")) {
+            return null;
+        }
+        while (start < end) {
+            int colon = address.indexOf(':', start);
+            if (colon < 0 || colon > end) colon = end;
+            if (colon == start) {
+                // a second colon in a row
+                if (compressed >= 0) return null;
+                compressed = length;
+                ++start;
+                continue;
+            }
+            if (colon == end && address.indexOf('.', start) >= 0) {
+                // an embedded IPv4 address
+                if (length > 12 || !parseIPv4(address, start, end, bytes, length)) return null;
+                length += 4;
+                break;
+            }
+            if (colon - start > 4 || length > 14) return null;
+            int group = 0;
+            for (int i = start; i < colon; ++i) {
+                int digit = Character.digit(address.charAt(i), 16);
+                if (digit < 0) return null;
+                group = group << 4 | digit;
+            }
+            bytes[length++] = (byte)(group >> 8);
+            bytes[length++] = (byte)group;
+            start = colon + 1;
+            if (colon < end && start == end && compressed != length) return null; // a trailing single colon
+        }
+        if (compressed >= 0) {
+            if (length == 16) return null;
+            System.arraycopy(bytes, compressed, bytes, 16 - (length - compressed), length - compressed);
+            Arrays.fill(bytes, compressed, 16 - (length - compressed), (byte)0);
+        } else if (length != 16) {
+            return null;
+        }
 
-  patterns: for (short[] pattern: bytes.length == 4 ? _ipv4patterns : _ipv6patterns) {
-                for (int i = 0; i < pattern.length; ++i) {
-                    if (pattern[i] < 256 && pattern[i] != (bytes[i] & 0xff)) {
-                        continue patterns;
+        for (int i = 0; i < 10; ++i) {
+            if (bytes[i] != 0) return bytes;
+        }
+        return bytes[10] == (byte)0xff && bytes[11] == (byte)0xff ? Arrays.copyOfRange(bytes, 12, 16) : bytes;
+    }
+
+    private static boolean parseIPv4(String address, int start, int end, byte[] bytes, int offset) {
+        int count = 0, value = 0, digits = 0;
+        for (int i = start; i <= end; ++i) {
+            char c = i < end ? address.charAt(i) : '.';
+            if (c == '.') {
+                if (digits == 0 || count == 4) return false;
+                bytes[offset + count++] = (byte)value;
+                value = digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 3) {
+                value = value * 10 + (c - '0');
+                if (value > 255) return false;
+                ++digits;
+            } else {
+                return false;
+            }
+        }
+        return count == 4;
+    }
+
+    /*!
+     * A radix trie of address patterns with a stride of 8 bits. Each edge matches a value of one byte, and a wildcard byte is a
+     * single edge matching any value. Wildcard subtries are merged into their sibling subtries when patterns are added, so
+     * matching follows a single path. Patterns are added to a copy of the trie, which then replaces the trie being matched.
+     */
+    private static class AddressTrie {
+        private volatile Node _root = new Node();
+
+        /*!
+         * Adds patterns given as the lower and upper bounds of their leading bytes. A pattern matches all values of the bytes
+         * beyond its bounds.
+         */
+        synchronized void addAll(List<short[][]> patterns) {
+            if (patterns.isEmpty()) return;
+            Node root = _root.copy();
+            for (short[][] pattern: patterns) {
+                root.add(pattern[0], pattern[1], 0);
+            }
+            _root = root;
+        }
+
+        boolean matches(byte[] address) {
+            Node node = _root;
+            for (int i = 0; !node.accepting; ++i) {
+                if (i == address.length || (node = node.next((char)(address[i] & 0xff))) == null) return false;
+            }
+            return true;
+        }
+    }
+
+    private static class Node {
+        boolean accepting;
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        Node any;
+
+        Node next(char value) {
+            int index = Arrays.binarySearch(labels, value);
+            return index >= 0 ? children[index] : any;
+        }
+
+        void add(short[] lower, short[] upper, int depth) {
+            if (accepting) {
+                return;
+            } else if (depth == lower.length) {
+                accepting = true;
+                labels = new char[0];
+                children = new Node[0];
+                any = null;
+            } else if (lower[depth] == 0 && upper[depth] == 255) {
+                if (any == null) any = new Node();
+                any.add(lower, upper, depth + 1);
+                for (Node child: children) child.add(lower, upper, depth + 1);
+            } else {
+                for (int v = lower[depth]; v <= upper[depth]; ++v) {
+                    int index = Arrays.binarySearch(labels, (char)v);
+                    if (index < 0) {
+                        index = -index - 1;
+                        char[] l = new char[labels.length + 1];
+                        Node[] c = new Node[children.length + 1];
+                        System.arraycopy(labels, 0, l, 0, index);
+                        System.arraycopy(children, 0, c, 0, index);
+                        System.arraycopy(labels, index, l, index + 1, labels.length - index);
+                        System.arraycopy(children, index, c, index + 1, children.length - index);
+                        l[index] = (char)v;
+                        c[index] = any != null ? any.copy() : new Node();
+                        labels = l;
+                        children = c;
                     }
+                    children[index].add(lower, upper, depth + 1);
                 }
-                _log.trace("pattern match {}", () -> Strings.join(pattern, '.'));
-                return;
             }
-        } catch (java.net.UnknownHostException x) {
-            throw new AuthorizationException(x.getMessage(), x);
         }
-        throw new AuthorizationException(address);
+
+        Node copy() {
+            Node node = new Node();
+            node.accepting = accepting;
+            node.labels = labels.clone();
+            node.children = new Node[children.length];
+            for (int i = 0; i < children.length; ++i) node.children[i] = children[i].copy();
+            node.any = any != null ? any.copy() : null;
+            return node;
+        }
     }
 }
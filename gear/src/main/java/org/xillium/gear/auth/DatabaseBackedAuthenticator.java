@@ -3,7 +3,7 @@ package org.xillium.gear.auth;
 import java.net.*;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.security.SecureRandom;
 import java.security.NoSuchAlgorithmException;
 import javax.servlet.http.Cookie;
@@ -13,11 +13,17 @@ import org.xillium.data.*;
 import org.xillium.data.validation.*;
 import org.xillium.data.persistence.*;
 import org.xillium.core.*;
+import org.xillium.core.management.WithCache;
+import org.xillium.gear.util.LeastRecentlyUsedCache;
 import org.springframework.transaction.annotation.Transactional;
 
 
 /**
  * An Authenticator that stores credential and session data in databases.
+ * <p>Optionally, roles retrieved by secure session are cached for a short time, given by {@link #setSessionCacheTimeToLive(int)},
+ * during which session updates are coalesced and written to the database in the background, keeping repeated authentication of
+ * the same session off the database. Session caching is off by default, as a session invalidated in the database remains valid
+ * in the cache until the cached roles expire. The time-to-live should therefore be well below the session timeout.</p>
  */
 @lombok.extern.log4j.Log4j2
 public class DatabaseBackedAuthenticator extends PageAwareAuthenticator {
@@ -26,6 +32,7 @@ public class DatabaseBackedAuthenticator extends PageAwareAuthenticator {
     public static final String AUTHCODE = "_authcode_";
 
     private static final long DEFAULT_TIMEOUT = 300000; // 5 minutes
+    private static final int DEFAULT_SESSION_CACHE_SIZE = 10000;
     private final long _timeout;
 	private final Persistence _persistence;
     private final String IdentityName;
@@ -34,6 +41,11 @@ public class DatabaseBackedAuthenticator extends PageAwareAuthenticator {
     private final String UpdateSecureSession;
 	private final Map<String, Permission[]> _roles = new HashMap<String, Permission[]>(); // a map from role name to authorized function names
 	private final SecureRandom _random = new SecureRandom();
+    private final ConcurrentMap<String, Session> _touches = new ConcurrentHashMap<String, Session>(); // pending session updates
+    private volatile LeastRecentlyUsedCache<String, List<Role>> _sessions;
+    private int _size = DEFAULT_SESSION_CACHE_SIZE;
+    private long _ttl;
+    private ScheduledFuture<?> _flushing;
     //private String _page;
 
     /**
@@ -60,6 +72,121 @@ public class DatabaseBackedAuthenticator extends PageAwareAuthenticator {
         _random.setSeed(InetAddress.getLocalHost().getAddress());
 	}
 
+    /**
+     * Sets the maximum number of secure sessions whose roles are cached once session caching is enabled by a time-to-live.
+     *
+     * @param size the maximum number of cached sessions, or 0 to disable session caching
+     */
+    public void setSessionCacheSize(int size) {
+        _size = size;
+        configureSessionCache(_ttl);
+    }
+
+    /**
+     * Sets the time-to-live of cached session roles, which is also the interval between writes of coalesced session updates.
+     * The value is limited to half of the session timeout. Session caching is enabled only by a positive value.
+     *
+     * @param ttl the time-to-live in seconds, or 0, the default, to disable session caching
+     */
+    public void setSessionCacheTimeToLive(int ttl) {
+        configureSessionCache(Math.min(TimeUnit.SECONDS.toMillis(ttl), _timeout / 2));
+    }
+
+    /**
+     * Reports the state of the session cache, or null if session caching is disabled.
+     */
+    public WithCache.CacheState getCacheState() {
+        LeastRecentlyUsedCache<String, List<Role>> sessions = _sessions;
+        return sessions != null ? sessions.getCacheState() : null;
+    }
+
+    private synchronized void configureSessionCache(long ttl) {
+        if (_flushing != null) {
+            _flushing.cancel(false);
+            _flushing = null;
+            flush();
+        }
+        _ttl = ttl;
+        if (_timeout > 0 && _size > 0 && ttl > 0) {
+            _sessions = new LeastRecentlyUsedCache<String, List<Role>>(_size, ttl, TimeUnit.MILLISECONDS);
+            _flushing = scheduler().scheduleWithFixedDelay(new Runnable() {
+                public void run() { flush(); }
+            }, ttl, ttl, TimeUnit.MILLISECONDS);
+        } else {
+            _sessions = null;
+        }
+    }
+
+    /*!
+     * Writes coalesced session updates to the database. Updates that fail to be written are retried at the next flush.
+     */
+    private void flush() {
+        final List<Session> sessions = new ArrayList<Session>();
+        for (Map.Entry<String, Session> entry: _touches.entrySet()) {
+            sessions.add(entry.getValue());
+            _touches.remove(entry.getKey(), entry.getValue());
+        }
+        if (sessions.size() > 0) try {
+            _persistence.doReadWrite(null, new Persistence.Task<Integer, Void>() {
+                public Integer run(Void v, Persistence persistence) throws Exception {
+                    return persistence.executeUpdate(UpdateSecureSession, sessions);
+                }
+            });
+            _log.trace("flushed {} session updates", sessions.size());
+        } catch (RuntimeException x) {
+            _log.warn("Failed to update secure sessions", x);
+            for (Session session: sessions) {
+                _touches.putIfAbsent(session.id + Session.AT + session.token, session);
+            }
+        }
+    }
+
+    /*!
+     * Retrieves roles by secure session, updating the session if it is valid.
+     */
+    private List<Role> retrieve(final Session session) throws Exception {
+        LeastRecentlyUsedCache<String, List<Role>> cache = _sessions;
+        if (cache == null) {
+            List<Role> roles = _persistence.getResults(RetrieveRolesBySession, session);
+            if (roles.size() > 0) _persistence.executeUpdate(UpdateSecureSession, session);
+            return roles;
+        }
+
+        final String key = session.id + Session.AT + session.token;
+        final boolean[] loaded = new boolean[1];
+        List<Role> roles = cache.fetch(key, new Callable<List<Role>>() {
+            public List<Role> call() throws Exception {
+                loaded[0] = true;
+                List<Role> roles = _persistence.getResults(RetrieveRolesBySession, session);
+                if (roles.size() > 0) _persistence.executeUpdate(UpdateSecureSession, session);
+                return Collections.unmodifiableList(roles);
+            }
+        });
+        if (roles.isEmpty()) {
+            cache.invalidate(key);
+        } else if (!loaded[0]) {
+            _touches.put(key, session);
+        }
+        return roles;
+    }
+
+    private static ScheduledExecutorService _scheduler;
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (_scheduler == null) {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SecureSession-Writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            _scheduler = scheduler;
+        }
+        return _scheduler;
+    }
+
 /*
     public void setAuthenticationPage(String page) {
         _page = page;
@@ -169,9 +296,8 @@ _log.trace("redirecting to {}", binder.get(Service.SERVICE_PAGE_TARGET));
                     session.clock = now;
                     session.maxAge = _timeout;
                     _log.trace("Attempt to authorized with session {}", () -> org.xillium.base.beans.Beans.toString(session));
-                    List<Role> roles = _persistence.getResults(RetrieveRolesBySession, session);
+                    List<Role> roles = retrieve(session);
                     if (roles.size() > 0) {
-                        _persistence.executeUpdate(UpdateSecureSession, session);
                         return roles;
                         //authorize(deployment, roles);
                     } else {
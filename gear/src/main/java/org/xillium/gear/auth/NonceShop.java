@@ -1,15 +1,48 @@
 package org.xillium.gear.auth;
 
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.*;
 import java.security.SecureRandom;
 import org.xillium.base.Perishable;
 import org.xillium.base.beans.Strings;
 
 
 /**
- * NonceShop is a producer of nonce values used in authentication/verification.
+ * NonceShop is a producer of nonce values used in authentication/verification. Nonces to be proved later are kept in a
+ * {@link NonceShop.Store Store}, by default an in-memory store that proactively discards expired nonces. A NonceShop with the
+ * default store should be closed when no longer needed, to stop the store's background sweeping.
  */
-public class NonceShop {
+public class NonceShop implements java.io.Closeable {
+
+    /**
+     * A store of nonces to be proved. Each nonce is identified by its value together with its associated state.
+     * Implementations must be thread-safe.
+     */
+    public static interface Store {
+        /**
+         * Stores a nonce.
+         *
+         * @param state the state associated with the nonce
+         * @param value the nonce value
+         * @param expiration the expiration time of the nonce, in milliseconds since the epoch
+         */
+        public void put(String state, String value, long expiration);
+
+        /**
+         * Extends the life of a nonce that is present and has not expired.
+         *
+         * @return whether the nonce is renewed
+         */
+        public boolean renew(String state, String value, long expiration);
+
+        /**
+         * Removes a nonce.
+         *
+         * @return whether the nonce was present and had not expired
+         */
+        public boolean remove(String state, String value);
+    }
 
     /**
      * Constructs a NonceShop running on a JVM instance with a TTL and of a given byte size.
@@ -19,9 +52,36 @@ public class NonceShop {
      * @param size the byte size of nonces
      */
     public NonceShop(byte instance, long ttl, byte size) {
+        this(instance, ttl, size, new MemoryStore(), true);
+    }
+
+    /**
+     * Constructs a NonceShop running on a JVM instance with a TTL and of a given byte size, keeping nonces in the given Store.
+     *
+     * @param instance the instance number of this JVM
+     * @param ttl the default time-to-live in milliseconds for each nonce produced
+     * @param size the byte size of nonces
+     * @param store the store of nonces to be proved
+     */
+    public NonceShop(byte instance, long ttl, byte size, Store store) {
+        this(instance, ttl, size, store, false);
+    }
+
+    private NonceShop(byte instance, long ttl, byte size, Store store, boolean owned) {
         INSTANCE = instance;
         TTL = ttl;
         SIZE = size;
+        _store = store;
+        _owned = owned;
+    }
+
+    /**
+     * Closes the default store created by this NonceShop, stopping its background sweeping. A Store given to the constructor
+     * is left for its owner to close.
+     */
+    @Override
+    public void close() {
+        if (_owned) ((MemoryStore)_store).close();
     }
 
     /**
@@ -53,22 +113,19 @@ public class NonceShop {
      * @return the new nonce as a hexadecimal string
      */
     public String produce(String state, long time) {
-        Nonce nonce = new Nonce(INSTANCE, time > 0 ? time : TTL, SIZE, _random);
-        _map.put(state + ':' + nonce.value, nonce);
-        return nonce.value;
+        byte bytes[] = new byte[SIZE];
+        _random.nextBytes(bytes);
+        bytes[0] = INSTANCE;
+        String value = Strings.toHexString(bytes);
+        _store.put(state, value, System.currentTimeMillis() + (time > 0 ? time : TTL));
+        return value;
     }
 
     /**
      * Renews a nonce. The nonce must be valid and must have not expired.
      */
     public boolean renew(String value, String state, long time) {
-        Nonce nonce = _map.get(state + ':' + value);
-        if (nonce != null && !nonce.hasExpired()) {
-            nonce.renew(time > 0 ? time : TTL);
-            return true;
-        } else {
-            return false;
-        }
+        return _store.renew(state, value, System.currentTimeMillis() + (time > 0 ? time : TTL));
     }
 
     /**
@@ -79,33 +136,187 @@ public class NonceShop {
      * @return whether the nonce is successfully proved
      */
     public boolean prove(String value, String state) {
-        Nonce nonce = _map.remove(state + ':' + value);
-        return nonce != null && !nonce.hasExpired();
+        return _store.remove(state, value);
     }
 
-    private static class Nonce implements Perishable {
-        final String value;
-        long expiration;
+    /**
+     * An in-memory Store. Nonces are kept in a concurrent hash map, and are also entered into a timing wheel by expiration time.
+     * A background task sweeps the wheel one slot per tick, discarding expired nonces, so the memory held stays proportional to
+     * the number of live nonces. The task does not keep the store reachable, and stops by itself once the store is collected.
+     */
+    public static class MemoryStore implements Store, java.io.Closeable {
+        private static final int WHEEL = 64;
+
+        private final ConcurrentMap<Nonce, Nonce> _map = new ConcurrentHashMap<Nonce, Nonce>();
+        private final Queue<Nonce>[] _wheel;
+        private final long _tick;
+        private final ScheduledFuture<?> _sweeping;
+        private long _swept;
+
+        /**
+         * Constructs a MemoryStore that sweeps expired nonces every second.
+         */
+        public MemoryStore() {
+            this(1000);
+        }
+
+        /**
+         * Constructs a MemoryStore that sweeps expired nonces at the given interval.
+         *
+         * @param tick the sweeping interval in milliseconds
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public MemoryStore(long tick) {
+            _wheel = new Queue[WHEEL];
+            for (int i = 0; i < WHEEL; ++i) {
+                _wheel[i] = new ConcurrentLinkedQueue<Nonce>();
+            }
+            _tick = tick;
+            _swept = System.currentTimeMillis() / tick;
+            Sweeper sweeper = new Sweeper(this);
+            _sweeping = sweeper.future = scheduler().scheduleAtFixedRate(sweeper, tick, tick, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void put(String state, String value, long expiration) {
+            Nonce nonce = new Nonce(state, value, expiration);
+            _map.put(nonce, nonce);
+            schedule(nonce);
+        }
 
-        Nonce(byte instance, long time, int size, SecureRandom random) {
-            byte bytes[] = new byte[size];
-            random.nextBytes(bytes);
-            bytes[0] = instance;
-            value = Strings.toHexString(bytes);
-            expiration = System.currentTimeMillis() + time;
+        @Override
+        public boolean renew(String state, String value, long expiration) {
+            Nonce nonce = _map.get(new Nonce(state, value, 0));
+            if (nonce != null && !nonce.hasExpired()) {
+                // the nonce is rescheduled when its current slot is swept
+                nonce.expiration = expiration;
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean remove(String state, String value) {
+            Nonce nonce = _map.remove(new Nonce(state, value, 0));
+            return nonce != null && !nonce.hasExpired();
+        }
+
+        /**
+         * Returns the number of nonces in the store.
+         */
+        public int size() {
+            return _map.size();
+        }
+
+        /**
+         * Stops sweeping expired nonces.
+         */
+        @Override
+        public void close() {
+            _sweeping.cancel(false);
+        }
+
+        /**
+         * Sweeps the wheel up to the given time, discarding expired nonces and rescheduling those yet to expire. This is done
+         * by the background task at every tick, but can also be called directly with a chosen clock.
+         *
+         * @param now the current time in milliseconds since the epoch
+         */
+        public synchronized void sweep(long now) {
+            long current = now / _tick;
+            for (long tick = Math.max(_swept + 1, current - WHEEL + 1); tick <= current; ++tick) {
+                Queue<Nonce> slot = _wheel[(int)(tick % WHEEL)];
+                for (int n = slot.size(); n > 0; --n) {
+                    Nonce nonce = slot.poll();
+                    if (nonce == null) {
+                        break;
+                    } else if (nonce.expiration < now) {
+                        _map.remove(nonce, nonce);
+                    } else if (_map.get(nonce) == nonce) {
+                        schedule(nonce);
+                    }
+                }
+            }
+            _swept = current;
+        }
+
+        private void schedule(Nonce nonce) {
+            _wheel[(int)((nonce.expiration / _tick + 1) % WHEEL)].add(nonce);
+        }
+    }
+
+    // the sweeping task of a MemoryStore, which holds the store weakly and cancels itself once the store is collected
+    private static class Sweeper implements Runnable {
+        final WeakReference<MemoryStore> store;
+        volatile ScheduledFuture<?> future;
+
+        Sweeper(MemoryStore store) {
+            this.store = new WeakReference<MemoryStore>(store);
         }
 
-        void renew(long time) {
-            expiration = System.currentTimeMillis() + time;
+        @Override
+        public void run() {
+            MemoryStore store = this.store.get();
+            if (store != null) {
+                store.sweep(System.currentTimeMillis());
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    // a nonce in a MemoryStore, identified by its state and value
+    private static class Nonce implements Perishable {
+        final String state;
+        final String value;
+        final int hash;
+        volatile long expiration;
+
+        Nonce(String state, String value, long expiration) {
+            this.state = state;
+            this.value = value;
+            this.hash = 31 * String.valueOf(state).hashCode() + value.hashCode();
+            this.expiration = expiration;
         }
 
         @Override
         public boolean hasExpired() {
             return expiration < System.currentTimeMillis();
         }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Nonce)) return false;
+            Nonce nonce = (Nonce)object;
+            return value.equals(nonce.value) && (state == null ? nonce.state == null : state.equals(nonce.state));
+        }
+    }
+
+    private static ScheduledExecutorService _scheduler;
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (_scheduler == null) {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "NonceShop-Sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            _scheduler = scheduler;
+        }
+        return _scheduler;
     }
 
-    private final Map<String, Nonce> _map = Collections.synchronizedMap(new Perishable.Map<String, Nonce>());
+    private final Store _store;
+    private final boolean _owned;
     private final SecureRandom _random = new SecureRandom();
     private final byte INSTANCE;
     private final byte SIZE;
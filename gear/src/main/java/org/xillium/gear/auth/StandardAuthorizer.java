@@ -7,16 +7,24 @@ import org.xillium.data.persistence.Persistence;
 import org.xillium.core.*;
 import org.xillium.core.management.ManagedComponent;
 import org.xillium.core.management.WithCache;
+import org.xillium.gear.util.LeastRecentlyUsedCache;
 
 
 /**
  * An Authorizer that implements a prefix-based authorization policy.
+ * <p>The permissions of each role are compiled into a prefix trie, and authorization decisions are cached by the roles and the
+ * target function. Both are rebuilt by {@link #refresh()}.</p>
  */
 @lombok.extern.log4j.Log4j2
 public class StandardAuthorizer extends ManagedComponent implements Authorizer, PlatformAware, WithCache {
-    private final Map<String, Permission[]> _roles = new HashMap<String, Permission[]>(); // a map from role name to authorized function names
+    private static final int DEFAULT_DECISION_CACHE_SIZE = 4096;
+    private static final String AUTHORIZED = "";
+
     private final Authority _authority;
     private final Authenticator _authenticator;
+    private volatile Map<String, Trie> _roles = Collections.emptyMap(); // a map from role name to authorized function names
+    private volatile LeastRecentlyUsedCache<Decision, String> _decisions;
+    private int _size = DEFAULT_DECISION_CACHE_SIZE;
 
 
     /**
@@ -28,6 +36,14 @@ public class StandardAuthorizer extends ManagedComponent implements Authorizer,
     public StandardAuthorizer(Authority authority, Authenticator authenticator) {
         _authority = authority;
         _authenticator = authenticator;
+        _decisions = new LeastRecentlyUsedCache<Decision, String>(_size);
+    }
+
+    /**
+     * Sets the maximum number of authorization decisions to cache, taking effect at the next refresh.
+     */
+    public void setDecisionCacheSize(int size) {
+        _size = size;
     }
 
     @Override
@@ -52,14 +68,14 @@ public class StandardAuthorizer extends ManagedComponent implements Authorizer,
     @Override
     public void refresh() {
         try {
-            _roles.clear();
+            Map<String, Trie> roles = new HashMap<String, Trie>();
 
             List<Permission> permissions = new ArrayList<Permission>();
             String name = null;
             for (Permission auth: _authority.loadRolesAndPermissions()) {
                 if (name != null && !name.equals(auth.roleId)) {
                     _log.trace("{} with {} authorizations", name, permissions.size());
-                    _roles.put(name, permissions.toArray(new Permission[permissions.size()]));
+                    roles.put(name, new Trie(permissions));
                     permissions.clear();
                 }
                 name = auth.roleId;
@@ -67,46 +83,78 @@ public class StandardAuthorizer extends ManagedComponent implements Authorizer,
             }
             if (name != null) {
                 _log.trace("{} with {} authorizations", name, permissions.size());
-                _roles.put(name, permissions.toArray(new Permission[permissions.size()]));
+                roles.put(name, new Trie(permissions));
             }
 
+            _roles = roles;
+            _decisions = new LeastRecentlyUsedCache<Decision, String>(_size);
             _log.info("Completed loading all roles & permissions");
         } catch (Exception x) {
             throw new ServiceException("***FailureInLoadingRoles", x);
         }
     }
 
+    /**
+     * Reports the state of the decision cache, combined with that of the session cache if the authenticator has one.
+     */
     @Override
     public CacheState getCacheState() {
-        return null;
+        CacheState state = _decisions.getCacheState();
+        if (_authenticator instanceof DatabaseBackedAuthenticator) {
+            CacheState sessions = ((DatabaseBackedAuthenticator)_authenticator).getCacheState();
+            if (sessions != null) state = new CacheState(
+                state.getSize() + sessions.getSize(),
+                state.getMax() + sessions.getMax(),
+                state.getRead() + sessions.getRead(),
+                state.getHit() + sessions.getHit(),
+                state.getSwap() + sessions.getSwap()
+            );
+        }
+        return state;
+    }
+
+    protected void authorize(final String deployment, final List<Role> roles) throws AuthorizationException {
+        String decision;
+        try {
+            decision = _decisions.fetch(new Decision(deployment, roles), new java.util.concurrent.Callable<String>() {
+                public String call() { return decide(deployment, roles); }
+            });
+        } catch (Exception x) {
+            throw new AuthorizationException(x.getMessage(), x);
+        }
+        if (!AUTHORIZED.equals(decision)) {
+            throw new AuthorizationException(decision);
+        }
     }
 
-    protected void authorize(String deployment, List<Role> roles) throws AuthorizationException {
+    private String decide(String deployment, List<Role> roles) {
         int authorization = -1;
         int prerequisite = -1;
 
         String required = '/' + deployment;
         _log.trace("target function is {}, # of roles to check: {}", required, roles.size());
+        Map<String, Trie> tries = _roles;
         for (Role role: roles) {
             _log.trace("role: {}", role.roleId);
-            Permission[] permissions = _roles.get(role.roleId);
+            Trie permissions = tries.get(role.roleId);
             if (permissions != null) {
-                for (Permission permission: permissions) {
-                    if (required.startsWith(permission.function)) {
-                        authorization = Math.max(authorization, role.permission + permission.permission);
-                        prerequisite = Math.max(prerequisite, role.prerequisite + permission.permission);
-                        _log.trace("authorized function: {}, authorization = {}", permission.function, authorization);
-                    }
+                int permission = permissions.match(required);
+                if (permission != Trie.NONE) {
+                    authorization = Math.max(authorization, role.permission + permission);
+                    prerequisite = Math.max(prerequisite, role.prerequisite + permission);
+                    _log.trace("authorized permission: {}, authorization = {}", permission, authorization);
                 }
             }
         }
         _log.trace("final authorization = {}, prerequisite = {}", authorization, prerequisite);
         if (authorization < 0) {
-            throw new AuthorizationException("OperationNotAuthorized");
+            return "OperationNotAuthorized";
         } else if (authorization < 1) {
-            throw new AuthorizationException("PasswordExpired");
+            return "PasswordExpired";
         } else if (prerequisite < 1) {
-            throw new AuthorizationException("PrerequisiteNotMet");
+            return "PrerequisiteNotMet";
+        } else {
+            return AUTHORIZED;
         }
     }
 
@@ -126,4 +174,102 @@ public class StandardAuthorizer extends ManagedComponent implements Authorizer,
             throw new AuthorizationException(x.getMessage(), x);
         }
     }
+
+    /*!
+     * A prefix trie of the functions authorized to a role, each carrying the highest permission granted to it.
+     */
+    private static class Trie {
+        static final int NONE = Integer.MIN_VALUE;
+
+        private final Node _root = new Node();
+
+        Trie(List<Permission> permissions) {
+            for (Permission permission: permissions) {
+                Node node = _root;
+                for (int i = 0; i < permission.function.length(); ++i) {
+                    node = node.add(permission.function.charAt(i));
+                }
+                node.permission = Math.max(node.permission, permission.permission);
+            }
+            _root.seal();
+        }
+
+        /*!
+         * Returns the highest permission of all functions that are prefixes of the required function, or NONE.
+         */
+        int match(String required) {
+            int best = NONE;
+            Node node = _root;
+            for (int i = 0; node != null; ++i) {
+                best = Math.max(best, node.permission);
+                node = i < required.length() ? node.next(required.charAt(i)) : null;
+            }
+            return best;
+        }
+
+        private static class Node {
+            int permission = NONE;
+            char[] labels = new char[0];
+            Node[] children = new Node[0];
+            TreeMap<Character, Node> building = new TreeMap<Character, Node>();
+
+            Node add(char c) {
+                Node child = building.get(c);
+                if (child == null) building.put(c, child = new Node());
+                return child;
+            }
+
+            Node next(char c) {
+                int index = Arrays.binarySearch(labels, c);
+                return index < 0 ? null : children[index];
+            }
+
+            void seal() {
+                labels = new char[building.size()];
+                children = new Node[building.size()];
+                int i = 0;
+                for (Map.Entry<Character, Node> entry: building.entrySet()) {
+                    labels[i] = entry.getKey();
+                    children[i++] = entry.getValue();
+                    entry.getValue().seal();
+                }
+                building = null;
+            }
+        }
+    }
+
+    // the key of a cached decision: the target function and the roles with their permission levels
+    private static class Decision {
+        final String deployment;
+        final String[] roles;
+        final int[] levels;
+        final int hash;
+
+        Decision(String deployment, List<Role> roles) {
+            this.deployment = deployment;
+            this.roles = new String[roles.size()];
+            this.levels = new int[roles.size()*2];
+            int h = deployment.hashCode();
+            for (int i = 0; i < this.roles.length; ++i) {
+                Role role = roles.get(i);
+                this.roles[i] = role.roleId;
+                this.levels[i*2] = role.permission;
+                this.levels[i*2+1] = role.prerequisite;
+                h = (h*31 + String.valueOf(role.roleId).hashCode())*961 + role.permission*31 + role.prerequisite;
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Decision)) return false;
+            Decision decision = (Decision)object;
+            return hash == decision.hash && deployment.equals(decision.deployment) && Arrays.equals(roles, decision.roles) && Arrays.equals(levels, decision.levels);
+        }
+    }
 }
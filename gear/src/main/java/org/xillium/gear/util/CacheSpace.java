@@ -2,7 +2,8 @@ package org.xillium.gear.util;
 
 import java.lang.reflect.*;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.xillium.base.beans.Beans;
 import org.xillium.base.beans.Strings;
@@ -24,7 +25,16 @@ import org.xillium.gear.model.coordinate;
  * coordinate system.</li>
  * <li> Value members must be of object types so that missing values can be clearly denoted by nulls.</li>
  * </ol>
+ * <p>A reload builds a new space off to the side and swaps it in when complete, so lookups are never blocked and never see a
+ * partially loaded space. If a refresh interval is set, the space is reloaded periodically in the background.</p>
+ * <p>Background reloads of all spaces share a small pool of daemon threads, whose size is given by the system property
+ * "xillium.gear.CacheSpaceThreads" (default 4), so that a slow retriever does not hold up the reloading of other spaces.</p>
+ * <p>For frequent lookups, coordinate values can be interned into integer ids with {@link #intern(int, String)}, and data objects
+ * looked up by ids with {@link #get(int[])}, which does not hash strings or allocate memory. The id of a coordinate value remains
+ * valid across reloads for as long as the value is present in the space. Ids of values that disappear are forgotten and never
+ * reused.</p>
  */
+@lombok.extern.log4j.Log4j2
 public class CacheSpace<T extends DataObject> {
     /**
      * A "match-any" coordinate wildcard.
@@ -39,7 +49,7 @@ public class CacheSpace<T extends DataObject> {
      * @param retriever a data object retriever whose type parameter {@code T} is the class of the data objects
      */
     public CacheSpace(Callable<List<T>> retriever) {
-        _toplevel = new TopLevel<T>(deriveDataClass(retriever), retriever);
+        this(deriveDataClass(retriever), retriever);
     }
 
     /**
@@ -50,7 +60,23 @@ public class CacheSpace<T extends DataObject> {
      * @param type the type of data objects
      */
     public CacheSpace(Persistence persistence, Class<T> type) {
-        _toplevel = new TopLevel<T>(type, new DatabaseObjectRetriever<T>(persistence, type));
+        this(type, new DatabaseObjectRetriever<T>(persistence, type));
+    }
+
+    private CacheSpace(Class<T> type, Callable<List<T>> retriever) {
+        TreeMap<Integer, Field> sorted = new TreeMap<Integer, Field>();
+        for (Field field: type.getFields()) {
+            if (Modifier.isStatic(field.getModifiers())) continue;
+            coordinate c = field.getAnnotation(coordinate.class);
+            if (c == null) continue;
+            sorted.put(c.value(), field);
+        }
+        _coordinates = sorted.values().toArray(new Field[sorted.size()]);
+        _retriever = retriever;
+        _dimensions = new Dimension[_coordinates.length];
+        for (int i = 0; i < _dimensions.length; ++i) {
+            _dimensions[i] = new Dimension();
+        }
     }
 
     /**
@@ -59,36 +85,206 @@ public class CacheSpace<T extends DataObject> {
      * @param keys the keys that form the coordinate
      */
     public T get(String... keys) {
-        return _toplevel.get(keys, 0);
+        return _root.get(keys, 0);
+    }
+
+    /**
+     * Looks up a data object at a particular coordinate given as interned coordinate values. An id that is negative or unknown
+     * to the space matches no specific data objects, just like an unknown coordinate value.
+     *
+     * @param ids the ids of the coordinate values, as returned by {@link #intern(int, String)}
+     */
+    public T get(int[] ids) {
+        Block<T> block = _root;
+        for (int i = 0; i < ids.length; ++i) {
+            Block<T> child = block.child(ids[i]);
+            if (child == null) break;
+            block = child;
+        }
+        return block.global;
+    }
+
+    /**
+     * Returns the id of a coordinate value, or -1 if the value is not present in the coordinate. Ids are assigned when data
+     * objects are loaded, and never change afterwards.
+     *
+     * @param dimension the index of the coordinate, starting from 0
+     * @param value the coordinate value, which can be null
+     */
+    public int intern(int dimension, String value) {
+        Integer id = _dimensions[dimension].ids.get(key(value));
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the ids of coordinate values.
+     *
+     * @param keys the keys that form the coordinate
+     */
+    public int[] intern(String... keys) {
+        int[] ids = new int[keys.length];
+        for (int i = 0; i < ids.length; ++i) {
+            ids[i] = intern(i, keys[i]);
+        }
+        return ids;
     }
 
     /**
      * Counts the number of data objects in the space.
      */
     public int count() {
-        return _toplevel.count();
+        return _root.count();
     }
 
     /**
-     * (Re)loads data objects from an external source.
+     * (Re)loads data objects from an external source. The new objects replace the current ones only if all of them are loaded
+     * successfully, and concurrent reloads are serialized.
      */
     public void reload() {
-        try {
-            if (_toplevel.specifics != null) _toplevel.specifics.clear();
-            _toplevel.global = null;
+        synchronized (_retriever) {
+            long start = System.nanoTime();
+            try {
+                List<T> objects = _retriever.call();
+                Block<T> root = new Block<T>();
+                for (T object: objects) {
+                    root.insert(object, _coordinates, 0);
+                }
+                if (root.global == null) throw new IllegalStateException("***GlobalDataObjectMissing");
 
-            for (T object: _toplevel.retriever.call()) {
-                _toplevel.insert(object, _toplevel.coordinates, 0);
+                root.spread();
+                for (Dimension dimension: _dimensions) dimension.live.clear();
+                root.intern(_dimensions, 0);
+                root.link(_dimensions, 0);
+                _root = root;
+
+                // forget the ids of values no longer present, now that the old space is out of sight
+                for (Dimension dimension: _dimensions) {
+                    dimension.ids.keySet().retainAll(dimension.live);
+                    dimension.live.clear();
+                }
+                _objects = objects.size();
+                _lastReloaded = System.currentTimeMillis();
+                _duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            } catch (Exception x) {
+                ++_failures;
+                throw new RuntimeException(x.getMessage(), x);
             }
-            if (_toplevel.global == null) throw new IllegalStateException("***GlobalDataObjectMissing");
+        }
+    }
 
-            _toplevel.spread();
-        } catch (Exception x) {
-            throw new RuntimeException(x.getMessage(), x);
+    /**
+     * Reloads data objects in the background.
+     *
+     * @return a Future that completes when the reload is done
+     */
+    public Future<?> reloadAsync() {
+        return scheduler().submit(new Runnable() {
+            public void run() { reload(); }
+        });
+    }
+
+    /**
+     * Sets the interval between periodic background reloads. A failed periodic reload is logged and leaves the current data
+     * objects in place.
+     *
+     * @param interval the refresh interval in milliseconds, or 0 to stop periodic reloading
+     */
+    public synchronized void setRefreshInterval(long interval) {
+        if (_refresh != null) {
+            _refresh.cancel(false);
+            _refresh = null;
+        }
+        if (interval > 0) {
+            _refresh = scheduler().scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        reload();
+                    } catch (RuntimeException x) {
+                        _log.warn("Failed to refresh " + CacheSpace.this, x);
+                    }
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
         }
+        _interval = interval;
     }
 
-    private final TopLevel<T> _toplevel;
+    /**
+     * Returns the interval between periodic background reloads in milliseconds, or 0 if periodic reloading is off.
+     */
+    public long getRefreshInterval() {
+        return _interval;
+    }
+
+    /**
+     * Returns the number of data objects retrieved by the last successful reload.
+     */
+    public int getObjectCount() {
+        return _objects;
+    }
+
+    /**
+     * Returns the duration of the last successful reload in milliseconds.
+     */
+    public long getReloadDuration() {
+        return _duration;
+    }
+
+    /**
+     * Returns the time of the last successful reload in milliseconds since the epoch, or 0 if the space has never been loaded.
+     */
+    public long getLastReloaded() {
+        return _lastReloaded;
+    }
+
+    /**
+     * Returns the number of failed reloads.
+     */
+    public long getReloadFailures() {
+        return _failures;
+    }
+
+    private final Callable<List<T>> _retriever;
+    private final Field[] _coordinates;
+    private final Dimension[] _dimensions; // coordinate value ids, assigned under the reload lock
+    private volatile Block<T> _root = new Block<T>();
+    private volatile int _objects;
+    private volatile long _duration, _lastReloaded, _failures;
+    private volatile long _interval;
+    private ScheduledFuture<?> _refresh;
+
+    private static ScheduledExecutorService _scheduler;
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (_scheduler == null) {
+            final AtomicInteger count = new AtomicInteger();
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(Integer.getInteger("xillium.gear.CacheSpaceThreads", 4), new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "CacheSpace-Reload-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            _scheduler = scheduler;
+        }
+        return _scheduler;
+    }
+
+    // null coordinate values are interned under this key
+    private static final Object NULL = new Object();
+
+    private static Object key(Object value) {
+        return value != null ? value : NULL;
+    }
+
+    /*!
+     * The ids of the values of a coordinate. Ids are never reused, so that a stale id matches no specific data objects.
+     */
+    private static class Dimension {
+        final ConcurrentMap<Object, Integer> ids = new ConcurrentHashMap<Object, Integer>();
+        final Set<Object> live = new HashSet<Object>(); // values present in the space being loaded
+        int next;
+    }
 
     @SuppressWarnings("unchecked")
     private static <T extends DataObject> Class<T> deriveDataClass(Callable<List<T>> c) {
@@ -119,6 +315,8 @@ return (Class<T>)((ParameterizedType)((ParameterizedType)c.getClass().getGeneric
     private static class Block<T extends DataObject> {
         public T global;
         public Map<Object, Block<T>> specifics;
+        public int[] slots;         // open-addressed table of coordinate value ids plus 1, with 0 marking empty slots
+        public Block<T>[] links;    // specifics in the slots of their coordinate value ids
 
         public T get(String[] keys, int index) {
             Block<T> block = specifics == null ? null : specifics.get(keys[index]);
@@ -154,6 +352,51 @@ return (Class<T>)((ParameterizedType)((ParameterizedType)c.getClass().getGeneric
             }
         }
 
+        public Block<T> child(int id) {
+            int[] slots = this.slots;
+            if (slots != null && id >= 0) {
+                int mask = slots.length - 1;
+                for (int i = slot(id, mask); slots[i] != 0; i = (i + 1) & mask) {
+                    if (slots[i] == id + 1) return links[i];
+                }
+            }
+            return null;
+        }
+
+        public void intern(Dimension[] dimensions, int index) {
+            if (specifics != null) for (Map.Entry<Object, Block<T>> entry: specifics.entrySet()) {
+                Dimension dimension = dimensions[index];
+                Object key = key(entry.getKey());
+                if (!dimension.ids.containsKey(key)) {
+                    dimension.ids.put(key, dimension.next++);
+                }
+                dimension.live.add(key);
+                entry.getValue().intern(dimensions, index + 1);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        public void link(Dimension[] dimensions, int index) {
+            if (specifics != null) {
+                // sized by the number of specifics, at most half full
+                int capacity = Integer.highestOneBit(specifics.size()*2 - 1) << 1, mask = capacity - 1;
+                slots = new int[capacity];
+                links = (Block<T>[])new Block<?>[capacity];
+                for (Map.Entry<Object, Block<T>> entry: specifics.entrySet()) {
+                    int id = dimensions[index].ids.get(key(entry.getKey())), i = slot(id, mask);
+                    while (slots[i] != 0) i = (i + 1) & mask;
+                    slots[i] = id + 1;
+                    links[i] = entry.getValue();
+                    entry.getValue().link(dimensions, index + 1);
+                }
+            }
+        }
+
+        private static int slot(int id, int mask) {
+            int h = id * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
         public int count() {
             int c = 1;
             if (specifics != null) for (Block<T> block: specifics.values()) {
@@ -162,22 +405,4 @@ return (Class<T>)((ParameterizedType)((ParameterizedType)c.getClass().getGeneric
             return c;
         }
     }
-
-    private static class TopLevel<T extends DataObject> extends Block<T> {
-        public final Callable<List<T>> retriever;
-        public final Field[] coordinates;
-
-        public TopLevel(Class<T> type, Callable<List<T>> r) {
-            retriever = r;
-            TreeMap<Integer, Field> sorted = new TreeMap<Integer, Field>();
-            for (Field field: type.getFields()) {
-                if (Modifier.isStatic(field.getModifiers())) continue;
-                coordinate c = field.getAnnotation(coordinate.class);
-                if (c == null) continue;
-                sorted.put(c.value(), field);
-            }
-            coordinates = sorted.values().toArray(new Field[sorted.size()]);
-        }
-    }
 }
-
@@ -0,0 +1,65 @@
+package org.xillium.gear.util;
+
+import java.util.Date;
+import org.xillium.core.management.ManagedComponent;
+
+
+/**
+ * A manageable view of a CacheSpace. Declaring a CacheSpaceMonitor in a service module's configuration exposes the reload
+ * statistics of the CacheSpace through JMX, and allows the space to be reloaded and its refresh interval adjusted.
+ */
+public class CacheSpaceMonitor extends ManagedComponent implements ReloadingCache {
+    private final CacheSpace<?> _space;
+
+    public CacheSpaceMonitor(CacheSpace<?> space) {
+        _space = space;
+        setStatus(Status.HEALTHY);
+    }
+
+    /**
+     * Reloads the CacheSpace in the background.
+     */
+    @Override
+    public void refresh() {
+        _space.reloadAsync();
+    }
+
+    /**
+     * Reports no detailed state, as a CacheSpace holds all of its data objects.
+     */
+    @Override
+    public CacheState getCacheState() {
+        return null;
+    }
+
+    @Override
+    public int getObjectCount() {
+        return _space.getObjectCount();
+    }
+
+    @Override
+    public long getReloadDuration() {
+        return _space.getReloadDuration();
+    }
+
+    @Override
+    public Date getLastSuccess() {
+        long time = _space.getLastReloaded();
+        return time > 0 ? new Date(time) : null;
+    }
+
+    @Override
+    public long getReloadFailures() {
+        return _space.getReloadFailures();
+    }
+
+    @Override
+    public long getRefreshInterval() {
+        return _space.getRefreshInterval();
+    }
+
+    @Override
+    public void setRefreshInterval(long interval) {
+        _space.setRefreshInterval(interval);
+    }
+}
@@ -1,15 +1,32 @@
 package org.xillium.gear.util;
 
-import java.util.concurrent.Callable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import org.xillium.base.*;
 import org.xillium.core.management.WithCache;
 
 
 /**
  * LeastRecentlyUsedCache is a thread-safe cache with a maximum capacity and the LRU replacement policy.
+ *
+ * <p>The cache is divided into segments, each an access-ordered map with its own lock and an equal share of the capacity, so
+ * threads looking up different keys rarely contend with each other. The replacement policy is therefore an approximation of LRU:
+ * the least recently used entry of a segment is replaced when that segment is full. Small caches are not segmented. Loading of
+ * missing objects is done outside of the segment locks, and concurrent loads of the same key are deduplicated so that the provider
+ * is called only once.</p>
+ *
+ * <p>Entries may optionally expire a fixed time after they are created, after which they are reloaded on the next fetch.</p>
  */
 public class LeastRecentlyUsedCache<K, V> {
-    private final LeastRecentlyUsedMap<K, Singleton<V>> _cache;
+    private static final int MIN_SEGMENT_CAPACITY = 8;
+
+    private final Segment<K, V>[] _segments;
+    private final int _mask;
+    private final long _ttl;
+    private final AtomicInteger _size = new AtomicInteger(), _max = new AtomicInteger();
+    private final LongAdder _read = new LongAdder(), _hit = new LongAdder(), _swap = new LongAdder();
 
     /**
      * Constructs a LeastRecentlyUsedCache with the given capacity limit and a load factor of 0.75.
@@ -17,7 +34,7 @@ public class LeastRecentlyUsedCache<K, V> {
      * @param limit the cache limit
      */
     public LeastRecentlyUsedCache(int limit) {
-        _cache = new LeastRecentlyUsedMap<K, Singleton<V>>(limit);
+        this(limit, 0.75f);
     }
 
     /**
@@ -27,7 +44,30 @@ public class LeastRecentlyUsedCache<K, V> {
      * @param load the load factor
      */
     public LeastRecentlyUsedCache(int limit, float load) {
-        _cache = new LeastRecentlyUsedMap<K, Singleton<V>>(limit, load);
+        this(limit, load, 0, null);
+    }
+
+    /**
+     * Constructs a LeastRecentlyUsedCache with the given capacity limit and a time-to-live of its entries.
+     *
+     * @param limit the cache limit
+     * @param ttl the time-to-live of entries, 0 for entries that never expire
+     * @param unit the time unit of the time-to-live
+     */
+    public LeastRecentlyUsedCache(int limit, long ttl, TimeUnit unit) {
+        this(limit, 0.75f, ttl, unit);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private LeastRecentlyUsedCache(int limit, float load, long ttl, TimeUnit unit) {
+        int count = 1;
+        while (count*2 <= Runtime.getRuntime().availableProcessors()*4 && count*2*MIN_SEGMENT_CAPACITY <= limit) count *= 2;
+        _segments = new Segment[count];
+        for (int i = 0; i < count; ++i) {
+            _segments[i] = new Segment<K, V>((limit + count - 1)/count, load, this);
+        }
+        _mask = count - 1;
+        _ttl = ttl > 0 ? unit.toNanos(ttl) : 0;
     }
 
     /**
@@ -36,7 +76,7 @@ public class LeastRecentlyUsedCache<K, V> {
      * @return the current cache state encapsulated in a WithCache.CacheState object
      */
     public WithCache.CacheState getCacheState() {
-        return _cache.getCacheState();
+        return new WithCache.CacheState(_size.get(), _max.get(), _read.sum(), _hit.sum(), _swap.sum());
     }
 
     /**
@@ -77,26 +117,104 @@ public class LeastRecentlyUsedCache<K, V> {
         return locate(key).get(factory, args);
     }
 
+    /**
+     * Fetches an object from the cache without blocking. A cached object is returned in a completed future. Otherwise the
+     * provider is called by the executor, still only once for concurrent fetches of the same key.
+     *
+     * @param key the identity of the object
+     * @param callable a callable to provide the object upon cache miss
+     * @param executor the executor to run the provider
+     * @return a future of the object requested
+     */
+    public CompletableFuture<V> fetchAsync(K key, final Callable<V> callable, Executor executor) {
+        final Singleton<V> singleton = locate(key);
+        V value = singleton.peek();
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        } else {
+            return CompletableFuture.supplyAsync(new java.util.function.Supplier<V>() {
+                public V get() {
+                    try {
+                        return singleton.get(callable);
+                    } catch (RuntimeException x) {
+                        throw x;
+                    } catch (Exception x) {
+                        throw new CompletionException(x);
+                    }
+                }
+            }, executor);
+        }
+    }
+
     /**
      * Invalidates an entry in the cache. This operation does not constitute a cache replacement.
      *
      * @param key the identity of the object
      * @return the matching object that is being discarded, if any
      */
-    public synchronized V invalidate(K key) {
-        Singleton<V> singleton = _cache.get(key);
-        if (singleton != null) {
-            return singleton.clear();
-        } else {
-            return null;
+    public V invalidate(K key) {
+        Segment<K, V> segment = segment(key);
+        Entry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+        return entry != null ? entry.clear() : null;
+    }
+
+    private final Segment<K, V> segment(Object key) {
+        int h = key.hashCode();
+        return _segments[(h ^ (h >>> 16)) & _mask];
+    }
+
+    private final Singleton<V> locate(K key) {
+        Segment<K, V> segment = segment(key);
+        _read.increment();
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry != null && (_ttl == 0 || entry.expiry - System.nanoTime() > 0)) {
+                _hit.increment();
+                return entry;
+            }
+            Entry<V> fresh = new Entry<V>(_ttl > 0 ? System.nanoTime() + _ttl : 0);
+            if (segment.put(key, fresh) == null) {
+                int size = _size.incrementAndGet();
+                for (int max = _max.get(); size > max && !_max.compareAndSet(max, size); max = _max.get());
+            }
+            return fresh;
         }
     }
 
-    private synchronized final Singleton<V> locate(K key) {
-        Singleton<V> singleton = _cache.get(key);
-        if (singleton == null) {
-            _cache.put(key, singleton = new Singleton<V>());
+    // a cache entry, which expires at the given System.nanoTime() if time-to-live is set
+    private static class Entry<V> extends Singleton<V> {
+        final long expiry;
+
+        Entry(long expiry) {
+            this.expiry = expiry;
+        }
+    }
+
+    // a segment of the cache, guarded by its own monitor
+    private static class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private final int _limit;
+        private final LeastRecentlyUsedCache<K, V> _cache;
+
+        Segment(int limit, float load, LeastRecentlyUsedCache<K, V> cache) {
+            super((int)Math.ceil(limit/load), load, true);
+            _limit = limit;
+            _cache = cache;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() > _limit) {
+                _cache._size.decrementAndGet();
+                _cache._swap.increment();
+                return true;
+            } else {
+                return false;
+            }
         }
-        return singleton;
+
+        private static final long serialVersionUID = 1L;
     }
 }
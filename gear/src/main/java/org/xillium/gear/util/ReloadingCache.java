@@ -0,0 +1,42 @@
+package org.xillium.gear.util;
+
+import java.util.Date;
+import javax.management.*;
+import org.xillium.core.management.WithCache;
+
+
+/**
+ * A JMX bean that maintains an internal cache reloaded as a whole, in the background if so configured.
+ */
+@MXBean
+public interface ReloadingCache extends WithCache {
+    /**
+     * Returns the number of data objects retrieved by the last successful reload.
+     */
+    public int getObjectCount();
+
+    /**
+     * Returns the duration of the last successful reload in milliseconds.
+     */
+    public long getReloadDuration();
+
+    /**
+     * Returns the time of the last successful reload, or null if the space has never been loaded.
+     */
+    public Date getLastSuccess();
+
+    /**
+     * Returns the number of failed reloads.
+     */
+    public long getReloadFailures();
+
+    /**
+     * Returns the interval between periodic background reloads in milliseconds.
+     */
+    public long getRefreshInterval();
+
+    /**
+     * Sets the interval between periodic background reloads in milliseconds, or 0 to stop periodic reloading.
+     */
+    public void setRefreshInterval(long interval);
+}
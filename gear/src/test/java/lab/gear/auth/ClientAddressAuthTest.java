@@ -1,6 +1,6 @@
 package lab;
 
-import java.util.Arrays;
+import java.util.*;
 import org.xillium.base.beans.*;
 import org.xillium.data.*;
 import org.xillium.core.*;
@@ -101,4 +101,67 @@ public class ClientAddressAuthTest {
             pa.authorize(null, null, parameters, null);
         }
     }
+
+    @Test(groups={"ipauth"})
+    public void testRanges() throws Exception {
+        ClientAddressAuthorizer pa = new ClientAddressAuthorizer(new String[] {
+            "10.8.0.0/13", "203.0.113.7/32", "198.51.100.0/22", "2001:db8::/32", "fe80::1:0/112", "300.1.1.0/24", "10.0.0.0/33"
+        });
+        DataBinder parameters = new DataBinder();
+
+        for (String ip: new String[] { "10.8.0.1", "10.15.255.255", "203.0.113.7", "198.51.103.9", "::ffff:10.9.1.1", "2001:db8:1::5", "2001:DB8::", "fe80::1:abcd", "fe80::1:abcd%eth0" }) {
+            parameters.put(Service.REQUEST_CLIENT_ADDR, ip);
+            pa.authorize(null, null, parameters, null);
+        }
+        for (String ip: new String[] { "10.16.0.1", "10.7.255.255", "203.0.113.8", "198.51.104.1", "2001:db9::", "fe80::2:1", "300.1.1.1", "localhost", "10.8.0", "10.8.0.1.2", "1::2::3", ":1", "1:", "" }) {
+            try {
+                parameters.put(Service.REQUEST_CLIENT_ADDR, ip);
+                pa.authorize(null, null, parameters, null);
+                throw new RuntimeException("Failed to catch illegitimate address " + ip);
+            } catch (AuthorizationException x) {
+            }
+        }
+
+        assert Arrays.equals(ClientAddressAuthorizer.parse("::"), new byte[16]);
+        assert Arrays.equals(ClientAddressAuthorizer.parse("1::"), java.net.InetAddress.getByName("1::").getAddress());
+        assert Arrays.equals(ClientAddressAuthorizer.parse("::1.2.3.4"), java.net.InetAddress.getByName("::1.2.3.4").getAddress());
+        assert Arrays.equals(ClientAddressAuthorizer.parse("a:b:c:d:e:f:1.2.3.4"), java.net.InetAddress.getByName("a:b:c:d:e:f:1.2.3.4").getAddress());
+        assert Arrays.equals(ClientAddressAuthorizer.parse("::ffff:1.2.3.4"), new byte[] { 1, 2, 3, 4 });
+    }
+
+    @Test(groups={"ipauth"})
+    public void testEquivalence() throws Exception {
+        Random random = new Random(20);
+        List<String> patterns = new ArrayList<String>();
+        for (int i = 0; i < 400; ++i) {
+            String[] octets = new String[4];
+            for (int j = 0; j < 4; ++j) octets[j] = random.nextInt(6) == 0 ? "*" : String.valueOf(random.nextInt(8));
+            patterns.add(octets[0] + '.' + octets[1] + '.' + octets[2] + '.' + octets[3]);
+        }
+        ClientAddressAuthorizer pa = new ClientAddressAuthorizer(patterns.subList(0, 200).toArray(new String[200]));
+        pa.setAuthorizedPatternArray(patterns.subList(200, 400).toArray(new String[200]));
+
+        DataBinder parameters = new DataBinder();
+        int matched = 0;
+        for (int i = 0; i < 2000; ++i) {
+            String ip = random.nextInt(8) + "." + random.nextInt(8) + "." + random.nextInt(8) + "." + random.nextInt(8);
+            boolean expected = false;
+            for (String pattern: patterns) {
+                String[] p = pattern.split("\\."), a = ip.split("\\.");
+                boolean match = true;
+                for (int j = 0; j < 4; ++j) match &= p[j].equals("*") || p[j].equals(a[j]);
+                expected |= match;
+            }
+            boolean actual = true;
+            try {
+                parameters.put(Service.REQUEST_CLIENT_ADDR, ip);
+                pa.authorize(null, null, parameters, null);
+            } catch (AuthorizationException x) {
+                actual = false;
+            }
+            assert actual == expected : ip;
+            if (actual) ++matched;
+        }
+        assert matched > 0 && matched < 2000 : matched;
+    }
 }
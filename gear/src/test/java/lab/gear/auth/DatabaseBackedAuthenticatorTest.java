@@ -0,0 +1,164 @@
+package lab.gear.auth;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.xillium.data.*;
+import org.xillium.data.persistence.Persistence;
+import org.xillium.core.AuthorizationException;
+import org.xillium.gear.auth.*;
+import org.testng.annotations.*;
+
+
+/**
+ * DatabaseBackedAuthenticator session caching over a stub persistence.
+ */
+public class DatabaseBackedAuthenticatorTest {
+    private static final String IDENTITY = "userId";
+
+    private static class StubPersistence extends Persistence {
+        final Map<String, List<Role>> roles = new HashMap<String, List<Role>>();
+        final AtomicInteger queries = new AtomicInteger(), updates = new AtomicInteger();
+        final List<List<String>> batches = new ArrayList<List<String>>();
+        volatile boolean failing;
+
+        StubPersistence() {
+            super(null);
+        }
+
+        @Override
+        public <T, F> T doReadWrite(F facility, Task<T, F> task) {
+            try {
+                return task.run(facility, this);
+            } catch (RuntimeException x) {
+                throw x;
+            } catch (Exception x) {
+                throw new RuntimeException(x.getMessage(), x);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends DataObject> List<T> getResults(String name, DataObject object) {
+            queries.incrementAndGet();
+            List<Role> list = roles.get(((Session)object).id);
+            return (List<T>)(list != null ? new ArrayList<Role>(list) : new ArrayList<Role>());
+        }
+
+        @Override
+        public int executeUpdate(String name, DataObject object) {
+            updates.incrementAndGet();
+            return 1;
+        }
+
+        @Override
+        public synchronized int executeUpdate(String name, Collection<? extends DataObject> objects) {
+            if (failing) throw new IllegalStateException("database unavailable");
+            List<String> batch = new ArrayList<String>();
+            for (DataObject object: objects) batch.add(((Session)object).id);
+            batches.add(batch);
+            return objects.size();
+        }
+    }
+
+    private StubPersistence _persistence;
+    private DatabaseBackedAuthenticator _authenticator;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        _persistence = new StubPersistence();
+        _persistence.roles.put("alice", Arrays.asList(new Role("admin")));
+        _persistence.roles.put("bob", Arrays.asList(new Role("user")));
+        _authenticator = new DatabaseBackedAuthenticator(_persistence, 600, IDENTITY, "RolesByCredential", "RolesBySession", "UpdateSession");
+        // long enough for the background flush to stay out of the way
+        _authenticator.setSessionCacheTimeToLive(120);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        _authenticator.setSessionCacheSize(0);
+    }
+
+    @Test(groups={"auth", "auth-session"})
+    public void testCacheHit() {
+        assert authenticate("alice").get(0).roleId.equals("admin");
+        assert _persistence.queries.get() == 1 : _persistence.queries.get();
+        assert _persistence.updates.get() == 1 : _persistence.updates.get();
+
+        // a cache hit records a touch instead of going to the database
+        assert authenticate("alice").get(0).roleId.equals("admin");
+        assert _persistence.queries.get() == 1 : _persistence.queries.get();
+        assert _persistence.updates.get() == 1 : _persistence.updates.get();
+        assert _persistence.batches.isEmpty();
+        assert _authenticator.getCacheState().getHit() == 1 : _authenticator.getCacheState().getHit();
+    }
+
+    @Test(groups={"auth", "auth-session"})
+    public void testCoalescedTouches() {
+        for (int i = 0; i < 5; ++i) {
+            authenticate("alice");
+            authenticate("bob");
+        }
+        assert _persistence.queries.get() == 2 : _persistence.queries.get();
+
+        _authenticator.setSessionCacheSize(0);
+        assert _persistence.batches.size() == 1 : _persistence.batches;
+        assert new HashSet<String>(_persistence.batches.get(0)).equals(new HashSet<String>(Arrays.asList("alice", "bob"))) : _persistence.batches;
+    }
+
+    @Test(groups={"auth", "auth-session"})
+    public void testFailedFlushRetried() {
+        authenticate("alice");
+        authenticate("alice");
+
+        // reconfiguration flushes pending touches, which fail to be written and are kept for the next flush
+        _persistence.failing = true;
+        _authenticator.setSessionCacheTimeToLive(120);
+        assert _persistence.batches.isEmpty();
+
+        _persistence.failing = false;
+        _authenticator.setSessionCacheSize(0);
+        assert _persistence.batches.size() == 1 : _persistence.batches;
+        assert _persistence.batches.get(0).equals(Arrays.asList("alice")) : _persistence.batches;
+    }
+
+    @Test(groups={"auth", "auth-session"})
+    public void testDisablingFlushes() {
+        authenticate("alice");
+        authenticate("alice");
+        assert _persistence.batches.isEmpty();
+
+        _authenticator.setSessionCacheSize(0);
+        assert _authenticator.getCacheState() == null;
+        assert _persistence.batches.size() == 1 : _persistence.batches;
+        assert _persistence.batches.get(0).equals(Arrays.asList("alice")) : _persistence.batches;
+
+        // without the cache every session is checked against the database
+        authenticate("alice");
+        assert _persistence.queries.get() == 2 : _persistence.queries.get();
+        assert _persistence.updates.get() == 2 : _persistence.updates.get();
+        assert _persistence.batches.size() == 1 : _persistence.batches;
+    }
+
+    @Test(groups={"auth", "auth-session"})
+    public void testInvalidSessionNotCached() {
+        for (int i = 0; i < 3; ++i) {
+            try {
+                authenticate("mallory");
+                assert false : "invalid session authenticated";
+            } catch (AuthorizationException x) {
+                assert "InvalidSession".equals(x.getMessage()) : x.getMessage();
+            }
+        }
+        assert _persistence.queries.get() == 3 : _persistence.queries.get();
+        assert _persistence.updates.get() == 0 : _persistence.updates.get();
+
+        _authenticator.setSessionCacheSize(0);
+        assert _persistence.batches.isEmpty();
+    }
+
+    private List<Role> authenticate(String id) {
+        DataBinder binder = new DataBinder();
+        binder.put(DatabaseBackedAuthenticator.AUTHCODE, id + Session.AT + "0123456789ABCDEF");
+        return _authenticator.authenticate(binder);
+    }
+}
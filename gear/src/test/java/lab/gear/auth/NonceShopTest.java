@@ -0,0 +1,102 @@
+package lab.gear.auth;
+
+import java.util.concurrent.atomic.*;
+import org.xillium.gear.auth.NonceShop;
+import lab.gear.util.Contention;
+import org.testng.annotations.Test;
+
+
+public class NonceShopTest {
+    private static final int THREADS = 8, RUNS = 20000;
+
+    @Test(groups={"auth", "nonce"})
+    public void testLifecycle() throws Exception {
+        NonceShop.MemoryStore store = new NonceShop.MemoryStore(10);
+        try {
+            NonceShop shop = new NonceShop((byte)7, 1000, (byte)16, store);
+            String nonce = shop.produce("login", 0);
+            assert nonce.length() == 32 && nonce.startsWith("07");
+            assert !shop.prove(nonce, "logout");
+            assert shop.renew(nonce, "login", 0);
+            assert shop.prove(nonce, "login");
+            assert !shop.prove(nonce, "login");
+            assert !shop.renew(nonce, "login", 0);
+
+            String shortLived = shop.produce(null, 20);
+            Thread.sleep(40);
+            assert !shop.renew(shortLived, null, 0);
+            assert !shop.prove(shortLived, null);
+
+            String renewed = shop.produce("state", 30);
+            Thread.sleep(15);
+            assert shop.renew(renewed, "state", 200);
+            Thread.sleep(60);
+            assert shop.prove(renewed, "state");
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test(groups={"auth", "nonce"})
+    public void testSweeping() throws Exception {
+        NonceShop.MemoryStore store = new NonceShop.MemoryStore(100);
+        try {
+            NonceShop shop = new NonceShop((byte)1, 2000, (byte)8, store);
+            for (int i = 0; i < 10000; ++i) shop.produce("burst", 0);
+            String kept = shop.produce("kept", 60000);
+            assert store.size() == 10001 : store.size() + " nonces";
+
+            // sweep with a clock past the expiration of the burst, independent of the speed of the suite
+            store.sweep(System.currentTimeMillis() + 3000);
+            assert store.size() == 1 : store.size() + " nonces left";
+            assert shop.prove(kept, "kept") && store.size() == 0;
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test(groups={"auth", "nonce"})
+    public void testClose() throws Exception {
+        NonceShop shop = new NonceShop((byte)1, 1000, (byte)8);
+        String nonce = shop.produce("state", 0);
+        shop.close();
+        assert shop.prove(nonce, "state");
+    }
+
+    @Test(groups={"auth", "nonce"})
+    public void testAbandonedStore() throws Exception {
+        NonceShop.MemoryStore store = new NonceShop.MemoryStore(10);
+        new NonceShop((byte)1, 1000, (byte)8, store).produce("state", 0);
+        java.lang.ref.WeakReference<NonceShop.MemoryStore> reference = new java.lang.ref.WeakReference<NonceShop.MemoryStore>(store);
+        store = null;
+
+        // an unclosed store is not kept reachable by its sweeping
+        for (int i = 0; i < 50 && reference.get() != null; ++i) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assert reference.get() == null : "abandoned store still reachable";
+    }
+
+    @Test(groups={"auth", "nonce"})
+    public void testConcurrency() throws Exception {
+        NonceShop.MemoryStore store = new NonceShop.MemoryStore();
+        try {
+            final NonceShop shop = new NonceShop((byte)1, 60000, (byte)16, store);
+            final AtomicInteger proved = new AtomicInteger();
+            long elapsed = Contention.run(THREADS, new Contention.Task() {
+                public void run(int thread) {
+                    String state = "state" + thread;
+                    for (int i = 0; i < RUNS; ++i) {
+                        String nonce = shop.produce(state, 0);
+                        if (shop.renew(nonce, state, 0) && shop.prove(nonce, state) && !shop.prove(nonce, state)) proved.incrementAndGet();
+                    }
+                }
+            });
+            assert proved.get() == THREADS * RUNS && store.size() == 0;
+            System.err.println("NonceShop produce/renew/prove with " + THREADS + " threads: " + elapsed/((long)THREADS*RUNS) + " ns/cycle");
+        } finally {
+            store.close();
+        }
+    }
+}
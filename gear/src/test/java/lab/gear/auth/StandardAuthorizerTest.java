@@ -0,0 +1,136 @@
+package lab.gear.auth;
+
+import java.util.*;
+import org.xillium.data.DataBinder;
+import org.xillium.core.AuthorizationException;
+import org.xillium.core.management.WithCache;
+import org.xillium.gear.auth.*;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.testng.annotations.Test;
+
+
+public class StandardAuthorizerTest {
+    private static final String[] FUNCTIONS = { "/", "/acct", "/acct/", "/acct/list", "/acct/update", "/admin", "/admin/users", "/report", "/re" };
+    private static final int RUNS = 100000;
+
+    @Test(groups={"auth", "authorizer"})
+    public void testDecisions() throws Exception {
+        Random random = new Random(19);
+        final List<Permission> permissions = new ArrayList<Permission>();
+        for (int r = 0; r < 6; ++r) {
+            for (String function: FUNCTIONS) {
+                if (random.nextInt(3) == 0) permissions.add(new Permission("role" + r, function, random.nextInt(3) - 1));
+            }
+        }
+        permissions.add(new Permission("role1", "/acct/list", 1));
+        permissions.add(new Permission("role1", "/acct/list", -1));
+        // an authority delivers permissions grouped by role
+        Collections.sort(permissions, new Comparator<Permission>() {
+            public int compare(Permission a, Permission b) { return a.roleId.compareTo(b.roleId); }
+        });
+
+        final List<Role> roles = new ArrayList<Role>();
+        StandardAuthorizer authorizer = new StandardAuthorizer(
+            new Authority() {
+                public List<Permission> loadRolesAndPermissions() { return permissions; }
+            },
+            new Authenticator() {
+                public List<Role> authenticate(DataBinder parameters) { return roles; }
+            }
+        );
+        authorizer.refresh();
+
+        String[] targets = { "acct", "acct/list", "acct/list/all", "acct/update", "admin/users", "report", "reports", "x", "" };
+        int checks = 0;
+        for (int i = 0; i < 500; ++i) {
+            roles.clear();
+            for (int r = random.nextInt(3); r >= 0; --r) roles.add(new Role("role" + random.nextInt(7), random.nextInt(3) - 1, random.nextInt(3) - 1));
+            String target = targets[random.nextInt(targets.length)];
+            String expected = legacy(permissions, target, roles), actual = null;
+            try {
+                authorizer.authorize(null, target, new DataBinder(), null);
+            } catch (AuthorizationException x) {
+                actual = x.getMessage();
+            }
+            assert expected == null ? actual == null : expected.equals(actual) : target + ": " + expected + " != " + actual;
+            ++checks;
+        }
+
+        WithCache.CacheState state = authorizer.getCacheState();
+        assert state.getRead() == checks && state.getHit() > 0 && state.getSize() == checks - state.getHit() : state.getRead() + "/" + state.getHit();
+
+        permissions.clear();
+        roles.clear();
+        roles.add(new Role("role0", 1, 1));
+        authorizer.refresh();
+        assert authorizer.getCacheState().getSize() == 0;
+        try {
+            authorizer.authorize(null, "acct", new DataBinder(), null);
+            assert false;
+        } catch (AuthorizationException x) {
+            assert "OperationNotAuthorized".equals(x.getMessage());
+        }
+    }
+
+    @Test(groups={"auth", "authorizer", "performance"})
+    public void runDecisions() throws Exception {
+        final List<Permission> permissions = new ArrayList<Permission>();
+        for (int i = 0; i < 200; ++i) permissions.add(new Permission("user", "/module" + i + "/service", 1));
+        permissions.add(new Permission("user", "/module199/", 1));
+        final List<Role> roles = Arrays.asList(new Role("user", 0, 0));
+        StandardAuthorizer authorizer = new StandardAuthorizer(
+            new Authority() {
+                public List<Permission> loadRolesAndPermissions() { return permissions; }
+            },
+            new Authenticator() {
+                public List<Role> authenticate(DataBinder parameters) { return roles; }
+            }
+        );
+        authorizer.refresh();
+        DataBinder binder = new DataBinder();
+
+        Level level = LogManager.getRootLogger().getLevel();
+        Configurator.setRootLevel(Level.WARN);
+        try {
+            int count = 0;
+            for (int i = 0; i < RUNS; ++i) if (legacy(permissions, "module199/service", roles) == null) ++count;
+            long now = System.nanoTime();
+            for (int i = 0; i < RUNS; ++i) if (legacy(permissions, "module199/service", roles) == null) ++count;
+            System.err.println("  linear permission scan: " + (System.nanoTime() - now)/RUNS + " ns/authorization");
+
+            for (int i = 0; i < RUNS; ++i) authorizer.authorize(null, "module199/service", binder, null);
+            now = System.nanoTime();
+            for (int i = 0; i < RUNS; ++i) authorizer.authorize(null, "module199/service", binder, null);
+            System.err.println("cached trie authorization: " + (System.nanoTime() - now)/RUNS + " ns/authorization");
+            assert count == RUNS*2;
+        } finally {
+            Configurator.setRootLevel(level);
+        }
+    }
+
+    // StandardAuthorizer's decision as it was, scanning all permissions of each role
+    private static String legacy(List<Permission> permissions, String deployment, List<Role> roles) {
+        int authorization = -1;
+        int prerequisite = -1;
+        String required = '/' + deployment;
+        for (Role role: roles) {
+            for (Permission permission: permissions) {
+                if (permission.roleId.equals(role.roleId) && required.startsWith(permission.function)) {
+                    authorization = Math.max(authorization, role.permission + permission.permission);
+                    prerequisite = Math.max(prerequisite, role.prerequisite + permission.permission);
+                }
+            }
+        }
+        if (authorization < 0) {
+            return "OperationNotAuthorized";
+        } else if (authorization < 1) {
+            return "PasswordExpired";
+        } else if (prerequisite < 1) {
+            return "PrerequisiteNotMet";
+        } else {
+            return null;
+        }
+    }
+}
@@ -2,7 +2,8 @@ package lab.gear.util;
 
 import java.math.BigDecimal;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import org.xillium.base.*;
 import org.xillium.data.DataObject;
 import org.xillium.gear.model.coordinate;
@@ -198,5 +199,164 @@ public class CacheSpaceTest {
         }
         long cost = System.nanoTime() - now;
         System.out.println("Cost = " + cost);
+
+        int[][] ids = new int[retriever.situations.size()][];
+        for (int i = 0; i < ids.length; ++i) {
+            TradingParameters situation = retriever.situations.get(i);
+            ids[i] = cs.intern(situation.categoryId, situation.goodsId, situation.memberId);
+            assert cs.get(ids[i]) == cs.get(situation.categoryId, situation.goodsId, situation.memberId);
+        }
+        assert cs.intern(0, "Unknown") == -1 && cs.intern(1, null) == -1;
+        assert cs.get(new int[] { -1, 0, 0 }) == cs.get("Unknown", "A", "John");
+        assert cs.get(new int[] { cs.intern(0, "Fancy"), 1000000 }) == cs.get("Fancy", "Unknown");
+
+        cs.reload();
+        for (int i = 0; i < ids.length; ++i) {
+            TradingParameters situation = retriever.situations.get(i);
+            assert cs.get(ids[i]) == cs.get(situation.categoryId, situation.goodsId, situation.memberId);
+        }
+
+        for (int r = 0; r < 20; ++r) {
+            for (TradingParameters situation: retriever.situations) cs.get(situation.categoryId, situation.goodsId, situation.memberId);
+            for (int[] id: ids) cs.get(id);
+        }
+        now = System.nanoTime();
+        for (int r = 0; r < 20; ++r) {
+            for (TradingParameters situation: retriever.situations) cs.get(situation.categoryId, situation.goodsId, situation.memberId);
+        }
+        System.out.println("String lookup = " + (System.nanoTime() - now)/(20*SITUATIONS_COUNT) + " ns");
+        now = System.nanoTime();
+        for (int r = 0; r < 20; ++r) {
+            for (int[] id: ids) cs.get(id);
+        }
+        System.out.println("Interned lookup = " + (System.nanoTime() - now)/(20*SITUATIONS_COUNT) + " ns");
+    }
+
+    @Test(groups={"cache", "cachespace"})
+    public void testReloadUnderLoad() throws Exception {
+        final TradingParametersRetriever retriever = new TradingParametersRetriever();
+        final AtomicInteger loads = new AtomicInteger();
+        final CacheSpace<TradingParameters> cs = new CacheSpace<TradingParameters>(new Callable<List<TradingParameters>>() {
+            public List<TradingParameters> call() throws Exception {
+                if (loads.incrementAndGet() % 5 == 0) throw new IllegalStateException("retriever failure");
+                return retriever.call();
+            }
+        });
+        cs.reload();
+        assert cs.getObjectCount() == PARAMETERS_COUNT + 1 && cs.getLastReloaded() > 0;
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread reader = new Thread() {
+            public void run() {
+                try {
+                    while (running.get()) {
+                        for (TradingParameters situation: retriever.situations) {
+                            TradingParameters p = cs.get(situation.categoryId, situation.goodsId, situation.memberId);
+                            for (int index = 0; index < PARAMETERS_WIDTH; ++index) {
+                                assert p.get(index).equals(situation.get(index));
+                            }
+                        }
+                    }
+                } catch (Throwable x) {
+                    failure.set(x);
+                }
+            }
+        };
+        reader.start();
+
+        cs.setRefreshInterval(5);
+        Thread.sleep(200);
+        cs.setRefreshInterval(0);
+        int count = loads.get();
+        for (int i = 0; i < 4; ++i) {
+            try {
+                cs.reloadAsync().get();
+            } catch (ExecutionException x) {
+                assert x.getCause().getMessage().contains("retriever failure");
+            }
+        }
+        running.set(false);
+        reader.join();
+
+        assert failure.get() == null : failure.get();
+        assert count > 2 && cs.getReloadFailures() >= (count + 4)/5 : count + " loads, " + cs.getReloadFailures() + " failures";
+        assert cs.getObjectCount() == PARAMETERS_COUNT + 1;
+
+        CacheSpaceMonitor monitor = new CacheSpaceMonitor(cs);
+        javax.management.MBeanServer mbs = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+        javax.management.ObjectName name = new javax.management.ObjectName("lab.gear:type=CacheSpaceMonitor");
+        mbs.registerMBean(monitor, name);
+        try {
+            assert mbs.getAttribute(name, "ObjectCount").equals(PARAMETERS_COUNT + 1);
+            assert mbs.getAttribute(name, "LastSuccess") != null;
+        } finally {
+            mbs.unregisterMBean(name);
+        }
+    }
+
+    @Test(groups={"cache", "cachespace"})
+    public void testNullAndVanishingCoordinates() throws Exception {
+        final List<String[]> coordinates = new ArrayList<String[]>();
+        coordinates.add(new String[] { "-", "-", "-" });
+        coordinates.add(new String[] { "Fancy", null, "-" });
+        coordinates.add(new String[] { "Fancy", "A", "-" });
+        coordinates.add(new String[] { "Cool", "B", "-" });
+
+        // fresh objects on every call, as a reload fills in their missing values
+        CacheSpace<TradingParameters> cs = new CacheSpace<TradingParameters>(new Callable<List<TradingParameters>>() {
+            public List<TradingParameters> call() {
+                List<TradingParameters> parameters = new ArrayList<TradingParameters>();
+                for (String[] c: coordinates) {
+                    TradingParameters p = new TradingParameters(c[0], c[1], c[2]);
+                    p.param0 = new BigDecimal(parameters.size());
+                    parameters.add(p);
+                }
+                return parameters;
+            }
+        });
+        cs.reload();
+        cs.reload();
+
+        // a null coordinate value is interned like any other
+        assert cs.intern(1, null) >= 0;
+        assert cs.get(cs.intern("Fancy", null)) == cs.get("Fancy", null) && cs.get("Fancy", null).param0.intValue() == 1;
+
+        // ids of vanishing values are forgotten, those of remaining values stay valid, and ids are never reused
+        int[] cool = cs.intern("Cool", "B"), fancy = cs.intern("Fancy", "A");
+        coordinates.remove(3);
+        coordinates.add(new String[] { "Nice", "C", "-" });
+        cs.reload();
+        assert cs.intern(0, "Cool") == -1 && cs.intern(1, "B") == -1;
+        assert cs.get(cool) == cs.get("-", "-") : "stale id matched a specific data object";
+        assert Arrays.equals(cs.intern("Fancy", "A"), fancy) && cs.get(fancy).param0.intValue() == 2;
+        assert cs.intern(0, "Nice") > cool[0] && cs.intern(1, "C") > cool[1];
+    }
+
+    @Test(groups={"cache", "cachespace"})
+    public void testSlowRetrieverIsolated() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CacheSpace<TradingParameters> slow = new CacheSpace<TradingParameters>(new Callable<List<TradingParameters>>() {
+            public List<TradingParameters> call() throws Exception {
+                release.await();
+                return Arrays.asList(new TradingParameters("-", "-", "-"));
+            }
+        });
+        final CacheSpace<TradingParameters> fast = new CacheSpace<TradingParameters>(new Callable<List<TradingParameters>>() {
+            public List<TradingParameters> call() {
+                return Arrays.asList(new TradingParameters("-", "-", "-"));
+            }
+        });
+
+        // a reload stuck in one space does not hold up the reloading of another
+        Future<?> stuck = slow.reloadAsync();
+        try {
+            fast.reloadAsync().get(5, TimeUnit.SECONDS);
+            assert fast.getObjectCount() == 1 && !stuck.isDone();
+        } finally {
+            release.countDown();
+        }
+        stuck.get(5, TimeUnit.SECONDS);
+        assert slow.getObjectCount() == 1;
     }
 }
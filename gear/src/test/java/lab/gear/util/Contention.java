@@ -0,0 +1,50 @@
+package lab.gear.util;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+/**
+ * Runs a task on a number of threads released together, for contention and throughput tests.
+ */
+public class Contention {
+    public static interface Task {
+        /**
+         * Runs the task on one of the contending threads.
+         *
+         * @param thread the index of the thread
+         */
+        public void run(int thread) throws Exception;
+    }
+
+    /**
+     * Runs a task on the given number of threads, all started at the same time, failing if the task fails on any thread.
+     *
+     * @return the time it takes for all threads to finish, in nanoseconds
+     */
+    public static long run(int count, final Task task) throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(count + 1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[count];
+        for (int t = 0; t < count; ++t) {
+            final int index = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        barrier.await();
+                        task.run(index);
+                    } catch (Throwable x) {
+                        failure.set(x);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        barrier.await();
+        long now = System.nanoTime();
+        for (Thread thread: threads) thread.join();
+        long elapsed = System.nanoTime() - now;
+        assert failure.get() == null : failure.get();
+        return elapsed;
+    }
+}
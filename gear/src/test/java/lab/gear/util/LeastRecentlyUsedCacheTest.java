@@ -0,0 +1,83 @@
+package lab.gear.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.xillium.core.management.WithCache;
+import org.xillium.gear.util.*;
+import org.testng.annotations.Test;
+
+
+public class LeastRecentlyUsedCacheTest {
+    private static final int THREADS = 16, RUNS = 400000;
+
+    @Test(groups={"cache"})
+    public void testReplacement() throws Exception {
+        LeastRecentlyUsedCache<Integer, String> cache = new LeastRecentlyUsedCache<Integer, String>(8);
+        final AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 12; ++i) {
+            final int n = i;
+            assert cache.fetch(n, new Callable<String>() { public String call() { loads.incrementAndGet(); return "v" + n; } }).equals("v" + n);
+        }
+        assert "v11".equals(cache.fetch(11, new Callable<String>() { public String call() { loads.incrementAndGet(); return "reloaded"; } }));
+        assert "reloaded".equals(cache.fetch(0, new Callable<String>() { public String call() { loads.incrementAndGet(); return "reloaded"; } }));
+        assert loads.get() == 13;
+
+        WithCache.CacheState state = cache.getCacheState();
+        assert state.getSize() == 8 && state.getMax() == 8 && state.getRead() == 14 && state.getHit() == 1 && state.getSwap() == 5 : state;
+
+        assert "v11".equals(cache.invalidate(11));
+        assert "again".equals(cache.fetch(11, new Callable<String>() { public String call() { return "again"; } }));
+        assert cache.getCacheState().getSwap() == 5;
+    }
+
+    @Test(groups={"cache"})
+    public void testExpiry() throws Exception {
+        LeastRecentlyUsedCache<String, Long> cache = new LeastRecentlyUsedCache<String, Long>(16, 50, TimeUnit.MILLISECONDS);
+        final AtomicLong version = new AtomicLong();
+        Callable<Long> loader = new Callable<Long>() { public Long call() { return version.incrementAndGet(); } };
+        assert cache.fetch("k", loader) == 1 && cache.fetch("k", loader) == 1;
+        Thread.sleep(80);
+        assert cache.fetch("k", loader) == 2;
+    }
+
+    @Test(groups={"cache"})
+    public void testLoadDeduplication() throws Exception {
+        final LeastRecentlyUsedCache<String, String> cache = new LeastRecentlyUsedCache<String, String>(1024);
+        final AtomicInteger loads = new AtomicInteger();
+        final Callable<String> slow = new Callable<String>() {
+            public String call() throws Exception {
+                loads.incrementAndGet();
+                Thread.sleep(100);
+                return "loaded";
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+            for (int i = 0; i < 8; ++i) futures.add(cache.fetchAsync("key", slow, executor));
+            for (CompletableFuture<String> future: futures) assert "loaded".equals(future.get());
+            assert loads.get() == 1 : "loaded " + loads.get() + " times";
+            assert cache.fetchAsync("key", slow, executor).isDone();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(groups={"cache", "performance"})
+    public void runHitThroughput() throws Exception {
+        final LeastRecentlyUsedCache<Integer, Integer> cache = new LeastRecentlyUsedCache<Integer, Integer>(4096);
+        final Callable<Integer> loader = new Callable<Integer>() { public Integer call() { return 1; } };
+        for (int i = 0; i < 1024; ++i) cache.fetch(i, loader);
+
+        long elapsed = Contention.run(THREADS, new Contention.Task() {
+            public void run(int thread) throws Exception {
+                int sum = 0, offset = thread*61;
+                for (int i = 0; i < RUNS; ++i) sum += cache.fetch((i + offset) & 1023, loader);
+                assert sum == RUNS;
+            }
+        });
+        System.err.println("LeastRecentlyUsedCache hits with " + THREADS + " threads on " + Runtime.getRuntime().availableProcessors() +
+            " cores: " + elapsed/((long)RUNS*THREADS) + " ns/fetch, " + cache.getCacheState().getHit() + " hits");
+    }
+}